@@ -1,11 +1,20 @@
 package com.comp5348.bank.controller;
 
 import com.comp5348.bank.dto.AccountDTO;
+import com.comp5348.bank.dto.BalanceDTO;
+import com.comp5348.bank.dto.ReconciliationDTO;
 import com.comp5348.bank.service.AccountService;
+import com.comp5348.bank.service.BalanceSnapshotService;
+import com.comp5348.bank.util.ServiceResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+import java.util.Map;
+
 /**
  * Interface
  */
@@ -14,10 +23,12 @@ import org.springframework.web.bind.annotation.*;
 public class AccountController {
 
     private final AccountService accountService;
+    private final BalanceSnapshotService balanceSnapshotService;
 
     @Autowired
-    public AccountController(AccountService accountService) {
+    public AccountController(AccountService accountService, BalanceSnapshotService balanceSnapshotService) {
         this.accountService = accountService;
+        this.balanceSnapshotService = balanceSnapshotService;
     }
 
     @PostMapping
@@ -35,6 +46,35 @@ public class AccountController {
         return ResponseEntity.ok(account);
     }
 
+    /**
+     * The balance of an account at a point in time (ISO date-time, now if omitted).
+     */
+    @GetMapping("/{accountId}/balance")
+    public ResponseEntity<?> getBalance(
+            @PathVariable Long customerId,
+            @PathVariable Long accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf) {
+        ServiceResult<BalanceDTO> result = balanceSnapshotService.getBalanceAsOf(customerId, accountId, asOf);
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+        }
+        return ResponseEntity.ok(result.getData());
+    }
+
+    /**
+     * Checks the balance of an account against its transaction records.
+     */
+    @GetMapping("/{accountId}/balance/reconciliation")
+    public ResponseEntity<?> reconcile(
+            @PathVariable Long customerId,
+            @PathVariable Long accountId) {
+        ServiceResult<ReconciliationDTO> result = balanceSnapshotService.reconcile(customerId, accountId);
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+        }
+        return ResponseEntity.ok(result.getData());
+    }
+
     public static class CreateAccountRequest {
         public String accountName;
     }
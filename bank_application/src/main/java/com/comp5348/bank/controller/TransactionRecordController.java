@@ -1,34 +1,110 @@
 package com.comp5348.bank.controller;
 
+import com.comp5348.bank.dto.BatchTransferItemDTO;
+import com.comp5348.bank.dto.BatchTransferResultDTO;
+import com.comp5348.bank.dto.PageDTO;
 import com.comp5348.bank.dto.SimpleTransactionRecordDTO;
+import com.comp5348.bank.dto.StatementEntryDTO;
 import com.comp5348.bank.dto.TransactionRecordDTO;
+import com.comp5348.bank.service.StatementService;
 import com.comp5348.bank.service.TransactionRecordService;
+import com.comp5348.bank.util.Money;
 import com.comp5348.bank.util.ServiceResult;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
-@RequestMapping("/bank/customers/{fromCustomerId}/accounts/{accountId}/transaction_records")
+@RequestMapping("/bank")
 public class TransactionRecordController {
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    // length of transaction_record.idempotency_key
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     private final TransactionRecordService transactionRecordService;
+    private final StatementService statementService;
+    private final int maxBatchSize;
 
     @Autowired
-    public TransactionRecordController(TransactionRecordService transactionRecordService) {
+    public TransactionRecordController(TransactionRecordService transactionRecordService,
+                                       StatementService statementService,
+                                       @Value("${bank.transfers.batch.max-size:10000}") int maxBatchSize) {
         this.transactionRecordService = transactionRecordService;
+        this.statementService = statementService;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * A page of the statement of an account, newest first. Pass the returned nextCursor to get
+     * the next page.
+     */
+    @GetMapping("/customers/{customerId}/accounts/{accountId}/transaction_records")
+    public ResponseEntity<?> getStatement(@PathVariable Long customerId, @PathVariable Long accountId,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "" + StatementService.DEFAULT_PAGE_SIZE) int size) {
+        // 1. call the service to get the page
+        ServiceResult<PageDTO<StatementEntryDTO>> result = statementService.getStatementPage(customerId, accountId, cursor, size);
+
+        // 2. handle result
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+        }
+
+        return ResponseEntity.ok(result.getData());
     }
 
-    @PostMapping("/transfer")
-    public ResponseEntity<?> transfer(@PathVariable Long fromCustomerId, @PathVariable("accountId") Long fromAccountId, @RequestBody TransferRequest request) {
+    /**
+     * The whole statement of an account as newline-delimited JSON, oldest first, streamed while
+     * it is read from the database.
+     */
+    @GetMapping("/customers/{customerId}/accounts/{accountId}/transaction_records/export")
+    public ResponseEntity<?> exportStatement(@PathVariable Long customerId, @PathVariable Long accountId) {
+        // 1. check the account before the response is committed
+        if (!statementService.ownsAccount(customerId, accountId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Account not found."));
+        }
+
+        // 2. stream the statement
+        StreamingResponseBody body = outputStream -> statementService.exportStatement(accountId, outputStream);
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * Transfers money between two accounts. A request with an Idempotency-Key header is applied at
+     * most once, retries with the same key get the original result back.
+     */
+    @PostMapping("/customers/{fromCustomerId}/accounts/{accountId}/transaction_records/transfer")
+    public ResponseEntity<?> transfer(@PathVariable Long fromCustomerId, @PathVariable("accountId") Long fromAccountId,
+                                      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                      @RequestBody TransferRequest request) {
+        // 0. check the idempotency key, it has to fit its column
+        if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("message", "Idempotency key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters."));
+        }
+
         // 1. if fromCustomerId is not provided
         if (fromCustomerId <= 0) { //
             // 1.1 call the service to perform the simple transaction
-            ServiceResult<SimpleTransactionRecordDTO> result = transactionRecordService
-                    .performSimpleTransaction(fromAccountId, request.toAccountId, request.amount, "Transfer.");
+            ServiceResult<SimpleTransactionRecordDTO> result;
+            try {
+                result = transactionRecordService
+                        .performSimpleTransaction(fromAccountId, request.toAccountId, request.amount, "Transfer.", idempotencyKey);
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent request with the same key committed first, this attempt replays it
+                result = transactionRecordService
+                        .performSimpleTransaction(fromAccountId, request.toAccountId, request.amount, "Transfer.", idempotencyKey);
+            }
 
             // 1.2 handle result
             if (!result.isSuccess()) {
@@ -39,32 +115,64 @@ public class TransactionRecordController {
         }
         // 2. if fromCustomerId is provided
         else {
-            TransactionRecordDTO transactionRecord = transactionRecordService
-                    .performTransaction(fromCustomerId, fromAccountId,
-                            request.toCustomerId, request.toAccountId, request.amount, "Transfer.");
+            TransactionRecordDTO transactionRecord;
+            try {
+                transactionRecord = transactionRecordService
+                        .performTransaction(fromCustomerId, fromAccountId,
+                                request.toCustomerId, request.toAccountId, request.amount, "Transfer.", idempotencyKey);
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent request with the same key committed first, this attempt replays it
+                transactionRecord = transactionRecordService
+                        .performTransaction(fromCustomerId, fromAccountId,
+                                request.toCustomerId, request.toAccountId, request.amount, "Transfer.", idempotencyKey);
+            }
 
             return ResponseEntity.ok(transactionRecord);
         }
     }
 
-    @PostMapping("/deposit")
+    @PostMapping("/customers/{fromCustomerId}/accounts/{accountId}/transaction_records/deposit")
     public ResponseEntity<?> deposit(@PathVariable("fromCustomerId") Long toCustomerId,
                                      @PathVariable("accountId") Long toAccountId,
                                      @RequestBody DepositWithdrawRequest request) {
         TransactionRecordDTO transactionRecord = transactionRecordService
                 .performTransaction(null, null,
                         toCustomerId, toAccountId,
-                        request.amount, "Deposit.");
+                        request.amount, "Deposit.", null);
         return ResponseEntity.ok(transactionRecord);
     }
 
+    /**
+     * Applies a list of account-to-account transfers in a few database transactions and returns
+     * one result per transfer; a failed transfer does not stop the others.
+     */
+    @PostMapping("/transfers:batch")
+    public ResponseEntity<?> batchTransfer(@RequestBody BatchTransferRequest request) {
+        // 1. check the batch
+        if (request.transfers == null || request.transfers.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Transfers are required."));
+        }
+        if (request.transfers.size() > maxBatchSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "At most " + maxBatchSize + " transfers per batch."));
+        }
+
+        // 2. call the service to apply the transfers
+        List<BatchTransferResultDTO> results = transactionRecordService.performBatchTransaction(request.transfers);
+
+        return ResponseEntity.ok(Map.of("results", results));
+    }
+
     public static class TransferRequest {
         public long toCustomerId;
         public long toAccountId;
-        public double amount;
+        public Money amount;
+    }
+
+    public static class BatchTransferRequest {
+        public List<BatchTransferItemDTO> transfers;
     }
 
     public static class DepositWithdrawRequest {
-        public double amount;
+        public Money amount;
     }
 }
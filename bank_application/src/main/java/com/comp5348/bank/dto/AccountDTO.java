@@ -2,6 +2,7 @@ package com.comp5348.bank.dto;
 
 import com.comp5348.bank.model.Account;
 import com.comp5348.bank.model.TransactionRecord;
+import com.comp5348.bank.util.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import lombok.Getter;
@@ -20,7 +21,7 @@ public class AccountDTO {
     private Long id;
     private CustomerDTO customer;
     private String name;
-    private Double balance;
+    private Money balance;
 
     /**
      * The set of transaction records associated with the account.
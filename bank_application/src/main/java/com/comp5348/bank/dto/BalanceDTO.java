@@ -0,0 +1,22 @@
+package com.comp5348.bank.dto;
+
+import com.comp5348.bank.util.Money;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The balance of an account at a point in time, from the transaction records up to that time.
+ */
+@Data
+public class BalanceDTO {
+    private long accountId;
+    private LocalDateTime asOf;
+    private Money balance;
+
+    public BalanceDTO(long accountId, LocalDateTime asOf, Money balance) {
+        this.accountId = accountId;
+        this.asOf = asOf;
+        this.balance = balance;
+    }
+}
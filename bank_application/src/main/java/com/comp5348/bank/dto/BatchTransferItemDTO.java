@@ -0,0 +1,17 @@
+package com.comp5348.bank.dto;
+
+import com.comp5348.bank.util.Money;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One transfer of a batch, between two accounts.
+ */
+@Data
+@NoArgsConstructor
+public class BatchTransferItemDTO {
+    private Long fromAccountId;
+    private Long toAccountId;
+    private Money amount;
+    private String memo;
+}
@@ -0,0 +1,31 @@
+package com.comp5348.bank.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+/**
+ * Outcome of one transfer of a batch: the id of its transaction record, or why it failed.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchTransferResultDTO {
+    private int index;
+    private boolean success;
+    private Long id;
+    private String message;
+
+    private BatchTransferResultDTO(int index, boolean success, Long id, String message) {
+        this.index = index;
+        this.success = success;
+        this.id = id;
+        this.message = message;
+    }
+
+    public static BatchTransferResultDTO success(int index, long id) {
+        return new BatchTransferResultDTO(index, true, id, null);
+    }
+
+    public static BatchTransferResultDTO failure(int index, String message) {
+        return new BatchTransferResultDTO(index, false, null, message);
+    }
+}
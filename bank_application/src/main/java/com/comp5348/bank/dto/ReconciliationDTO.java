@@ -0,0 +1,40 @@
+package com.comp5348.bank.dto;
+
+import com.comp5348.bank.util.Money;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * The stored balance of an account next to the balance its transaction records add up to.
+ */
+@Data
+public class ReconciliationDTO {
+    private long accountId;
+    private LocalDateTime time;
+
+    /**
+     * The balance held by the account, shards and unposted journal records included.
+     */
+    private Money balance;
+
+    /**
+     * The balance from the latest snapshot and the transaction records since.
+     */
+    private Money ledgerBalance;
+    private boolean consistent;
+
+    /**
+     * The snapshots missed transaction records that committed long after their time; the balance
+     * matched a full replay and the snapshots of the account were rebuilt from it.
+     */
+    private boolean snapshotGap;
+
+    public ReconciliationDTO(long accountId, LocalDateTime time, Money balance, Money ledgerBalance) {
+        this.accountId = accountId;
+        this.time = time;
+        this.balance = balance;
+        this.ledgerBalance = ledgerBalance;
+        this.consistent = balance.equals(ledgerBalance);
+    }
+}
@@ -0,0 +1,36 @@
+package com.comp5348.bank.dto;
+
+import com.comp5348.bank.util.Money;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * One line of an account statement: a transaction record seen from one of its accounts.
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StatementEntryDTO {
+    private long id;
+    private LocalDateTime time;
+
+    /**
+     * Positive for money received, negative for money paid.
+     */
+    private Money amount;
+    private String memo;
+
+    /**
+     * The other account of the transaction, null for deposits and withdrawals.
+     */
+    private Long counterpartyAccountId;
+
+    public StatementEntryDTO(long id, LocalDateTime time, Money amount, String memo, Long counterpartyAccountId) {
+        this.id = id;
+        this.time = time;
+        this.amount = amount;
+        this.memo = memo;
+        this.counterpartyAccountId = counterpartyAccountId;
+    }
+}
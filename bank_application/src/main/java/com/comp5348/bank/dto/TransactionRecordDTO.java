@@ -2,6 +2,7 @@ package com.comp5348.bank.dto;
 
 import com.comp5348.bank.model.Account;
 import com.comp5348.bank.model.TransactionRecord;
+import com.comp5348.bank.util.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
@@ -16,7 +17,7 @@ import java.time.LocalDateTime;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class TransactionRecordDTO {
     private long id;
-    private Double amount;
+    private Money amount;
     private String memo;
     private LocalDateTime time;
     private AccountDTO toAccount;
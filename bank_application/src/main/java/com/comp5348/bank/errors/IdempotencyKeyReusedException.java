@@ -0,0 +1,10 @@
+package com.comp5348.bank.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(
+        value = HttpStatus.UNPROCESSABLE_ENTITY,
+        reason = "Idempotency key was already used for a different transaction.")
+public class IdempotencyKeyReusedException extends RuntimeException {
+}
@@ -1,5 +1,6 @@
 package com.comp5348.bank.model;
 
+import com.comp5348.bank.util.Money;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -28,8 +29,9 @@ public class Account {
     @Column(nullable = false)
     private String name;
 
+    // in cents, see MoneyConverter
     @Column(nullable = false)
-    private Double balance = 0.0;
+    private Money balance = Money.ZERO;
 
     @OneToMany(mappedBy = "fromAccount")
     private Collection<TransactionRecord> fromTransactionRecords;
@@ -44,7 +46,7 @@ public class Account {
         this.toTransactionRecords = new ArrayList<>();
     }
 
-    public void modifyBalance(Double amount) {
-        this.balance = this.balance + amount;
+    public void modifyBalance(Money amount) {
+        this.balance = this.balance.plus(amount);
     }
 }
@@ -0,0 +1,67 @@
+package com.comp5348.bank.model;
+
+import com.comp5348.bank.util.Money;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Entity object for account_shard database table.
+ * <p>
+ * A slice of the balance of a sharded account. Credits to the account are spread over its shards,
+ * so they do not all wait for the same row lock; the balance of the account is its own balance plus
+ * the sum of its shards, and compaction moves the shards back into the account.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@IdClass(AccountShard.Key.class)
+public class AccountShard {
+    @Id
+    @Column(name = "account_id")
+    private long accountId;
+
+    @Id
+    private int shardIndex;
+
+    // only for the foreign key, the shard is written through accountId
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id", insertable = false, updatable = false)
+    private Account account;
+
+    // in cents, see MoneyConverter
+    @Column(nullable = false)
+    private Money balance = Money.ZERO;
+
+    /**
+     * Primary key of a shard: the account and the index of the shard within it.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private long accountId;
+        private int shardIndex;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key key)) {
+                return false;
+            }
+            return accountId == key.accountId && shardIndex == key.shardIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(accountId, shardIndex);
+        }
+    }
+}
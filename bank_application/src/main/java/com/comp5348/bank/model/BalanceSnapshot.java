@@ -0,0 +1,49 @@
+package com.comp5348.bank.model;
+
+import com.comp5348.bank.util.Money;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity object for balance_snapshot database table.
+ * <p>
+ * The balance of an account after every transaction record up to a point in time. The balance at
+ * any later time is the latest snapshot before it plus the records in between, so nothing needs
+ * to replay the whole history of an account.
+ */
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "uk_balance_snapshot_account_time", columnList = "account_id, time", unique = true))
+public class BalanceSnapshot {
+    @Id
+    @GeneratedValue
+    private long id;
+
+    @Column(name = "account_id", nullable = false)
+    private long accountId;
+
+    // only for the foreign key, the snapshot is written through accountId
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id", insertable = false, updatable = false)
+    private Account account;
+
+    // the snapshot covers the transaction records up to and including this time
+    @Column(nullable = false)
+    private LocalDateTime time;
+
+    // in cents, see MoneyConverter; corrected when a transaction record of the window commits late
+    @Setter
+    @Column(nullable = false)
+    private Money balance;
+
+    public BalanceSnapshot(long accountId, LocalDateTime time, Money balance) {
+        this.accountId = accountId;
+        this.time = time;
+        this.balance = balance;
+    }
+}
@@ -1,8 +1,10 @@
 package com.comp5348.bank.model;
 
+import com.comp5348.bank.util.Money;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 import java.time.LocalDateTime;
 
@@ -12,13 +14,24 @@ import java.time.LocalDateTime;
 @Getter
 @NoArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "uk_transaction_record_idempotency_key", columnList = "idempotencyKey", unique = true),
+        // keyset pagination of account statements, see StatementRepository
+        @Index(name = "idx_transaction_record_from_account_time", columnList = "from_account_id, time, id"),
+        @Index(name = "idx_transaction_record_to_account_time", columnList = "to_account_id, time, id"),
+        // time windows of the balance snapshot job, see BalanceSnapshotService
+        @Index(name = "idx_transaction_record_time", columnList = "time"),
+        // records waiting to be posted to the account balances, see JournalLedger
+        @Index(name = "idx_transaction_record_posted", columnList = "posted, id")
+})
 public class TransactionRecord {
     @Id
     @GeneratedValue
     private long id;
 
+    // in cents, see MoneyConverter
     @Column(nullable = false)
-    private Double amount;
+    private Money amount;
 
     private String memo;
 
@@ -26,17 +39,27 @@ public class TransactionRecord {
     private LocalDateTime time;
 
     @ManyToOne
-    @JoinColumn
+    @JoinColumn(name = "to_account_id")
     private Account toAccount;
 
     @ManyToOne
-    @JoinColumn
+    @JoinColumn(name = "from_account_id")
     private Account fromAccount;
 
+    // set by the caller to make retries safe, unique when present
+    @Setter
+    @Column(length = 64)
+    private String idempotencyKey;
+
+    // whether the amount is already in the account balances, false while a journal mode transfer waits to be posted
+    @Setter
+    @Column(nullable = false)
+    private boolean posted = true;
+
     @Version
     private int version;
 
-    public TransactionRecord(Double amount, Account toAccount, Account fromAccount, String memo) {
+    public TransactionRecord(Money amount, Account toAccount, Account fromAccount, String memo) {
         this.amount = amount;
         this.time = LocalDateTime.now();
         this.toAccount = toAccount;
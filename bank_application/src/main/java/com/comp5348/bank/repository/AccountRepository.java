@@ -2,7 +2,11 @@ package com.comp5348.bank.repository;
 
 import com.comp5348.bank.model.Account;
 import com.comp5348.bank.model.Customer;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
@@ -13,4 +17,12 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
     // Spring Data JPA will automatically generate the implementation.
     // Find more about it at https://docs.spring.io/spring-data/jpa/reference/jpa/query-methods.html
     Optional<Account> findByIdAndCustomer(long id, Customer customer);
+
+    /**
+     * Loads an account with SELECT ... FOR UPDATE, the row stays locked until the transaction ends.
+     * Callers locking several accounts must do so in ascending id order to avoid deadlocks.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Account a WHERE a.id = :id")
+    Optional<Account> findByIdForUpdate(@Param("id") long id);
 }
@@ -0,0 +1,41 @@
+package com.comp5348.bank.repository;
+
+import com.comp5348.bank.model.AccountShard;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Data Access Object for account_shard database table.
+ */
+public interface AccountShardRepository extends JpaRepository<AccountShard, AccountShard.Key> {
+    /**
+     * Adds an amount to one shard in a single statement, creating the shard on its first credit.
+     * Only the row of that shard is locked.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO account_shard (account_id, shard_index, balance) VALUES (:accountId, :shardIndex, :amount) " +
+            "ON CONFLICT (account_id, shard_index) DO UPDATE SET balance = account_shard.balance + EXCLUDED.balance",
+            nativeQuery = true)
+    void credit(@Param("accountId") long accountId, @Param("shardIndex") int shardIndex, @Param("amount") long amountCents);
+
+    /**
+     * The balance of an account plus its shards, read in one statement so a concurrent compaction
+     * is seen either entirely or not at all.
+     */
+    @Query(value = "SELECT CAST(a.balance + COALESCE((SELECT SUM(s.balance) FROM account_shard s WHERE s.account_id = a.id), 0) AS bigint) " +
+            "FROM account a WHERE a.id = :accountId", nativeQuery = true)
+    long totalBalanceCents(@Param("accountId") long accountId);
+
+    /**
+     * Locks all shards of an account, in shard order, for compaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM AccountShard s WHERE s.accountId = :accountId ORDER BY s.shardIndex")
+    List<AccountShard> findByAccountIdForUpdate(@Param("accountId") long accountId);
+}
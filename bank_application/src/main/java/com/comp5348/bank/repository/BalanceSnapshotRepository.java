@@ -0,0 +1,95 @@
+package com.comp5348.bank.repository;
+
+import com.comp5348.bank.model.BalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Data Access Object for balance_snapshot database table, and the transaction record sums that
+ * bring a snapshot forward.
+ */
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, Long> {
+    /**
+     * The latest snapshot of an account taken at or before a time.
+     */
+    Optional<BalanceSnapshot> findFirstByAccountIdAndTimeLessThanEqualOrderByTimeDesc(long accountId, LocalDateTime time);
+
+    /**
+     * The time of the latest snapshot run, null before the first one.
+     */
+    @Query("SELECT MAX(s.time) FROM BalanceSnapshot s")
+    LocalDateTime findLatestTime();
+
+    /**
+     * The time of the latest snapshot run before a time, null if there is none.
+     */
+    @Query("SELECT MAX(s.time) FROM BalanceSnapshot s WHERE s.time < :time")
+    LocalDateTime findLatestTimeBefore(@Param("time") LocalDateTime time);
+
+    /**
+     * The snapshots taken by the run at a time.
+     */
+    List<BalanceSnapshot> findByTime(LocalDateTime time);
+
+    /**
+     * Every snapshot of an account, oldest first.
+     */
+    List<BalanceSnapshot> findByAccountIdOrderByTimeAsc(long accountId);
+
+    /**
+     * The latest snapshot of each of the accounts, accounts without one are left out.
+     */
+    @Query(value = "SELECT DISTINCT ON (account_id) * FROM balance_snapshot WHERE account_id IN (:accountIds) " +
+            "ORDER BY account_id, time DESC", nativeQuery = true)
+    List<BalanceSnapshot> findLatestByAccountIds(@Param("accountIds") Collection<Long> accountIds);
+
+    /**
+     * The latest snapshot of each of the accounts taken before a time, accounts without one are
+     * left out.
+     */
+    @Query(value = "SELECT DISTINCT ON (account_id) * FROM balance_snapshot WHERE account_id IN (:accountIds) " +
+            "AND time < :time ORDER BY account_id, time DESC", nativeQuery = true)
+    List<BalanceSnapshot> findLatestByAccountIdsBefore(@Param("accountIds") Collection<Long> accountIds,
+                                                       @Param("time") LocalDateTime time);
+
+    /**
+     * How much the balance of an account changed through the transaction records after one time
+     * up to and including another, in cents. Reads the (account, time, id) indexes of
+     * transaction_record.
+     */
+    @Query(value = """
+            SELECT CAST(COALESCE(SUM(change), 0) AS bigint) FROM (
+                SELECT -amount AS change FROM transaction_record
+                WHERE from_account_id = :accountId AND time > :after AND time <= :until
+                UNION ALL
+                SELECT amount FROM transaction_record
+                WHERE to_account_id = :accountId AND time > :after AND time <= :until
+            ) changes
+            """, nativeQuery = true)
+    long sumChangeCents(@Param("accountId") long accountId,
+                        @Param("after") LocalDateTime after,
+                        @Param("until") LocalDateTime until);
+
+    /**
+     * The change of every account that has transaction records in a time window, as rows of
+     * account id and change in cents. Reads the window once through the time index.
+     */
+    @Query(value = """
+            SELECT account_id, CAST(SUM(change) AS bigint) FROM (
+                SELECT from_account_id AS account_id, -amount AS change FROM transaction_record
+                WHERE from_account_id IS NOT NULL AND time > :after AND time <= :until
+                UNION ALL
+                SELECT to_account_id, amount FROM transaction_record
+                WHERE to_account_id IS NOT NULL AND time > :after AND time <= :until
+            ) changes
+            GROUP BY account_id
+            """, nativeQuery = true)
+    List<Object[]> sumChangeCentsByAccount(@Param("after") LocalDateTime after,
+                                           @Param("until") LocalDateTime until);
+}
@@ -0,0 +1,45 @@
+package com.comp5348.bank.repository;
+
+import com.comp5348.bank.model.TransactionRecord;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Data Access Object for the unposted transaction records of the journal mode, see JournalLedger.
+ * <p>
+ * Works on plain columns rather than entities, so posting never loads an account into the
+ * persistence context before it is locked.
+ */
+public interface JournalRepository extends Repository<TransactionRecord, Long> {
+    /**
+     * The oldest unposted records as rows of id, from account id, to account id and amount in
+     * cents. The rows stay locked until the transaction ends; rows locked by another poster are
+     * skipped.
+     */
+    @Query(value = "SELECT id, from_account_id, to_account_id, amount FROM transaction_record " +
+            "WHERE posted = false ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Object[]> findUnpostedForUpdate(@Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "UPDATE transaction_record SET posted = true WHERE id IN (:ids)", nativeQuery = true)
+    void markPosted(@Param("ids") Collection<Long> ids);
+
+    /**
+     * What an account has paid through records that are not posted yet, in cents.
+     */
+    @Query(value = "SELECT CAST(COALESCE(SUM(amount), 0) AS bigint) FROM transaction_record " +
+            "WHERE from_account_id = :accountId AND posted = false", nativeQuery = true)
+    long sumUnpostedDebitCents(@Param("accountId") long accountId);
+
+    /**
+     * What an account has received through records that are not posted yet, in cents.
+     */
+    @Query(value = "SELECT CAST(COALESCE(SUM(amount), 0) AS bigint) FROM transaction_record " +
+            "WHERE to_account_id = :accountId AND posted = false", nativeQuery = true)
+    long sumUnpostedCreditCents(@Param("accountId") long accountId);
+}
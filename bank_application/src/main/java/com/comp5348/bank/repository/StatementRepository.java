@@ -0,0 +1,99 @@
+package com.comp5348.bank.repository;
+
+import com.comp5348.bank.dto.StatementEntryDTO;
+import com.comp5348.bank.util.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads account statements straight from the transaction_record table.
+ * <p>
+ * A statement is the union of the records paid from and paid to an account. Each half is a range
+ * scan of its (account, time, id) index, so both the pages and the full export are read in index
+ * order without sorting the account's whole history. The rows are mapped to statement entries
+ * directly, no entities are loaded into the persistence context.
+ */
+@Repository
+public class StatementRepository {
+    // newest first, each half is limited before the merge; a transfer to itself is listed once
+    private static final String PAGE_QUERY = """
+            SELECT * FROM (
+                (SELECT id, time, amount, memo, from_account_id, to_account_id FROM transaction_record
+                 WHERE from_account_id = ? AND (time, id) < (?, ?)
+                 ORDER BY time DESC, id DESC LIMIT ?)
+                UNION ALL
+                (SELECT id, time, amount, memo, from_account_id, to_account_id FROM transaction_record
+                 WHERE to_account_id = ? AND from_account_id IS DISTINCT FROM to_account_id AND (time, id) < (?, ?)
+                 ORDER BY time DESC, id DESC LIMIT ?)
+            ) statement
+            ORDER BY time DESC, id DESC LIMIT ?
+            """;
+
+    // oldest first, the two index scans are merged without sorting
+    private static final String EXPORT_QUERY = """
+            SELECT * FROM (
+                SELECT id, time, amount, memo, from_account_id, to_account_id FROM transaction_record
+                WHERE from_account_id = ?
+                UNION ALL
+                SELECT id, time, amount, memo, from_account_id, to_account_id FROM transaction_record
+                WHERE to_account_id = ? AND from_account_id IS DISTINCT FROM to_account_id
+            ) statement
+            ORDER BY time, id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public StatementRepository(DataSource dataSource,
+                               @Value("${bank.statements.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // read the export through a server side cursor, fetchSize rows at a time
+        this.jdbcTemplate.setFetchSize(fetchSize);
+    }
+
+    /**
+     * A page of the statement of an account, newest first, strictly before the given time and id.
+     */
+    public List<StatementEntryDTO> findPage(long accountId, LocalDateTime beforeTime, long beforeId, int limit) {
+        return jdbcTemplate.query(PAGE_QUERY, entryMapper(accountId),
+                accountId, beforeTime, beforeId, limit,
+                accountId, beforeTime, beforeId, limit,
+                limit);
+    }
+
+    /**
+     * Passes the whole statement of an account to the consumer, oldest first, one row at a time.
+     * <p>
+     * Must run in a transaction: PostgreSQL only uses a cursor for the fetch size outside of
+     * auto-commit, otherwise the driver reads the whole result into memory.
+     */
+    public void forEach(long accountId, Consumer<StatementEntryDTO> consumer) {
+        RowMapper<StatementEntryDTO> mapper = entryMapper(accountId);
+        jdbcTemplate.query(EXPORT_QUERY, resultSet -> {
+            consumer.accept(mapper.mapRow(resultSet, resultSet.getRow()));
+        }, accountId, accountId);
+    }
+
+    private static RowMapper<StatementEntryDTO> entryMapper(long accountId) {
+        return (resultSet, rowNum) -> {
+            Long fromAccountId = resultSet.getObject("from_account_id", Long.class);
+            Long toAccountId = resultSet.getObject("to_account_id", Long.class);
+            Money amount = Money.ofCents(resultSet.getLong("amount"));
+            boolean paid = fromAccountId != null && fromAccountId == accountId;
+            return new StatementEntryDTO(
+                    resultSet.getLong("id"),
+                    resultSet.getObject("time", LocalDateTime.class),
+                    paid ? amount.negate() : amount,
+                    resultSet.getString("memo"),
+                    paid ? toAccountId : fromAccountId);
+        };
+    }
+}
@@ -3,8 +3,12 @@ package com.comp5348.bank.repository;
 import com.comp5348.bank.model.TransactionRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Optional;
+
 /**
  * Data Access Object for transaction_record database table.
  */
 public interface TransactionRecordRepository extends JpaRepository<TransactionRecord, Long> {
+    // the transaction recorded under an idempotency key, served by its unique index
+    Optional<TransactionRecord> findByIdempotencyKey(String idempotencyKey);
 }
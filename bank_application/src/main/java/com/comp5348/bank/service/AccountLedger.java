@@ -0,0 +1,104 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.AccountShard;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.AccountShardRepository;
+import com.comp5348.bank.util.Money;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sub-ledger for hot accounts.
+ * <p>
+ * The accounts listed in bank.ledger.sharded-accounts (by default the store's merchant account) take
+ * their credits on one of bank.ledger.shards shard rows picked at random, so concurrent payments
+ * into them no longer queue on a single row lock. Reads add the shards to the balance of the
+ * account; debits and the periodic compaction first move the shards back into the account row.
+ * <p>
+ * Lock order: the account row before its shards. Credits lock only one shard and never the account,
+ * so they cannot be part of a deadlock with a debit or a compaction.
+ */
+@Service
+public class AccountLedger {
+    private static final Logger logger = LoggerFactory.getLogger(AccountLedger.class);
+
+    private final AccountRepository accountRepository;
+    private final AccountShardRepository accountShardRepository;
+    private final Set<Long> shardedAccountIds;
+    private final int shards;
+
+    @Autowired
+    public AccountLedger(AccountRepository accountRepository,
+                         AccountShardRepository accountShardRepository,
+                         @Value("${bank.ledger.sharded-accounts:1}") Set<Long> shardedAccountIds,
+                         @Value("${bank.ledger.shards:16}") int shards) {
+        this.accountRepository = accountRepository;
+        this.accountShardRepository = accountShardRepository;
+        this.shardedAccountIds = new TreeSet<>(shardedAccountIds);
+        this.shards = Math.max(shards, 1);
+    }
+
+    /**
+     * Whether credits to the account go to its shards.
+     */
+    public boolean isSharded(long accountId) {
+        return shardedAccountIds.contains(accountId);
+    }
+
+    /**
+     * Credits a sharded account without locking its row.
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void credit(long accountId, Money amount) {
+        accountShardRepository.credit(accountId, ThreadLocalRandom.current().nextInt(shards), amount.cents());
+    }
+
+    /**
+     * The full balance of an account, including what its shards hold.
+     */
+    public Money balanceOf(Account account) {
+        if (!isSharded(account.getId())) {
+            return account.getBalance();
+        }
+        return Money.ofCents(accountShardRepository.totalBalanceCents(account.getId()));
+    }
+
+    /**
+     * Moves the shards of an account back into the account row.
+     * The account must already be locked by the caller.
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void fold(Account lockedAccount) {
+        if (!isSharded(lockedAccount.getId())) {
+            return;
+        }
+        Money total = Money.ZERO;
+        for (AccountShard shard : accountShardRepository.findByAccountIdForUpdate(lockedAccount.getId())) {
+            total = total.plus(shard.getBalance());
+            shard.setBalance(Money.ZERO);
+        }
+        lockedAccount.modifyBalance(total);
+    }
+
+    /**
+     * Periodic compaction: keeps the shard rows small and the account row close to the real balance.
+     */
+    @Scheduled(fixedDelayString = "${bank.ledger.compaction-interval-millis:60000}")
+    @Transactional
+    public void compact() {
+        for (Long accountId : shardedAccountIds) {
+            accountRepository.findByIdForUpdate(accountId).ifPresent(this::fold);
+        }
+        logger.debug("Compacted sharded accounts {}", shardedAccountIds);
+    }
+}
@@ -16,11 +16,13 @@ import org.springframework.stereotype.Service;
 public class AccountService {
     private final AccountRepository accountRepository;
     private final CustomerRepository customerRepository;
+    private final AccountLedger accountLedger;
 
     @Autowired
-    public AccountService(AccountRepository accountRepository, CustomerRepository customerRepository) {
+    public AccountService(AccountRepository accountRepository, CustomerRepository customerRepository, AccountLedger accountLedger) {
         this.accountRepository = accountRepository;
         this.customerRepository = customerRepository;
+        this.accountLedger = accountLedger;
     }
 
     @Transactional
@@ -34,6 +36,9 @@ public class AccountService {
     @Transactional
     public AccountDTO getAccount(Long customerId, Long accountId) {
         Account account = accountRepository.findByIdAndCustomer(accountId, customerRepository.getReferenceById(customerId)).orElseThrow();
-        return new AccountDTO(account, true);
+        AccountDTO accountDTO = new AccountDTO(account, true);
+        // a sharded account holds part of its balance in its shards
+        accountDTO.setBalance(accountLedger.balanceOf(account));
+        return accountDTO;
     }
 }
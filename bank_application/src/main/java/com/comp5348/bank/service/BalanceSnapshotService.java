@@ -0,0 +1,264 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.dto.BalanceDTO;
+import com.comp5348.bank.dto.ReconciliationDTO;
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.BalanceSnapshot;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.BalanceSnapshotRepository;
+import com.comp5348.bank.repository.CustomerRepository;
+import com.comp5348.bank.repository.JournalRepository;
+import com.comp5348.bank.util.Money;
+import com.comp5348.bank.util.ServiceResult;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Periodic balance snapshots of the accounts, and the point-in-time balances read from them.
+ * <p>
+ * Every bank.snapshots.interval-millis the job sums the transaction records written since its
+ * previous run, per account, and adds them to the latest snapshot of each account that changed.
+ * Idle accounts get no new row. A balance at any time is then one snapshot plus the records after
+ * it, instead of the whole history of the account.
+ * <p>
+ * A run only covers records older than bank.snapshots.settle-millis: a record gets its time before
+ * its transaction commits, and a snapshot must not be taken past a record that is still in flight.
+ * A record can still commit later than that, with a time a run has already passed. So every run
+ * first adds up the window of the previous run again and corrects the snapshots it took; a record
+ * later than a whole interval shows up as a gap in reconcile, which rebuilds the snapshots of the
+ * account from its records.
+ */
+@Service
+public class BalanceSnapshotService {
+    private static final Logger logger = LoggerFactory.getLogger(BalanceSnapshotService.class);
+
+    private final BalanceSnapshotRepository balanceSnapshotRepository;
+    private final AccountRepository accountRepository;
+    private final CustomerRepository customerRepository;
+    private final AccountLedger accountLedger;
+    private final JournalRepository journalRepository;
+    private final long settleMillis;
+    private final int chunkSize;
+
+    @Autowired
+    public BalanceSnapshotService(BalanceSnapshotRepository balanceSnapshotRepository,
+                                  AccountRepository accountRepository,
+                                  CustomerRepository customerRepository,
+                                  AccountLedger accountLedger,
+                                  JournalRepository journalRepository,
+                                  @Value("${bank.snapshots.settle-millis:60000}") long settleMillis,
+                                  @Value("${bank.snapshots.chunk-size:500}") int chunkSize) {
+        this.balanceSnapshotRepository = balanceSnapshotRepository;
+        this.accountRepository = accountRepository;
+        this.customerRepository = customerRepository;
+        this.accountLedger = accountLedger;
+        this.journalRepository = journalRepository;
+        this.settleMillis = settleMillis;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * Takes a snapshot of every account that has transaction records since the previous run.
+     */
+    @Scheduled(fixedDelayString = "${bank.snapshots.interval-millis:3600000}")
+    @Transactional
+    public void takeSnapshots() {
+        // 1. the window: after the previous run, up to the records that are surely committed
+        LocalDateTime latest = balanceSnapshotRepository.findLatestTime();
+        LocalDateTime after = Optional.ofNullable(latest).orElse(LocalDateTime.MIN);
+        LocalDateTime until = now().minus(settleMillis, ChronoUnit.MILLIS);
+
+        // 1.1 records that committed after the previous run with a time inside its window
+        if (latest != null) {
+            correctWindow(latest);
+        }
+        if (!until.isAfter(after)) {
+            return;
+        }
+
+        // 2. how much each account changed in the window
+        Map<Long, Long> changes = new HashMap<>();
+        for (Object[] row : balanceSnapshotRepository.sumChangeCentsByAccount(after, until)) {
+            changes.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // 3. bring the latest snapshot of each changed account forward, a chunk of accounts at a time
+        List<Long> accountIds = new ArrayList<>(changes.keySet());
+        for (int offset = 0; offset < accountIds.size(); offset += chunkSize) {
+            List<Long> chunk = accountIds.subList(offset, Math.min(offset + chunkSize, accountIds.size()));
+            Map<Long, Money> previous = new HashMap<>();
+            for (BalanceSnapshot snapshot : balanceSnapshotRepository.findLatestByAccountIds(chunk)) {
+                previous.put(snapshot.getAccountId(), snapshot.getBalance());
+            }
+            List<BalanceSnapshot> snapshots = new ArrayList<>(chunk.size());
+            for (Long accountId : chunk) {
+                Money balance = previous.getOrDefault(accountId, Money.ZERO).plus(Money.ofCents(changes.get(accountId)));
+                snapshots.add(new BalanceSnapshot(accountId, until, balance));
+            }
+            balanceSnapshotRepository.saveAll(snapshots);
+        }
+        logger.info("Took {} balance snapshots up to {}", accountIds.size(), until);
+    }
+
+    /**
+     * Adds up the window of the run at a time again and corrects its snapshots for the records
+     * that committed after it.
+     */
+    private void correctWindow(LocalDateTime until) {
+        // 1. the window of that run and how much each account changed in it by now
+        LocalDateTime after = Optional.ofNullable(balanceSnapshotRepository.findLatestTimeBefore(until)).orElse(LocalDateTime.MIN);
+        Map<Long, Long> changes = new HashMap<>();
+        for (Object[] row : balanceSnapshotRepository.sumChangeCentsByAccount(after, until)) {
+            changes.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+
+        // 2. the snapshots the run took, an account that changed only through late records has none
+        Map<Long, BalanceSnapshot> taken = new HashMap<>();
+        for (BalanceSnapshot snapshot : balanceSnapshotRepository.findByTime(until)) {
+            taken.put(snapshot.getAccountId(), snapshot);
+        }
+        Set<Long> touched = new HashSet<>(changes.keySet());
+        touched.addAll(taken.keySet());
+        List<Long> accountIds = new ArrayList<>(touched);
+        if (accountIds.isEmpty()) {
+            return;
+        }
+
+        // 3. each snapshot must be the one before it plus the change of the window
+        List<BalanceSnapshot> corrected = new ArrayList<>();
+        for (int offset = 0; offset < accountIds.size(); offset += chunkSize) {
+            List<Long> chunk = accountIds.subList(offset, Math.min(offset + chunkSize, accountIds.size()));
+            Map<Long, Money> previous = new HashMap<>();
+            for (BalanceSnapshot snapshot : balanceSnapshotRepository.findLatestByAccountIdsBefore(chunk, until)) {
+                previous.put(snapshot.getAccountId(), snapshot.getBalance());
+            }
+            for (Long accountId : chunk) {
+                Money balance = previous.getOrDefault(accountId, Money.ZERO).plus(Money.ofCents(changes.getOrDefault(accountId, 0L)));
+                BalanceSnapshot snapshot = taken.get(accountId);
+                if (snapshot == null) {
+                    corrected.add(new BalanceSnapshot(accountId, until, balance));
+                } else if (!snapshot.getBalance().equals(balance)) {
+                    snapshot.setBalance(balance);
+                    corrected.add(snapshot);
+                }
+            }
+        }
+        if (!corrected.isEmpty()) {
+            balanceSnapshotRepository.saveAll(corrected);
+            logger.warn("Corrected {} balance snapshots at {} for transaction records that committed late", corrected.size(), until);
+        }
+    }
+
+    /**
+     * The balance of an account at a point in time: its latest snapshot before that time plus the
+     * transaction records in between.
+     *
+     * @param asOf the point in time, now if null
+     */
+    @Transactional
+    public ServiceResult<BalanceDTO> getBalanceAsOf(Long customerId, Long accountId, LocalDateTime asOf) {
+        // 1. check if the account belongs to the customer
+        if (findAccount(customerId, accountId).isEmpty()) {
+            return ServiceResult.failure("Account not found.");
+        }
+
+        // 2. add up the snapshot and the records after it
+        LocalDateTime time = asOf == null ? now() : asOf;
+        return ServiceResult.success(new BalanceDTO(accountId, time, ledgerBalance(accountId, time)));
+    }
+
+    /**
+     * Compares the balance of an account with what its transaction records add up to.
+     * <p>
+     * The account is locked while it is checked, so no transfer of it is half way through; the
+     * shards of a sharded account are folded into it first. The records that the journal mode has
+     * not posted yet are added to the stored balance; journal mode transfers do not lock the
+     * account, so one committing during the check can show as a passing difference.
+     */
+    @Transactional
+    public ServiceResult<ReconciliationDTO> reconcile(Long customerId, Long accountId) {
+        // 1. check if the account belongs to the customer
+        if (findAccount(customerId, accountId).isEmpty()) {
+            return ServiceResult.failure("Account not found.");
+        }
+
+        // 2. lock the account, its transfers are either committed or not started
+        Account account = accountRepository.findByIdForUpdate(accountId).orElseThrow();
+        accountLedger.fold(account);
+
+        // 3. compare the stored balance, with what is still to be posted, with the ledger
+        LocalDateTime time = now();
+        Money balance = account.getBalance()
+                .plus(Money.ofCents(journalRepository.sumUnpostedCreditCents(accountId)))
+                .minus(Money.ofCents(journalRepository.sumUnpostedDebitCents(accountId)));
+        ReconciliationDTO reconciliation = new ReconciliationDTO(accountId, time, balance, ledgerBalance(accountId, time));
+        if (reconciliation.isConsistent()) {
+            return ServiceResult.success(reconciliation);
+        }
+
+        // 4. a full replay that matches means the snapshots missed records that committed late
+        Money replayed = Money.ofCents(balanceSnapshotRepository.sumChangeCents(accountId, LocalDateTime.MIN, time));
+        if (replayed.equals(balance)) {
+            logger.error("Balance snapshots of account {} missed transaction records that committed late, rebuilding them", accountId);
+            rebuildSnapshots(accountId);
+            reconciliation = new ReconciliationDTO(accountId, time, balance, ledgerBalance(accountId, time));
+            reconciliation.setSnapshotGap(true);
+        } else {
+            logger.error("Balance of account {} is {} but its transaction records add up to {}",
+                    accountId, reconciliation.getBalance(), reconciliation.getLedgerBalance());
+        }
+        return ServiceResult.success(reconciliation);
+    }
+
+    /**
+     * Recomputes every snapshot of an account from its transaction records, one window at a time.
+     */
+    private void rebuildSnapshots(long accountId) {
+        List<BalanceSnapshot> snapshots = balanceSnapshotRepository.findByAccountIdOrderByTimeAsc(accountId);
+        Money balance = Money.ZERO;
+        LocalDateTime after = LocalDateTime.MIN;
+        for (BalanceSnapshot snapshot : snapshots) {
+            balance = balance.plus(Money.ofCents(balanceSnapshotRepository.sumChangeCents(accountId, after, snapshot.getTime())));
+            snapshot.setBalance(balance);
+            after = snapshot.getTime();
+        }
+        balanceSnapshotRepository.saveAll(snapshots);
+    }
+
+    private Money ledgerBalance(long accountId, LocalDateTime time) {
+        Optional<BalanceSnapshot> snapshot = balanceSnapshotRepository.findFirstByAccountIdAndTimeLessThanEqualOrderByTimeDesc(accountId, time);
+        Money base = snapshot.map(BalanceSnapshot::getBalance).orElse(Money.ZERO);
+        LocalDateTime after = snapshot.map(BalanceSnapshot::getTime).orElse(LocalDateTime.MIN);
+        return base.plus(Money.ofCents(balanceSnapshotRepository.sumChangeCents(accountId, after, time)));
+    }
+
+    private Optional<Account> findAccount(Long customerId, Long accountId) {
+        if (!customerRepository.existsById(customerId)) {
+            return Optional.empty();
+        }
+        return accountRepository.findByIdAndCustomer(accountId, customerRepository.getReferenceById(customerId));
+    }
+
+    // the database keeps microseconds, a snapshot time must compare equal to what is stored
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
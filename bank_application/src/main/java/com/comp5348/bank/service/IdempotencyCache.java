@@ -0,0 +1,90 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.TransactionRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Bounded LRU of recently used idempotency keys, in front of the unique
+ * transaction_record.idempotency_key column.
+ * <p>
+ * A retried request usually arrives within seconds of the original, so most replays are answered
+ * from here without a query. Entries are only added once the transfer has committed; a miss falls
+ * back to the database, which stays the source of truth.
+ */
+@Component
+public class IdempotencyCache {
+    private final Map<String, Entry> entries;
+
+    @Autowired
+    public IdempotencyCache(@Value("${bank.idempotency.cache-size:10000}") int maxSize) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * The transfer recorded under a key, if it is still cached.
+     */
+    public Optional<Entry> get(String idempotencyKey) {
+        synchronized (entries) {
+            return Optional.ofNullable(entries.get(idempotencyKey));
+        }
+    }
+
+    /**
+     * Remembers the transfer of a key once the current transaction has committed.
+     */
+    public void putAfterCommit(TransactionRecord transactionRecord) {
+        Entry entry = Entry.of(transactionRecord);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(transactionRecord.getIdempotencyKey(), entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(transactionRecord.getIdempotencyKey(), entry);
+            }
+        });
+    }
+
+    private void put(String idempotencyKey, Entry entry) {
+        synchronized (entries) {
+            entries.put(idempotencyKey, entry);
+        }
+    }
+
+    /**
+     * What a key was used for: the record it produced and the transfer it asked for, so a reuse of
+     * the key for a different transfer can be told apart from a retry.
+     */
+    public record Entry(long transactionRecordId, Long fromAccountId, Long toAccountId, long amountCents) {
+        static Entry of(TransactionRecord transactionRecord) {
+            return new Entry(transactionRecord.getId(),
+                    transactionRecord.getFromAccount() == null ? null : transactionRecord.getFromAccount().getId(),
+                    transactionRecord.getToAccount() == null ? null : transactionRecord.getToAccount().getId(),
+                    transactionRecord.getAmount().cents());
+        }
+
+        /**
+         * Whether a request asks for the same transfer as the one recorded.
+         */
+        public boolean matches(Long fromAccountId, Long toAccountId, long amountCents) {
+            return Objects.equals(this.fromAccountId, fromAccountId)
+                    && Objects.equals(this.toAccountId, toAccountId)
+                    && this.amountCents == amountCents;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.AccountShardRepository;
+import com.comp5348.bank.repository.JournalRepository;
+import com.comp5348.bank.util.Money;
+import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Journal mode of the ledger, enabled with bank.ledger.mode=journal.
+ * <p>
+ * A transfer only appends its transaction record, unposted, and touches no account row: the record
+ * is the debit and credit pair of the transfer. The poster then applies the unposted records to
+ * the account balances in batches, one net update per account, and marks them posted.
+ * <p>
+ * The balance check of a transfer is served from an in-memory projection of the available balance
+ * of each account: its posted balance, less the debits that are not posted yet. A debit is taken
+ * off the projection when the transfer is made and given back if its transaction rolls back; a
+ * credit becomes available once it is posted. The projection of an account is loaded from the
+ * database on first use, so the bank must run as a single instance in this mode.
+ * <p>
+ * Lock order: the poster locks the accounts of a batch in ascending id order, like transfers in
+ * balance mode; journal mode transfers lock no account.
+ */
+@Service
+public class JournalLedger {
+    private static final Logger logger = LoggerFactory.getLogger(JournalLedger.class);
+
+    private final JournalRepository journalRepository;
+    private final AccountRepository accountRepository;
+    private final AccountShardRepository accountShardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Map<Long, AtomicLong> available = new ConcurrentHashMap<>();
+    // serialises loading a projection with posting, so a posted credit is never counted twice
+    private final Object postLock = new Object();
+
+    @Autowired
+    public JournalLedger(JournalRepository journalRepository,
+                         AccountRepository accountRepository,
+                         AccountShardRepository accountShardRepository,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${bank.ledger.mode:balance}") String mode,
+                         @Value("${bank.journal.batch-size:1000}") int batchSize) {
+        this.journalRepository = journalRepository;
+        this.accountRepository = accountRepository;
+        this.accountShardRepository = accountShardRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = "journal".equalsIgnoreCase(mode);
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    /**
+     * Whether transfers append unposted records instead of updating the account balances.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes an amount off the available balance of an account for a transfer of the current
+     * transaction; it is given back if the transaction does not commit.
+     *
+     * @return false if the available balance is not enough
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public boolean reserve(long accountId, Money amount) {
+        AtomicLong balance = projection(accountId);
+        long cents = amount.cents();
+        long current;
+        do {
+            current = balance.get();
+            if (current < cents) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - cents));
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    balance.addAndGet(cents);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * The balance an account can pay from: posted, less its unposted debits.
+     */
+    public Money availableBalance(long accountId) {
+        return Money.ofCents(projection(accountId).get());
+    }
+
+    /**
+     * Posts the unposted records in batches until none are left. Also runs in balance mode, to
+     * drain what journal mode left behind.
+     */
+    @Scheduled(fixedDelayString = "${bank.journal.post-interval-millis:200}")
+    public void post() {
+        int posted;
+        do {
+            synchronized (postLock) {
+                posted = postBatch();
+            }
+        } while (posted == batchSize);
+    }
+
+    private int postBatch() {
+        Map<Long, Long> credits = new HashMap<>();
+        Integer posted = transactionTemplate.execute(status -> {
+            // 1. take the oldest unposted records
+            List<Object[]> rows = journalRepository.findUnpostedForUpdate(batchSize);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+
+            // 2. add them up per account
+            TreeMap<Long, Long> changes = new TreeMap<>();
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                ids.add(((Number) row[0]).longValue());
+                long amount = ((Number) row[3]).longValue();
+                if (row[1] != null) {
+                    changes.merge(((Number) row[1]).longValue(), -amount, Long::sum);
+                }
+                if (row[2] != null) {
+                    changes.merge(((Number) row[2]).longValue(), amount, Long::sum);
+                    credits.merge(((Number) row[2]).longValue(), amount, Long::sum);
+                }
+            }
+
+            // 3. apply one net change per account, locking them in ascending id order
+            for (Map.Entry<Long, Long> change : changes.entrySet()) {
+                Account account = accountRepository.findByIdForUpdate(change.getKey()).orElseThrow();
+                account.modifyBalance(Money.ofCents(change.getValue()));
+            }
+
+            // 4. the records are posted
+            journalRepository.markPosted(ids);
+            return rows.size();
+        });
+
+        // 5. the money received is now available, accounts without a projection load it when needed
+        credits.forEach((accountId, cents) -> available.computeIfPresent(accountId, (id, balance) -> {
+            balance.addAndGet(cents);
+            return balance;
+        }));
+        if (posted != null && posted > 0) {
+            logger.debug("Posted {} transaction records", posted);
+        }
+        return posted == null ? 0 : posted;
+    }
+
+    private AtomicLong projection(long accountId) {
+        AtomicLong balance = available.get(accountId);
+        if (balance != null) {
+            return balance;
+        }
+        synchronized (postLock) {
+            return available.computeIfAbsent(accountId, id -> new AtomicLong(
+                    accountShardRepository.totalBalanceCents(id) - journalRepository.sumUnpostedDebitCents(id)));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.dto.PageDTO;
+import com.comp5348.bank.dto.StatementEntryDTO;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.CustomerRepository;
+import com.comp5348.bank.repository.StatementRepository;
+import com.comp5348.bank.util.CursorUtils;
+import com.comp5348.bank.util.ServiceResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Business logic for account statements: the transaction records of one account, newest first
+ * in pages or oldest first as a complete export.
+ */
+@Service
+public class StatementService {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private final AccountRepository accountRepository;
+    private final CustomerRepository customerRepository;
+    private final StatementRepository statementRepository;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public StatementService(AccountRepository accountRepository,
+                            CustomerRepository customerRepository,
+                            StatementRepository statementRepository,
+                            TransactionTemplate transactionTemplate,
+                            ObjectMapper objectMapper) {
+        this.accountRepository = accountRepository;
+        this.customerRepository = customerRepository;
+        this.statementRepository = statementRepository;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * A page of the statement of an account, newest first. Pass the returned nextCursor to get
+     * the next page.
+     */
+    @Transactional
+    public ServiceResult<PageDTO<StatementEntryDTO>> getStatementPage(Long customerId, Long accountId, String cursor, int size) {
+        // 1. check the page size
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ServiceResult.failure("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+
+        // 2. check if the account belongs to the customer
+        if (!ownsAccount(customerId, accountId)) {
+            return ServiceResult.failure("Account not found.");
+        }
+
+        // 3. decode the cursor: the time and id of the last entry of the previous page
+        LocalDateTime beforeTime = LocalDateTime.MAX;
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] values = CursorUtils.decode(cursor, 2);
+                beforeTime = LocalDateTime.parse(values[0]);
+                beforeId = Long.parseLong(values[1]);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return ServiceResult.failure("Invalid cursor.");
+            }
+        }
+
+        // 4. get one more entry than asked to know if there is a next page
+        List<StatementEntryDTO> entries = statementRepository.findPage(accountId, beforeTime, beforeId, size + 1);
+        boolean hasNext = entries.size() > size;
+        if (hasNext) {
+            entries = entries.subList(0, size);
+        }
+
+        // 5. return success
+        StatementEntryDTO last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        String nextCursor = hasNext ? CursorUtils.encode(last.getTime(), last.getId()) : null;
+        return ServiceResult.success(new PageDTO<>(entries, nextCursor));
+    }
+
+    /**
+     * Whether an account exists and belongs to the customer.
+     */
+    @Transactional
+    public boolean ownsAccount(Long customerId, Long accountId) {
+        return customerRepository.existsById(customerId)
+                && accountRepository.findByIdAndCustomer(accountId, customerRepository.getReferenceById(customerId)).isPresent();
+    }
+
+    /**
+     * Writes the whole statement of an account as newline-delimited JSON, oldest first.
+     * <p>
+     * The rows are read through a database cursor and written as they arrive, so memory use does
+     * not grow with the length of the statement. Check the account with ownsAccount first.
+     */
+    public void exportStatement(Long accountId, OutputStream outputStream) {
+        readOnlyTransactionTemplate.executeWithoutResult(status -> statementRepository.forEach(accountId, entry -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(entry));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+}
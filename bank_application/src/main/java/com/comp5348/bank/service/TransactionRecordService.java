@@ -1,117 +1,440 @@
 package com.comp5348.bank.service;
 
+import com.comp5348.bank.dto.BatchTransferItemDTO;
+import com.comp5348.bank.dto.BatchTransferResultDTO;
 import com.comp5348.bank.dto.TransactionRecordDTO;
 import com.comp5348.bank.dto.SimpleTransactionRecordDTO;
+import com.comp5348.bank.errors.IdempotencyKeyReusedException;
 import com.comp5348.bank.errors.InsufficientBalanceException;
 import com.comp5348.bank.errors.NegativeTransferAmountException;
 import com.comp5348.bank.model.Account;
 import com.comp5348.bank.model.TransactionRecord;
 import com.comp5348.bank.repository.AccountRepository;
-import com.comp5348.bank.repository.CustomerRepository;
 import com.comp5348.bank.repository.TransactionRecordRepository;
+import com.comp5348.bank.util.Money;
 import com.comp5348.bank.util.ServiceResult;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
 /**
  * Business logic for creating and managing transactions (transfer / deposit).
  */
 @Service
 public class TransactionRecordService {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionRecordService.class);
+
     private final AccountRepository accountRepository;
-    private final CustomerRepository customerRepository;
     private final TransactionRecordRepository transactionRecordRepository;
-
-    @PersistenceContext
-    private EntityManager entityManager;
+    private final AccountLedger accountLedger;
+    private final JournalLedger journalLedger;
+    private final IdempotencyCache idempotencyCache;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchChunkSize;
 
     @Autowired
-    public TransactionRecordService(AccountRepository accountRepository, CustomerRepository customerRepository, TransactionRecordRepository transactionRecordRepository) {
+    public TransactionRecordService(AccountRepository accountRepository,
+                                    TransactionRecordRepository transactionRecordRepository,
+                                    AccountLedger accountLedger,
+                                    JournalLedger journalLedger,
+                                    IdempotencyCache idempotencyCache,
+                                    TransactionTemplate transactionTemplate,
+                                    @Value("${bank.transfers.batch.chunk-size:500}") int batchChunkSize) {
         this.accountRepository = accountRepository;
-        this.customerRepository = customerRepository;
         this.transactionRecordRepository = transactionRecordRepository;
+        this.accountLedger = accountLedger;
+        this.journalLedger = journalLedger;
+        this.idempotencyCache = idempotencyCache;
+        this.transactionTemplate = transactionTemplate;
+        this.batchChunkSize = Math.max(batchChunkSize, 1);
     }
 
+    /**
+     * Moves money between the accounts of customers, either side may be null for a deposit or
+     * withdrawal.
+     * <p>
+     * With an idempotency key, a transfer that was already recorded under the key is returned as
+     * it is instead of being applied again; a key reused for a different transfer is rejected.
+     *
+     * @param idempotencyKey the caller's key for this transfer, may be null
+     */
     @Transactional
     public TransactionRecordDTO performTransaction(
             Long fromCustomerId, Long fromAccountId,
             Long toCustomerId, Long toAccountId,
-            Double amount, String memo)
+            Money amount, String memo, String idempotencyKey)
             throws InsufficientBalanceException, HttpClientErrorException {
-        if (amount <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new NegativeTransferAmountException();
         }
 
+        // a recent retry is answered from the cache before any lock is taken
+        Optional<IdempotencyCache.Entry> cached = cachedReplay(idempotencyKey, fromAccountId, toAccountId, amount);
+        if (cached.isPresent()) {
+            return toDTO(transactionRecordRepository.findById(cached.get().transactionRecordId()).orElseThrow());
+        }
+
+        Map<Long, Account> accounts = lockAccounts(fromAccountId, toAccountId);
+
+        // with the accounts locked, a concurrent request with the same key has committed or not started
+        Optional<TransactionRecord> replayed = storedReplay(idempotencyKey, fromAccountId, toAccountId, amount);
+        if (replayed.isPresent()) {
+            return toDTO(replayed.get());
+        }
+
         Account fromAccount = null;
         if (fromAccountId != null) {
-            fromAccount = accountRepository
-                    .findByIdAndCustomer(fromAccountId, customerRepository.getReferenceById(fromCustomerId))
-                    .orElseThrow();
-            entityManager.refresh(fromAccount);
+            fromAccount = ownedAccount(accounts.get(fromAccountId), fromCustomerId).orElseThrow();
+            fold(fromAccount);
 
-            if (fromAccount.getBalance() < amount) {
+            if (!debit(fromAccount, amount)) {
                 throw new InsufficientBalanceException();
             }
-            fromAccount.modifyBalance(-amount);
-            accountRepository.save(fromAccount);
         }
         Account toAccount = null;
         if (toAccountId != null) {
-            toAccount = accountRepository
-                    .findByIdAndCustomer(toAccountId, customerRepository.getReferenceById(toCustomerId))
-                    .orElseThrow();
-            toAccount.modifyBalance(amount);
-            accountRepository.save(toAccount);
+            toAccount = ownedAccount(accounts.get(toAccountId), toCustomerId).orElseThrow();
+            credit(toAccount, amount);
         }
 
-        TransactionRecord transactionRecord = new TransactionRecord(amount, toAccount, fromAccount, memo);
-        transactionRecordRepository.save(transactionRecord);
+        TransactionRecord transactionRecord = newRecord(amount, toAccount, fromAccount, memo);
+        save(transactionRecord, idempotencyKey);
 
-        return new TransactionRecordDTO(transactionRecord);
+        return toDTO(transactionRecord);
     }
 
+    /**
+     * Moves money from one account to another without checking the customers, used by the store.
+     * An idempotency key makes retries safe, see performTransaction.
+     *
+     * @param idempotencyKey the caller's key for this transfer, may be null
+     */
     @Transactional
-    public ServiceResult<SimpleTransactionRecordDTO> performSimpleTransaction(Long fromAccountId, Long toAccountId, Double amount, String memo) {
+    public ServiceResult<SimpleTransactionRecordDTO> performSimpleTransaction(Long fromAccountId, Long toAccountId, Money amount, String memo, String idempotencyKey) {
         // 1. check if the amount is positive
-        if (amount <= 0) {
+        if (amount == null || !amount.isPositive()) {
             return ServiceResult.failure("Amount must be positive.");
         }
 
-        // 2. check if the fromAccount exists
-        if(!accountRepository.existsById(fromAccountId)) {
+        // 1.1 a recent retry is answered from the cache before any lock is taken
+        try {
+            Optional<IdempotencyCache.Entry> cached = cachedReplay(idempotencyKey, fromAccountId, toAccountId, amount);
+            if (cached.isPresent()) {
+                return ServiceResult.success(new SimpleTransactionRecordDTO(cached.get().transactionRecordId()));
+            }
+        } catch (IdempotencyKeyReusedException e) {
+            return ServiceResult.failure("Idempotency key was already used for a different transaction.");
+        }
+
+        // 2. lock both accounts, in ascending id order
+        Map<Long, Account> accounts = lockAccounts(fromAccountId, toAccountId);
+
+        // 2.1 with the accounts locked, a concurrent request with the same key has committed or not started
+        try {
+            Optional<TransactionRecord> replayed = storedReplay(idempotencyKey, fromAccountId, toAccountId, amount);
+            if (replayed.isPresent()) {
+                return ServiceResult.success(new SimpleTransactionRecordDTO(replayed.get().getId()));
+            }
+        } catch (IdempotencyKeyReusedException e) {
+            return ServiceResult.failure("Idempotency key was already used for a different transaction.");
+        }
+
+        // 3. check if the fromAccount exists
+        Account fromAccount = accounts.get(fromAccountId);
+        if (fromAccount == null) {
             return ServiceResult.failure("From account not found.");
         }
 
-        // 3. check if the toAccount exists
-        if(!accountRepository.existsById(toAccountId)) {
+        // 4. check if the toAccount exists
+        Account toAccount = accounts.get(toAccountId);
+        if (toAccount == null) {
             return ServiceResult.failure("To account not found.");
         }
 
-        // 4. check if the fromAccount has enough balance
-        Account fromAccount = accountRepository.findById(fromAccountId).orElseThrow();
-        entityManager.refresh(fromAccount);
-        if (fromAccount.getBalance() < amount) {
+        // 5. take the money if the fromAccount has enough balance, a sharded account collects its shards first
+        fold(fromAccount);
+        if (!debit(fromAccount, amount)) {
             return ServiceResult.failure("Insufficient balance.");
         }
 
-        // 5. modify the fromAccount balance
-        fromAccount.modifyBalance(-amount);
-        accountRepository.save(fromAccount);
+        // 6. give the money, the locked accounts are flushed on commit
+        credit(toAccount, amount);
 
-        // 5. modify the toAccount balance
-        Account toAccount = accountRepository.findById(toAccountId).orElseThrow();
-        toAccount.modifyBalance(amount);
-        accountRepository.save(toAccount);
+        // 7. save the transaction record under its idempotency key
+        TransactionRecord transactionRecord = newRecord(amount, toAccount, fromAccount, memo);
+        save(transactionRecord, idempotencyKey);
 
-        // 6. save the transaction record
-        TransactionRecord transactionRecord = new TransactionRecord(amount, toAccount, fromAccount, memo);
+        // 8. return success
+        return ServiceResult.success(new SimpleTransactionRecordDTO(transactionRecord.getId()));
+    }
+
+    /**
+     * Applies a list of account-to-account transfers, like performSimpleTransaction, in chunks of
+     * bank.transfers.batch.chunk-size transfers per database transaction.
+     * <p>
+     * A transfer that is invalid (unknown account, insufficient balance) fails on its own and the
+     * others of its chunk still apply. If a chunk fails as a whole, none of its transfers apply
+     * and all of them are reported as failed.
+     *
+     * @param transfers the transfers, applied in list order
+     * @return one result per transfer, in the same order
+     */
+    public List<BatchTransferResultDTO> performBatchTransaction(List<BatchTransferItemDTO> transfers) {
+        List<BatchTransferResultDTO> results = new ArrayList<>(transfers.size());
+        for (int offset = 0; offset < transfers.size(); offset += batchChunkSize) {
+            List<BatchTransferItemDTO> chunk = transfers.subList(offset, Math.min(offset + batchChunkSize, transfers.size()));
+            int chunkOffset = offset;
+            try {
+                results.addAll(transactionTemplate.execute(status -> applyChunk(chunk, chunkOffset)));
+            } catch (RuntimeException e) {
+                logger.error("Batch transfers {} to {} failed", chunkOffset, chunkOffset + chunk.size() - 1, e);
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(BatchTransferResultDTO.failure(chunkOffset + i, "Batch chunk failed."));
+                }
+            }
+        }
+        return results;
+    }
+
+    private List<BatchTransferResultDTO> applyChunk(List<BatchTransferItemDTO> chunk, int offset) {
+        // 1. lock every account of the chunk at once, in ascending id order
+        List<Long> fromAccountIds = new ArrayList<>();
+        List<Long> toAccountIds = new ArrayList<>();
+        for (BatchTransferItemDTO transfer : chunk) {
+            fromAccountIds.add(transfer.getFromAccountId());
+            toAccountIds.add(transfer.getToAccountId());
+        }
+        Map<Long, Account> accounts = lockAccounts(fromAccountIds, toAccountIds);
+
+        // 2. sharded accounts that pay collect their shards once
+        for (Long fromAccountId : new TreeSet<>(accounts.keySet())) {
+            if (fromAccountIds.contains(fromAccountId)) {
+                fold(accounts.get(fromAccountId));
+            }
+        }
+
+        // 3. apply the transfers in order, each sees the balances left by the previous ones
+        List<BatchTransferResultDTO> results = new ArrayList<>(chunk.size());
+        List<TransactionRecord> transactionRecords = new ArrayList<>();
+        List<Integer> recordIndexes = new ArrayList<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            BatchTransferItemDTO transfer = chunk.get(i);
+            Money amount = transfer.getAmount();
+            Account fromAccount = accounts.get(transfer.getFromAccountId());
+            Account toAccount = accounts.get(transfer.getToAccountId());
+
+            // 3.1 check the transfer
+            String error = null;
+            if (amount == null || !amount.isPositive()) {
+                error = "Amount must be positive.";
+            } else if (fromAccount == null) {
+                error = "From account not found.";
+            } else if (toAccount == null) {
+                error = "To account not found.";
+            } else if (!debit(fromAccount, amount)) {
+                // the last check, it takes the money when there is enough
+                error = "Insufficient balance.";
+            }
+            if (error != null) {
+                results.add(BatchTransferResultDTO.failure(offset + i, error));
+                continue;
+            }
+
+            // 3.2 give the money
+            credit(toAccount, amount);
+            transactionRecords.add(newRecord(amount, toAccount, fromAccount, transfer.getMemo() == null ? "Transfer." : transfer.getMemo()));
+            recordIndexes.add(results.size());
+            results.add(null);
+        }
+
+        // 4. insert the transaction records together, they are sent in JDBC batches on flush
+        transactionRecordRepository.saveAll(transactionRecords);
+        for (int i = 0; i < transactionRecords.size(); i++) {
+            int resultIndex = recordIndexes.get(i);
+            results.set(resultIndex, BatchTransferResultDTO.success(offset + resultIndex, transactionRecords.get(i).getId()));
+        }
+        return results;
+    }
+
+    /**
+     * Locks the accounts of a transfer with SELECT ... FOR UPDATE in ascending id order.
+     * <p>
+     * Every transfer takes its locks in the same global order, so two transfers over the same pair
+     * of accounts queue behind each other instead of deadlocking, and concurrent transfers into a
+     * hot account simply wait for its row instead of failing an optimistic version check.
+     * A sharded receiving account is only read, its credit goes to a shard (see AccountLedger).
+     * In journal mode nothing is locked, transfers do not update the accounts (see JournalLedger).
+     * Missing ids are absent from the returned map, null ids are skipped.
+     *
+     * @param fromAccountId the debited account, may be null
+     * @param toAccountId   the credited account, may be null
+     * @return the accounts by id
+     */
+    private Map<Long, Account> lockAccounts(Long fromAccountId, Long toAccountId) {
+        return lockAccounts(Collections.singletonList(fromAccountId), Collections.singletonList(toAccountId));
+    }
+
+    /**
+     * Locks the accounts of several transfers, see lockAccounts(Long, Long).
+     */
+    private Map<Long, Account> lockAccounts(Collection<Long> fromAccountIds, Collection<Long> toAccountIds) {
+        Map<Long, Account> accounts = new HashMap<>();
+        TreeSet<Long> orderedIds = new TreeSet<>();
+        for (Long fromAccountId : fromAccountIds) {
+            if (fromAccountId != null) {
+                orderedIds.add(fromAccountId);
+            }
+        }
+        TreeSet<Long> readIds = new TreeSet<>();
+        for (Long toAccountId : toAccountIds) {
+            if (toAccountId == null || orderedIds.contains(toAccountId)) {
+                continue;
+            }
+            if (accountLedger.isSharded(toAccountId)) {
+                readIds.add(toAccountId);
+            } else {
+                orderedIds.add(toAccountId);
+            }
+        }
+        if (journalLedger.isEnabled()) {
+            readIds.addAll(orderedIds);
+            orderedIds.clear();
+        }
+        for (Long accountId : orderedIds) {
+            accountRepository.findByIdForUpdate(accountId).ifPresent(account -> accounts.put(accountId, account));
+        }
+        for (Long accountId : readIds) {
+            accountRepository.findById(accountId).ifPresent(account -> accounts.put(accountId, account));
+        }
+        return accounts;
+    }
+
+    /**
+     * The transfer recorded under a key according to the cache, if it is the same transfer.
+     *
+     * @throws IdempotencyKeyReusedException if the key was used for a different transfer
+     */
+    private Optional<IdempotencyCache.Entry> cachedReplay(String idempotencyKey, Long fromAccountId, Long toAccountId, Money amount) {
+        if (idempotencyKey == null) {
+            return Optional.empty();
+        }
+        Optional<IdempotencyCache.Entry> entry = idempotencyCache.get(idempotencyKey);
+        if (entry.isPresent() && !entry.get().matches(fromAccountId, toAccountId, amount.cents())) {
+            throw new IdempotencyKeyReusedException();
+        }
+        return entry;
+    }
+
+    /**
+     * The transfer recorded under a key in the database, if it is the same transfer.
+     *
+     * @throws IdempotencyKeyReusedException if the key was used for a different transfer
+     */
+    private Optional<TransactionRecord> storedReplay(String idempotencyKey, Long fromAccountId, Long toAccountId, Money amount) {
+        if (idempotencyKey == null) {
+            return Optional.empty();
+        }
+        Optional<TransactionRecord> transactionRecord = transactionRecordRepository.findByIdempotencyKey(idempotencyKey);
+        if (transactionRecord.isPresent()
+                && !IdempotencyCache.Entry.of(transactionRecord.get()).matches(fromAccountId, toAccountId, amount.cents())) {
+            throw new IdempotencyKeyReusedException();
+        }
+        return transactionRecord;
+    }
+
+    /**
+     * Saves a new transaction record, and remembers its idempotency key once it is committed.
+     */
+    private void save(TransactionRecord transactionRecord, String idempotencyKey) {
+        transactionRecord.setIdempotencyKey(idempotencyKey);
         transactionRecordRepository.save(transactionRecord);
+        if (idempotencyKey != null) {
+            idempotencyCache.putAfterCommit(transactionRecord);
+        }
+    }
 
-        // 7. return success
-        return ServiceResult.success(new SimpleTransactionRecordDTO(transactionRecord.getId()));
+    /**
+     * The DTO of a transaction record, with the total balance of a sharded receiving account.
+     */
+    private TransactionRecordDTO toDTO(TransactionRecord transactionRecord) {
+        TransactionRecordDTO transactionRecordDTO = new TransactionRecordDTO(transactionRecord);
+        Account toAccount = transactionRecord.getToAccount();
+        if (toAccount != null && accountLedger.isSharded(toAccount.getId())) {
+            transactionRecordDTO.getToAccount().setBalance(accountLedger.balanceOf(toAccount));
+        }
+        return transactionRecordDTO;
+    }
+
+    /**
+     * A new transaction record, unposted in journal mode.
+     */
+    private TransactionRecord newRecord(Money amount, Account toAccount, Account fromAccount, String memo) {
+        TransactionRecord transactionRecord = new TransactionRecord(amount, toAccount, fromAccount, memo);
+        transactionRecord.setPosted(!journalLedger.isEnabled());
+        return transactionRecord;
+    }
+
+    /**
+     * Moves the shards of a paying account into its locked row, not needed in journal mode where
+     * the account is not locked and pays from its available balance.
+     */
+    private void fold(Account account) {
+        if (!journalLedger.isEnabled()) {
+            accountLedger.fold(account);
+        }
+    }
+
+    /**
+     * Debits an account if its balance is enough: its locked row, or in journal mode its available
+     * balance, the record is posted later.
+     *
+     * @return false if the balance is not enough
+     */
+    private boolean debit(Account account, Money amount) {
+        if (journalLedger.isEnabled()) {
+            return journalLedger.reserve(account.getId(), amount);
+        }
+        if (account.getBalance().compareTo(amount) < 0) {
+            return false;
+        }
+        account.modifyBalance(amount.negate());
+        return true;
+    }
+
+    /**
+     * Credits an account: a sharded account on one of its shards, any other on its locked row.
+     * In journal mode the credit is applied when the record is posted.
+     */
+    private void credit(Account account, Money amount) {
+        if (journalLedger.isEnabled()) {
+            return;
+        }
+        if (accountLedger.isSharded(account.getId())) {
+            accountLedger.credit(account.getId(), amount);
+        } else {
+            account.modifyBalance(amount);
+        }
+    }
+
+    /**
+     * The account if it belongs to the customer.
+     */
+    private static Optional<Account> ownedAccount(Account account, Long customerId) {
+        return Optional.ofNullable(account)
+                .filter(candidate -> customerId != null && candidate.getCustomer().getId() == customerId);
     }
 }
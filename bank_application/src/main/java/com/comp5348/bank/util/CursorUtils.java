@@ -0,0 +1,35 @@
+package com.comp5348.bank.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque cursor tokens for keyset pagination: the sort key of the last row of a page, URL-safe Base64 encoded.
+ */
+public class CursorUtils {
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * A cursor holding the given values, in order.
+     */
+    public static String encode(Object... values) {
+        String joined = Arrays.stream(values).map(String::valueOf).collect(Collectors.joining(SEPARATOR));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The values of a cursor.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static String[] decode(String cursor, int size) {
+        String joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        String[] values = joined.split(SEPARATOR, -1);
+        if (values.length != size) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return values;
+    }
+}
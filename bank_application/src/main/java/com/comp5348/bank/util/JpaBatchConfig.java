@@ -0,0 +1,25 @@
+package com.comp5348.bank.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Sends inserts and updates of a transaction to the database in JDBC batches.
+ * <p>
+ * The entities use sequence ids, so Hibernate can assign ids without a round trip per insert and
+ * group the statements; batch transfers write hundreds of transaction records per transaction.
+ * Explicit spring.jpa.properties settings take precedence.
+ */
+@Configuration
+public class JpaBatchConfig {
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer(@Value("${bank.jpa.batch-size:50}") int batchSize) {
+        return properties -> {
+            properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+            properties.putIfAbsent("hibernate.order_inserts", true);
+            properties.putIfAbsent("hibernate.order_updates", true);
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package com.comp5348.bank.repository;
+
+import com.comp5348.bank.dto.StatementEntryDTO;
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.Customer;
+import com.comp5348.bank.model.TransactionRecord;
+import com.comp5348.bank.util.CursorUtils;
+import com.comp5348.bank.util.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keyset pages of a statement cover every entry of the account exactly once, newest first, also
+ * when many records share the same time.
+ */
+@DataJpaTest
+@Import(StatementRepository.class)
+class StatementRepositoryTest {
+    private static final LocalDateTime MORNING = LocalDateTime.of(2024, 10, 1, 9, 0);
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 10, 1, 12, 0);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private StatementRepository statementRepository;
+
+    private Account account;
+    private final List<TransactionRecord> statement = new ArrayList<>();
+
+    @BeforeEach
+    void createRecords() {
+        Customer customer = entityManager.persist(new Customer("Ada", "Lovelace"));
+        account = entityManager.persist(new Account(customer, "Savings"));
+        Account other = entityManager.persist(new Account(customer, "Cheque"));
+        Account unrelated = entityManager.persist(new Account(customer, "Holiday"));
+
+        // a deposit, then many records at the same times in both directions
+        statement.add(record(Money.valueOf("100.00"), account, null, MORNING.minusDays(1)));
+        for (int i = 0; i < 7; i++) {
+            statement.add(record(Money.ofCents(100 + i), other, account, MORNING));
+            statement.add(record(Money.ofCents(200 + i), account, other, NOON));
+        }
+        // a transfer to itself is listed once
+        statement.add(record(Money.valueOf("1.00"), account, account, NOON));
+        // records of other accounts are not listed
+        record(Money.valueOf("5.00"), unrelated, other, NOON);
+        record(Money.valueOf("6.00"), other, unrelated, MORNING);
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pagesCoverTheStatementOnceNewestFirst() {
+        List<Long> expected = statement.stream()
+                .sorted(Comparator.comparing(TransactionRecord::getTime).thenComparing(TransactionRecord::getId).reversed())
+                .map(TransactionRecord::getId)
+                .toList();
+
+        for (int size = 1; size <= 4; size++) {
+            assertThat(pageThrough(size)).as("page size %d", size).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void entriesAreSignedFromTheAccountsSide() {
+        List<StatementEntryDTO> page = statementRepository.findPage(account.getId(), LocalDateTime.MAX, Long.MAX_VALUE, 100);
+
+        assertThat(page).hasSize(statement.size());
+        StatementEntryDTO deposit = page.get(page.size() - 1);
+        assertThat(deposit.getAmount()).isEqualTo(Money.valueOf("100.00"));
+        assertThat(deposit.getCounterpartyAccountId()).isNull();
+        assertThat(page).filteredOn(entry -> entry.getTime().equals(MORNING))
+                .allMatch(entry -> entry.getAmount().isNegative());
+    }
+
+    @Test
+    void exportListsTheStatementOldestFirst() {
+        List<Long> exported = new ArrayList<>();
+        statementRepository.forEach(account.getId(), entry -> exported.add(entry.getId()));
+
+        assertThat(exported).isEqualTo(statement.stream()
+                .sorted(Comparator.comparing(TransactionRecord::getTime).thenComparing(TransactionRecord::getId))
+                .map(TransactionRecord::getId)
+                .toList());
+    }
+
+    // follow the cursors the way StatementService does, through their encoded form
+    private List<Long> pageThrough(int size) {
+        List<Long> ids = new ArrayList<>();
+        LocalDateTime beforeTime = LocalDateTime.MAX;
+        long beforeId = Long.MAX_VALUE;
+        while (true) {
+            List<StatementEntryDTO> page = statementRepository.findPage(account.getId(), beforeTime, beforeId, size + 1);
+            boolean hasNext = page.size() > size;
+            page = hasNext ? page.subList(0, size) : page;
+            page.forEach(entry -> ids.add(entry.getId()));
+            if (!hasNext) {
+                return ids;
+            }
+            StatementEntryDTO last = page.get(page.size() - 1);
+            String[] cursor = CursorUtils.decode(CursorUtils.encode(last.getTime(), last.getId()), 2);
+            beforeTime = LocalDateTime.parse(cursor[0]);
+            beforeId = Long.parseLong(cursor[1]);
+        }
+    }
+
+    private TransactionRecord record(Money amount, Account toAccount, Account fromAccount, LocalDateTime time) {
+        TransactionRecord transactionRecord = new TransactionRecord(amount, toAccount, fromAccount, "Transfer.");
+        ReflectionTestUtils.setField(transactionRecord, "time", time);
+        return entityManager.persist(transactionRecord);
+    }
+}
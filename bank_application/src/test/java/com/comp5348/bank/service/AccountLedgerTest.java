@@ -0,0 +1,143 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.AccountShard;
+import com.comp5348.bank.model.Customer;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.AccountShardRepository;
+import com.comp5348.bank.util.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Credits to a sharded account land on its shards and the balance counts them; folding moves the
+ * shards into the locked account row without changing that balance, and compaction folds only the
+ * sharded accounts. The shard table is an in-memory stand-in for the single-statement upsert and
+ * sum, which only run on Postgres.
+ */
+class AccountLedgerTest {
+    private final Map<Long, Account> accounts = new HashMap<>();
+    // shards by account id, then shard index
+    private final Map<Long, Map<Integer, AccountShard>> shards = new HashMap<>();
+    private AccountRepository accountRepository;
+    private AccountShardRepository accountShardRepository;
+    private AccountLedger accountLedger;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = mock(AccountRepository.class);
+        accountShardRepository = mock(AccountShardRepository.class);
+        when(accountRepository.findByIdForUpdate(anyLong())).thenAnswer(invocation ->
+                Optional.ofNullable(accounts.get(invocation.<Long>getArgument(0))));
+        doAnswer(invocation -> {
+            long accountId = invocation.getArgument(0);
+            int shardIndex = invocation.getArgument(1);
+            long cents = invocation.getArgument(2);
+            AccountShard shard = shards.computeIfAbsent(accountId, id -> new TreeMap<>())
+                    .computeIfAbsent(shardIndex, index -> shard(accountId, index));
+            shard.setBalance(shard.getBalance().plus(Money.ofCents(cents)));
+            return null;
+        }).when(accountShardRepository).credit(anyLong(), anyInt(), anyLong());
+        when(accountShardRepository.totalBalanceCents(anyLong())).thenAnswer(invocation -> {
+            long accountId = invocation.getArgument(0);
+            return accounts.get(accountId).getBalance().cents() + shardCents(accountId);
+        });
+        when(accountShardRepository.findByAccountIdForUpdate(anyLong())).thenAnswer(invocation ->
+                List.copyOf(shards.getOrDefault(invocation.<Long>getArgument(0), Map.of()).values()));
+        accountLedger = new AccountLedger(accountRepository, accountShardRepository, Set.of(1L), 16);
+
+        account(1, "100.00");
+        account(2, "50.00");
+    }
+
+    @Test
+    void creditsAreSpreadOverTheShardsAndCounted() {
+        for (int i = 0; i < 200; i++) {
+            accountLedger.credit(1L, Money.valueOf("0.50"));
+        }
+
+        assertThat(shards.get(1L)).hasSizeGreaterThan(1);
+        assertThat(shardCents(1L)).isEqualTo(10_000L);
+        assertThat(accounts.get(1L).getBalance()).isEqualTo(Money.valueOf("100.00"));
+        assertThat(accountLedger.balanceOf(accounts.get(1L))).isEqualTo(Money.valueOf("200.00"));
+    }
+
+    @Test
+    void foldMovesTheShardsIntoTheLockedAccountWithoutChangingTheBalance() {
+        for (int i = 0; i < 40; i++) {
+            accountLedger.credit(1L, Money.ofCents(100 + i));
+        }
+        Account account = accountRepository.findByIdForUpdate(1L).orElseThrow();
+        Money before = accountLedger.balanceOf(account);
+
+        accountLedger.fold(account);
+
+        assertThat(shardCents(1L)).isZero();
+        assertThat(account.getBalance()).isEqualTo(before);
+        assertThat(accountLedger.balanceOf(account)).isEqualTo(before);
+        assertThat(before).isEqualTo(Money.valueOf("100.00").plus(Money.ofCents(40 * 100 + 39 * 40 / 2)));
+    }
+
+    @Test
+    void foldLeavesAnUnshardedAccountAlone() {
+        Account account = accounts.get(2L);
+
+        accountLedger.fold(account);
+
+        assertThat(account.getBalance()).isEqualTo(Money.valueOf("50.00"));
+        assertThat(accountLedger.balanceOf(account)).isEqualTo(Money.valueOf("50.00"));
+        verify(accountShardRepository, never()).findByAccountIdForUpdate(anyLong());
+        verify(accountShardRepository, never()).totalBalanceCents(anyLong());
+    }
+
+    @Test
+    void compactionFoldsOnlyTheShardedAccounts() {
+        accountLedger.credit(1L, Money.valueOf("25.00"));
+        accountLedger.credit(1L, Money.valueOf("5.00"));
+
+        accountLedger.compact();
+
+        verify(accountRepository).findByIdForUpdate(1L);
+        verify(accountRepository, never()).findByIdForUpdate(2L);
+        assertThat(accounts.get(1L).getBalance()).isEqualTo(Money.valueOf("130.00"));
+        assertThat(accountLedger.balanceOf(accounts.get(1L))).isEqualTo(Money.valueOf("130.00"));
+
+        // credits after the compaction go to the shards again
+        accountLedger.credit(1L, Money.valueOf("1.00"));
+        assertThat(accounts.get(1L).getBalance()).isEqualTo(Money.valueOf("130.00"));
+        assertThat(accountLedger.balanceOf(accounts.get(1L))).isEqualTo(Money.valueOf("131.00"));
+    }
+
+    private long shardCents(long accountId) {
+        return shards.getOrDefault(accountId, Map.of()).values().stream()
+                .mapToLong(shard -> shard.getBalance().cents())
+                .sum();
+    }
+
+    private static AccountShard shard(long accountId, int shardIndex) {
+        AccountShard shard = new AccountShard();
+        shard.setAccountId(accountId);
+        shard.setShardIndex(shardIndex);
+        return shard;
+    }
+
+    private void account(long id, String balance) {
+        Account account = new Account(new Customer("Ada", "Lovelace"), "Savings");
+        ReflectionTestUtils.setField(account, "id", id);
+        account.modifyBalance(Money.valueOf(balance));
+        accounts.put(id, account);
+    }
+}
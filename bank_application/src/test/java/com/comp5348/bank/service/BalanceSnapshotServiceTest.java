@@ -0,0 +1,238 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.dto.ReconciliationDTO;
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.BalanceSnapshot;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.BalanceSnapshotRepository;
+import com.comp5348.bank.repository.CustomerRepository;
+import com.comp5348.bank.repository.JournalRepository;
+import com.comp5348.bank.util.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * A balance read from the latest snapshot plus the records after it equals the balance replayed
+ * from every record of the account, at any point in time.
+ * <p>
+ * A record that commits after a run passed its time is picked up: in the window of the previous
+ * run by the next run, further back by reconcile, which rebuilds the snapshots of the account.
+ * <p>
+ * The repository is backed by in-memory lists with the same window semantics as its queries:
+ * after is exclusive, until is inclusive.
+ */
+class BalanceSnapshotServiceTest {
+    private static final int ACCOUNTS = 5;
+    private static final int RECORDS = 2_000;
+
+    private final List<Transfer> transfers = new ArrayList<>();
+    private final List<BalanceSnapshot> snapshots = new ArrayList<>();
+    private final LocalDateTime start = LocalDateTime.now().minusHours(10).truncatedTo(ChronoUnit.MICROS);
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+    private AccountRepository accountRepository;
+    private CustomerRepository customerRepository;
+
+    @BeforeEach
+    void setUp() {
+        // 1. random deposits and transfers over the last ten hours
+        Random random = new Random(5348);
+        for (int i = 0; i < RECORDS; i++) {
+            Long fromAccountId = random.nextInt(4) == 0 ? null : (long) (1 + random.nextInt(ACCOUNTS));
+            long toAccountId = 1 + random.nextInt(ACCOUNTS);
+            LocalDateTime time = start.plus(random.nextLong(TimeUnit.HOURS.toMicros(10)), ChronoUnit.MICROS);
+            transfers.add(new Transfer(fromAccountId, toAccountId, 1 + random.nextInt(100_000), time));
+        }
+
+        // 2. a repository over the lists
+        balanceSnapshotRepository = mock(BalanceSnapshotRepository.class);
+        when(balanceSnapshotRepository.findLatestTime()).thenAnswer(invocation ->
+                snapshots.stream().map(BalanceSnapshot::getTime).max(Comparator.naturalOrder()).orElse(null));
+        when(balanceSnapshotRepository.findLatestTimeBefore(any())).thenAnswer(invocation -> snapshots.stream()
+                .map(BalanceSnapshot::getTime).filter(time -> time.isBefore(invocation.<LocalDateTime>getArgument(0))).max(Comparator.naturalOrder()).orElse(null));
+        when(balanceSnapshotRepository.findByTime(any())).thenAnswer(invocation ->
+                snapshots.stream().filter(snapshot -> snapshot.getTime().equals(invocation.getArgument(0))).toList());
+        when(balanceSnapshotRepository.findByAccountIdOrderByTimeAsc(anyLong())).thenAnswer(invocation -> snapshots.stream()
+                .filter(snapshot -> snapshot.getAccountId() == invocation.<Long>getArgument(0))
+                .sorted(Comparator.comparing(BalanceSnapshot::getTime)).toList());
+        when(balanceSnapshotRepository.sumChangeCentsByAccount(any(), any())).thenAnswer(invocation -> {
+            Map<Long, Long> changes = changesBetween(invocation.getArgument(0), invocation.getArgument(1));
+            List<Object[]> rows = new ArrayList<>();
+            changes.forEach((accountId, cents) -> rows.add(new Object[]{accountId, cents}));
+            return rows;
+        });
+        when(balanceSnapshotRepository.sumChangeCents(anyLong(), any(), any())).thenAnswer(invocation ->
+                changesBetween(invocation.getArgument(1), invocation.getArgument(2)).getOrDefault(invocation.<Long>getArgument(0), 0L));
+        when(balanceSnapshotRepository.findLatestByAccountIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> accountIds = invocation.getArgument(0);
+            return accountIds.stream().map(accountId -> latestSnapshot(accountId, LocalDateTime.MAX)).flatMap(Optional::stream).toList();
+        });
+        when(balanceSnapshotRepository.findLatestByAccountIdsBefore(anyCollection(), any())).thenAnswer(invocation -> {
+            Collection<Long> accountIds = invocation.getArgument(0);
+            LocalDateTime time = invocation.<LocalDateTime>getArgument(1).minus(1, ChronoUnit.MICROS);
+            return accountIds.stream().map(accountId -> latestSnapshot(accountId, time)).flatMap(Optional::stream).toList();
+        });
+        when(balanceSnapshotRepository.findFirstByAccountIdAndTimeLessThanEqualOrderByTimeDesc(anyLong(), any())).thenAnswer(invocation ->
+                latestSnapshot(invocation.getArgument(0), invocation.getArgument(1)));
+        // corrected snapshots are already in the list
+        when(balanceSnapshotRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            for (BalanceSnapshot snapshot : invocation.<List<BalanceSnapshot>>getArgument(0)) {
+                if (!snapshots.contains(snapshot)) {
+                    snapshots.add(snapshot);
+                }
+            }
+            return invocation.getArgument(0);
+        });
+
+        accountRepository = mock(AccountRepository.class);
+        customerRepository = mock(CustomerRepository.class);
+        when(customerRepository.existsById(anyLong())).thenReturn(true);
+        when(accountRepository.findByIdAndCustomer(anyLong(), any())).thenReturn(Optional.of(mock(Account.class)));
+    }
+
+    @Test
+    void snapshotPlusDeltaEqualsAFullReplay() {
+        // 1. snapshot runs eight, five and two hours ago; the settle time decides where each run stops
+        for (int hoursAgo : new int[]{8, 5, 2}) {
+            service(TimeUnit.HOURS.toMillis(hoursAgo)).takeSnapshots();
+        }
+        assertThat(snapshots).extracting(BalanceSnapshot::getTime).distinct().hasSize(3);
+
+        // 2. balances read back at random times, at the snapshot times and now
+        BalanceSnapshotService balanceSnapshotService = service(0);
+        List<LocalDateTime> times = new ArrayList<>(snapshots.stream().map(BalanceSnapshot::getTime).distinct().toList());
+        Random random = new Random(17);
+        for (int i = 0; i < 50; i++) {
+            times.add(start.plus(random.nextLong(TimeUnit.HOURS.toMicros(10)), ChronoUnit.MICROS));
+        }
+        times.add(null);
+        for (LocalDateTime time : times) {
+            for (long accountId = 1; accountId <= ACCOUNTS; accountId++) {
+                Money balance = balanceSnapshotService.getBalanceAsOf(1L, accountId, time).getData().getBalance();
+                LocalDateTime until = time == null ? LocalDateTime.MAX : time;
+                assertThat(balance).as("account %d at %s", accountId, time).isEqualTo(replay(accountId, until));
+            }
+        }
+    }
+
+    @Test
+    void idleAccountsGetNoNewSnapshot() {
+        // no records in the last three hours
+        transfers.removeIf(transfer -> transfer.time.isAfter(start.plusHours(7)));
+        service(TimeUnit.HOURS.toMillis(1)).takeSnapshots();
+        int taken = snapshots.size();
+
+        // nothing happened since the last run
+        service(TimeUnit.HOURS.toMillis(1)).takeSnapshots();
+
+        assertThat(snapshots).hasSize(taken);
+    }
+
+    @Test
+    void lateRecordInThePreviousWindowIsCorrectedByTheNextRun() {
+        service(TimeUnit.HOURS.toMillis(5)).takeSnapshots();
+        LocalDateTime taken = snapshots.get(0).getTime();
+
+        // committed after that run, with times it had already passed; account 6 had no records at all
+        transfers.add(new Transfer(1L, 2L, 777, taken.minusMinutes(10)));
+        transfers.add(new Transfer(null, ACCOUNTS + 1L, 555, taken.minusHours(1)));
+        service(TimeUnit.HOURS.toMillis(2)).takeSnapshots();
+
+        assertBalancesMatchReplay(ACCOUNTS + 1);
+        assertThat(latestSnapshot(ACCOUNTS + 1L, taken)).map(BalanceSnapshot::getBalance).contains(Money.ofCents(555));
+    }
+
+    @Test
+    void reconcileRebuildsSnapshotsThatMissedAnOldLateRecord() {
+        for (int hoursAgo : new int[]{8, 5, 2}) {
+            service(TimeUnit.HOURS.toMillis(hoursAgo)).takeSnapshots();
+        }
+
+        // committed three runs late, out of reach of the correction of the next run
+        transfers.add(new Transfer(null, 1L, 4_242, start.plusMinutes(30)));
+        service(TimeUnit.HOURS.toMillis(1)).takeSnapshots();
+        assertThat(service(0).getBalanceAsOf(1L, 1L, null).getData().getBalance()).isNotEqualTo(replay(1, LocalDateTime.MAX));
+
+        // the stored balance agrees with the records, the snapshots do not
+        Account account = mock(Account.class);
+        when(account.getBalance()).thenReturn(replay(1, LocalDateTime.MAX));
+        when(accountRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(account));
+        ReconciliationDTO reconciliation = service(0).reconcile(1L, 1L).getData();
+
+        assertThat(reconciliation.isSnapshotGap()).isTrue();
+        assertThat(reconciliation.isConsistent()).isTrue();
+        assertBalancesMatchReplay(ACCOUNTS);
+    }
+
+    private void assertBalancesMatchReplay(int accounts) {
+        BalanceSnapshotService balanceSnapshotService = service(0);
+        List<LocalDateTime> times = new ArrayList<>(snapshots.stream().map(BalanceSnapshot::getTime).distinct().toList());
+        times.add(null);
+        for (LocalDateTime time : times) {
+            for (long accountId = 1; accountId <= accounts; accountId++) {
+                Money balance = balanceSnapshotService.getBalanceAsOf(1L, accountId, time).getData().getBalance();
+                LocalDateTime until = time == null ? LocalDateTime.MAX : time;
+                assertThat(balance).as("account %d at %s", accountId, time).isEqualTo(replay(accountId, until));
+            }
+        }
+    }
+
+    private BalanceSnapshotService service(long settleMillis) {
+        return new BalanceSnapshotService(balanceSnapshotRepository, accountRepository, customerRepository,
+                mock(AccountLedger.class), mock(JournalRepository.class), settleMillis, 2);
+    }
+
+    private Map<Long, Long> changesBetween(LocalDateTime after, LocalDateTime until) {
+        Map<Long, Long> changes = new HashMap<>();
+        for (Transfer transfer : transfers) {
+            if (transfer.time.isAfter(after) && !transfer.time.isAfter(until)) {
+                if (transfer.fromAccountId != null) {
+                    changes.merge(transfer.fromAccountId, -transfer.cents, Long::sum);
+                }
+                changes.merge(transfer.toAccountId, transfer.cents, Long::sum);
+            }
+        }
+        return changes;
+    }
+
+    private Optional<BalanceSnapshot> latestSnapshot(long accountId, LocalDateTime time) {
+        return snapshots.stream()
+                .filter(snapshot -> snapshot.getAccountId() == accountId && !snapshot.getTime().isAfter(time))
+                .max(Comparator.comparing(BalanceSnapshot::getTime));
+    }
+
+    // the balance from every record of the account up to a time
+    private Money replay(long accountId, LocalDateTime until) {
+        Money balance = Money.ZERO;
+        for (Transfer transfer : transfers) {
+            if (transfer.time.isAfter(until)) {
+                continue;
+            }
+            if (transfer.fromAccountId != null && transfer.fromAccountId == accountId) {
+                balance = balance.minus(Money.ofCents(transfer.cents));
+            }
+            if (transfer.toAccountId == accountId) {
+                balance = balance.plus(Money.ofCents(transfer.cents));
+            }
+        }
+        return balance;
+    }
+
+    private record Transfer(Long fromAccountId, long toAccountId, long cents, LocalDateTime time) {
+    }
+}
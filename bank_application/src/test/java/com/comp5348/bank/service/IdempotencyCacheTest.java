@@ -0,0 +1,83 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.Customer;
+import com.comp5348.bank.model.TransactionRecord;
+import com.comp5348.bank.util.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keys are cached only once their transfer has committed, and the least recently used key is
+ * evicted first.
+ */
+class IdempotencyCacheTest {
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void keyIsCachedAfterCommitOnly() {
+        IdempotencyCache idempotencyCache = new IdempotencyCache(10);
+        TransactionSynchronizationManager.initSynchronization();
+
+        idempotencyCache.putAfterCommit(record(42, "order-1"));
+        assertThat(idempotencyCache.get("order-1")).isEmpty();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(idempotencyCache.get("order-1")).hasValueSatisfying(entry -> {
+            assertThat(entry.transactionRecordId()).isEqualTo(42L);
+            assertThat(entry.matches(9L, 3L, 1000)).isTrue();
+            assertThat(entry.matches(9L, 3L, 1001)).isFalse();
+            assertThat(entry.matches(3L, 9L, 1000)).isFalse();
+        });
+    }
+
+    @Test
+    void rolledBackKeyIsNotCached() {
+        IdempotencyCache idempotencyCache = new IdempotencyCache(10);
+        TransactionSynchronizationManager.initSynchronization();
+
+        idempotencyCache.putAfterCommit(record(42, "order-1"));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertThat(idempotencyCache.get("order-1")).isEmpty();
+    }
+
+    @Test
+    void leastRecentlyUsedKeyIsEvicted() {
+        IdempotencyCache idempotencyCache = new IdempotencyCache(2);
+        idempotencyCache.putAfterCommit(record(1, "order-1"));
+        idempotencyCache.putAfterCommit(record(2, "order-2"));
+
+        // reading order-1 makes order-2 the eldest
+        assertThat(idempotencyCache.get("order-1")).isPresent();
+        idempotencyCache.putAfterCommit(record(3, "order-3"));
+
+        assertThat(idempotencyCache.get("order-1")).isPresent();
+        assertThat(idempotencyCache.get("order-2")).isEmpty();
+        assertThat(idempotencyCache.get("order-3")).isPresent();
+    }
+
+    private static TransactionRecord record(long id, String idempotencyKey) {
+        TransactionRecord transactionRecord = new TransactionRecord(Money.ofCents(1000), account(3), account(9), "Order.");
+        ReflectionTestUtils.setField(transactionRecord, "id", id);
+        transactionRecord.setIdempotencyKey(idempotencyKey);
+        return transactionRecord;
+    }
+
+    private static Account account(long id) {
+        Account account = new Account(new Customer("Ada", "Lovelace"), "Savings");
+        ReflectionTestUtils.setField(account, "id", id);
+        return account;
+    }
+}
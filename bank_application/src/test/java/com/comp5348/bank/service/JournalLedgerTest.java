@@ -0,0 +1,141 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.Customer;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.AccountShardRepository;
+import com.comp5348.bank.repository.JournalRepository;
+import com.comp5348.bank.util.Money;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * The available balance of the journal mode: a reserved debit is given back when its transaction
+ * rolls back and kept when it commits, and posting moves the records into the account balances
+ * without changing what is available to pay from, except for the credits that become available.
+ */
+class JournalLedgerTest {
+    private final Map<Long, Account> accounts = new HashMap<>();
+    private JournalRepository journalRepository;
+    private AccountRepository accountRepository;
+    private AccountShardRepository accountShardRepository;
+    private JournalLedger journalLedger;
+
+    @BeforeEach
+    void setUp() {
+        journalRepository = mock(JournalRepository.class);
+        accountRepository = mock(AccountRepository.class);
+        accountShardRepository = mock(AccountShardRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(accountRepository.findByIdForUpdate(anyLong())).thenAnswer(invocation ->
+                Optional.ofNullable(accounts.get(invocation.<Long>getArgument(0))));
+        journalLedger = new JournalLedger(journalRepository, accountRepository, accountShardRepository, transactionTemplate, "journal", 100);
+
+        account(1, "100.00");
+        account(2, "50.00");
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void projectionIsThePostedBalanceLessTheUnpostedDebits() {
+        when(journalRepository.sumUnpostedDebitCents(1L)).thenReturn(2_000L);
+
+        assertThat(journalLedger.availableBalance(1L)).isEqualTo(Money.valueOf("80.00"));
+    }
+
+    @Test
+    void rolledBackReservationRestoresTheProjection() {
+        assertThat(journalLedger.reserve(1L, Money.valueOf("30.00"))).isTrue();
+        assertThat(journalLedger.availableBalance(1L)).isEqualTo(Money.valueOf("70.00"));
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(journalLedger.availableBalance(1L)).isEqualTo(Money.valueOf("100.00"));
+    }
+
+    @Test
+    void committedReservationStaysTaken() {
+        assertThat(journalLedger.reserve(1L, Money.valueOf("30.00"))).isTrue();
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertThat(journalLedger.availableBalance(1L)).isEqualTo(Money.valueOf("70.00"));
+    }
+
+    @Test
+    void reservationBeyondTheAvailableBalanceIsRefused() {
+        assertThat(journalLedger.reserve(1L, Money.valueOf("60.00"))).isTrue();
+
+        assertThat(journalLedger.reserve(1L, Money.valueOf("40.01"))).isFalse();
+        assertThat(journalLedger.availableBalance(1L)).isEqualTo(Money.valueOf("40.00"));
+        assertThat(TransactionSynchronizationManager.getSynchronizations()).hasSize(1);
+    }
+
+    @Test
+    void postingAppliesOneNetChangePerAccountInAscendingIdOrder() {
+        // two committed transfers from account 1 to account 2, and a deposit to account 1
+        assertThat(journalLedger.reserve(1L, Money.valueOf("30.00"))).isTrue();
+        assertThat(journalLedger.reserve(1L, Money.valueOf("20.00"))).isTrue();
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(journalLedger.availableBalance(2L)).isEqualTo(Money.valueOf("50.00"));
+        when(journalRepository.findUnpostedForUpdate(anyInt())).thenReturn(List.of(
+                new Object[]{10L, 1L, 2L, 3_000L},
+                new Object[]{11L, null, 1L, 500L},
+                new Object[]{12L, 1L, 2L, 2_000L}));
+
+        journalLedger.post();
+
+        InOrder inOrder = inOrder(accountRepository);
+        inOrder.verify(accountRepository).findByIdForUpdate(1L);
+        inOrder.verify(accountRepository).findByIdForUpdate(2L);
+        verify(accountRepository, times(2)).findByIdForUpdate(anyLong());
+        verify(journalRepository).markPosted(List.of(10L, 11L, 12L));
+        assertThat(accounts.get(1L).getBalance()).isEqualTo(Money.valueOf("55.00"));
+        assertThat(accounts.get(2L).getBalance()).isEqualTo(Money.valueOf("100.00"));
+        // the debits were already taken off, the credits are now available
+        assertThat(journalLedger.availableBalance(1L)).isEqualTo(Money.valueOf("55.00"));
+        assertThat(journalLedger.availableBalance(2L)).isEqualTo(Money.valueOf("100.00"));
+    }
+
+    private void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    private void account(long id, String balance) {
+        Account account = new Account(new Customer("Ada", "Lovelace"), "Savings");
+        ReflectionTestUtils.setField(account, "id", id);
+        account.modifyBalance(Money.valueOf(balance));
+        accounts.put(id, account);
+        when(accountShardRepository.totalBalanceCents(id)).thenAnswer(invocation -> accounts.get(id).getBalance().cents());
+    }
+}
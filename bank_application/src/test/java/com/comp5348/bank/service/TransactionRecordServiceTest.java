@@ -0,0 +1,184 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.dto.BatchTransferItemDTO;
+import com.comp5348.bank.dto.BatchTransferResultDTO;
+import com.comp5348.bank.dto.SimpleTransactionRecordDTO;
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.Customer;
+import com.comp5348.bank.model.TransactionRecord;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.TransactionRecordRepository;
+import com.comp5348.bank.util.Money;
+import com.comp5348.bank.util.ServiceResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Transfers lock their accounts with SELECT ... FOR UPDATE in ascending id order, whatever the
+ * direction of the transfer, so two transfers over the same accounts cannot deadlock; a transfer
+ * retried under the same idempotency key returns the record of the first attempt.
+ */
+class TransactionRecordServiceTest {
+    private final Map<Long, Account> accounts = new HashMap<>();
+    private AccountRepository accountRepository;
+    private TransactionRecordRepository transactionRecordRepository;
+    private AccountLedger accountLedger;
+    private TransactionRecordService transactionRecordService;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = mock(AccountRepository.class);
+        transactionRecordRepository = mock(TransactionRecordRepository.class);
+        accountLedger = mock(AccountLedger.class);
+        when(accountRepository.findByIdForUpdate(anyLong())).thenAnswer(invocation ->
+                Optional.ofNullable(accounts.get(invocation.<Long>getArgument(0))));
+        when(accountRepository.findById(anyLong())).thenAnswer(invocation ->
+                Optional.ofNullable(accounts.get(invocation.<Long>getArgument(0))));
+        when(transactionRecordRepository.save(any())).thenAnswer(invocation -> {
+            TransactionRecord transactionRecord = invocation.getArgument(0);
+            ReflectionTestUtils.setField(transactionRecord, "id", 42L);
+            return transactionRecord;
+        });
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        transactionRecordService = new TransactionRecordService(accountRepository, transactionRecordRepository,
+                accountLedger, mock(JournalLedger.class), new IdempotencyCache(100), transactionTemplate, 500);
+    }
+
+    @Test
+    void transferLocksBothAccountsInAscendingIdOrder() {
+        Account high = account(9, "100.00");
+        Account low = account(3, "100.00");
+
+        ServiceResult<?> forward = transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Forward.", null);
+        ServiceResult<?> backward = transactionRecordService.performSimpleTransaction(3L, 9L, Money.valueOf("4.00"), "Backward.", null);
+
+        assertThat(forward.isSuccess()).isTrue();
+        assertThat(backward.isSuccess()).isTrue();
+        InOrder inOrder = inOrder(accountRepository);
+        for (int transfer = 0; transfer < 2; transfer++) {
+            inOrder.verify(accountRepository).findByIdForUpdate(3L);
+            inOrder.verify(accountRepository).findByIdForUpdate(9L);
+        }
+        assertThat(high.getBalance()).isEqualTo(Money.valueOf("94.00"));
+        assertThat(low.getBalance()).isEqualTo(Money.valueOf("106.00"));
+    }
+
+    @Test
+    void shardedReceivingAccountIsReadWithoutALock() {
+        account(9, "100.00");
+        account(3, "0.00");
+        when(accountLedger.isSharded(3L)).thenReturn(true);
+
+        transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Sale.", null);
+
+        verify(accountRepository).findByIdForUpdate(9L);
+        verify(accountRepository, never()).findByIdForUpdate(3L);
+        verify(accountLedger).credit(3L, Money.valueOf("10.00"));
+    }
+
+    @Test
+    void batchLocksEveryAccountOnceInAscendingIdOrder() {
+        account(5, "100.00");
+        account(2, "100.00");
+        account(8, "100.00");
+
+        List<BatchTransferResultDTO> results = transactionRecordService.performBatchTransaction(List.of(
+                transfer(8, 2, "1.00"), transfer(5, 8, "2.00"), transfer(2, 5, "3.00"), transfer(8, 5, "4.00")));
+
+        assertThat(results).allMatch(BatchTransferResultDTO::isSuccess);
+        InOrder inOrder = inOrder(accountRepository);
+        inOrder.verify(accountRepository).findByIdForUpdate(2L);
+        inOrder.verify(accountRepository).findByIdForUpdate(5L);
+        inOrder.verify(accountRepository).findByIdForUpdate(8L);
+        verify(accountRepository, times(3)).findByIdForUpdate(anyLong());
+    }
+
+    @Test
+    void retryUnderTheSameKeyReturnsTheSameRecordWithoutApplyingItAgain() {
+        Account from = account(9, "100.00");
+        account(3, "0.00");
+
+        ServiceResult<SimpleTransactionRecordDTO> first = transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Order 1.", "order-1");
+        ServiceResult<SimpleTransactionRecordDTO> retry = transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Order 1.", "order-1");
+
+        assertThat(first.getData().getId()).isEqualTo(42L);
+        assertThat(retry.getData().getId()).isEqualTo(42L);
+        verify(transactionRecordRepository, times(1)).save(any());
+        assertThat(from.getBalance()).isEqualTo(Money.valueOf("90.00"));
+        // the retry is answered from the cache before any lock is taken
+        verify(accountRepository, times(1)).findByIdForUpdate(9L);
+    }
+
+    @Test
+    void retryMissingFromTheCacheIsFoundInTheDatabase() {
+        Account from = account(9, "100.00");
+        Account to = account(3, "0.00");
+        TransactionRecord recorded = new TransactionRecord(Money.valueOf("10.00"), to, from, "Order 1.");
+        ReflectionTestUtils.setField(recorded, "id", 7L);
+        recorded.setIdempotencyKey("order-1");
+        when(transactionRecordRepository.findByIdempotencyKey("order-1")).thenReturn(Optional.of(recorded));
+
+        ServiceResult<SimpleTransactionRecordDTO> retry = transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Order 1.", "order-1");
+
+        assertThat(retry.getData().getId()).isEqualTo(7L);
+        verify(transactionRecordRepository, never()).save(any());
+        assertThat(from.getBalance()).isEqualTo(Money.valueOf("100.00"));
+    }
+
+    @Test
+    void keyReusedForADifferentTransferIsRejected() {
+        account(9, "100.00");
+        account(3, "0.00");
+        transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Order 1.", "order-1");
+
+        ServiceResult<SimpleTransactionRecordDTO> reused = transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("11.00"), "Order 2.", "order-1");
+
+        assertThat(reused.isSuccess()).isFalse();
+        verify(transactionRecordRepository, times(1)).save(any());
+    }
+
+    @Test
+    void transfersWithoutAKeyAreNotDeduplicated() {
+        account(9, "100.00");
+        account(3, "0.00");
+
+        transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Order 1.", null);
+        transactionRecordService.performSimpleTransaction(9L, 3L, Money.valueOf("10.00"), "Order 1.", null);
+
+        verify(transactionRecordRepository, times(2)).save(any());
+        verify(transactionRecordRepository, never()).findByIdempotencyKey(anyString());
+    }
+
+    private Account account(long id, String balance) {
+        Account account = new Account(new Customer("Ada", "Lovelace"), "Savings");
+        ReflectionTestUtils.setField(account, "id", id);
+        account.modifyBalance(Money.valueOf(balance));
+        accounts.put(id, account);
+        return account;
+    }
+
+    private static BatchTransferItemDTO transfer(long fromAccountId, long toAccountId, String amount) {
+        BatchTransferItemDTO transfer = new BatchTransferItemDTO();
+        transfer.setFromAccountId(fromAccountId);
+        transfer.setToAccountId(toAccountId);
+        transfer.setAmount(Money.valueOf(amount));
+        return transfer;
+    }
+}
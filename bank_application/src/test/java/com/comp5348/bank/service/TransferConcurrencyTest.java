@@ -0,0 +1,131 @@
+package com.comp5348.bank.service;
+
+import com.comp5348.bank.model.Account;
+import com.comp5348.bank.model.Customer;
+import com.comp5348.bank.repository.AccountRepository;
+import com.comp5348.bank.repository.AccountShardRepository;
+import com.comp5348.bank.repository.CustomerRepository;
+import com.comp5348.bank.repository.TransactionRecordRepository;
+import com.comp5348.bank.util.Money;
+import com.comp5348.bank.util.ServiceResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 1,000 concurrent transfers against a database, each in its own transaction: customers pay each
+ * other in both directions and all of them pay the merchant account. The SELECT ... FOR UPDATE
+ * locks are real, so transfers that locked their accounts out of order would deadlock or time out
+ * here, and transfers into the hot merchant account queue on its row instead of failing.
+ */
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:transfers;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class TransferConcurrencyTest {
+    private static final int TRANSFERS = 1000;
+    private static final int CUSTOMERS = 10;
+    private static final Money OPENING_BALANCE = Money.valueOf("1000.00");
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountShardRepository accountShardRepository;
+
+    @Autowired
+    private TransactionRecordRepository transactionRecordRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentTransfersKeepTheTotalAndNeverDeadlock() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // 1. a merchant account and the accounts of the customers
+        Customer merchant = customerRepository.save(new Customer("Store", "Merchant"));
+        long merchantAccountId = accountRepository.save(new Account(merchant, "Revenue")).getId();
+        List<Long> accountIds = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            Customer customer = customerRepository.save(new Customer("Customer", String.valueOf(i)));
+            Account account = new Account(customer, "Savings");
+            account.modifyBalance(OPENING_BALANCE);
+            accountIds.add(accountRepository.save(account).getId());
+        }
+
+        // 2. the service as the application wires it, in balance mode without sharded accounts
+        TransactionRecordService transactionRecordService = new TransactionRecordService(accountRepository,
+                transactionRecordRepository, new AccountLedger(accountRepository, accountShardRepository, Set.of(), 16),
+                mock(JournalLedger.class), new IdempotencyCache(100), transactionTemplate, 500);
+
+        // 3. every transfer runs in its own transaction, all released at once; even transfers go
+        // between two customers in either direction, odd ones to the merchant
+        ExecutorService clients = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < TRANSFERS; i++) {
+                long fromAccountId = accountIds.get(i % CUSTOMERS);
+                long toAccountId = i % 2 == 0 ? accountIds.get((i / 2 + 1) % CUSTOMERS) : merchantAccountId;
+                Money amount = Money.ofCents(100 + i);
+                results.add(clients.submit(() -> {
+                    start.await();
+                    try {
+                        ServiceResult<?> result = transactionTemplate.execute(status ->
+                                transactionRecordService.performSimpleTransaction(fromAccountId, toAccountId, amount, "Transfer.", null));
+                        return result.isSuccess();
+                    } catch (RuntimeException e) {
+                        errors.add(e);
+                        return false;
+                    }
+                }));
+            }
+            long startNanos = System.nanoTime();
+            start.countDown();
+            int succeeded = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(2, TimeUnit.MINUTES)) {
+                    succeeded++;
+                }
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            System.out.printf("Applied %d concurrent transfers in %d ms (%.0f transfers/s)%n",
+                    succeeded, elapsedMillis, succeeded * 1000.0 / Math.max(elapsedMillis, 1));
+
+            // 4. no lock wait failed, every transfer has its record and no money was made or lost
+            assertThat(errors).isEmpty();
+            assertThat(succeeded).isEqualTo(TRANSFERS);
+            assertThat(transactionRecordRepository.count()).isEqualTo(TRANSFERS);
+            Money total = Money.ZERO;
+            for (Account account : accountRepository.findAll()) {
+                assertThat(account.getBalance().isNegative()).isFalse();
+                total = total.plus(account.getBalance());
+            }
+            assertThat(total).isEqualTo(OPENING_BALANCE.times(CUSTOMERS));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+}
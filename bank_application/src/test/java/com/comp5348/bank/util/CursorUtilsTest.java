@@ -0,0 +1,39 @@
+package com.comp5348.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Cursors decode to the values they were encoded from, and malformed cursors are rejected.
+ */
+class CursorUtilsTest {
+    @Test
+    void decodeReturnsTheEncodedValues() {
+        LocalDateTime time = LocalDateTime.of(2024, 10, 1, 9, 30, 15, 123_456_000);
+
+        String cursor = CursorUtils.encode(time, 42L);
+        String[] values = CursorUtils.decode(cursor, 2);
+
+        assertThat(LocalDateTime.parse(values[0])).isEqualTo(time);
+        assertThat(Long.parseLong(values[1])).isEqualTo(42L);
+    }
+
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = CursorUtils.encode("??>>", "\u00ff\u00fe", "a b/c");
+
+        assertThat(cursor).matches("[A-Za-z0-9_-]+");
+        assertThat(CursorUtils.decode(cursor, 3)).containsExactly("??>>", "\u00ff\u00fe", "a b/c");
+    }
+
+    @Test
+    void malformedCursorsAreRejected() {
+        assertThatThrownBy(() -> CursorUtils.decode("not base64!", 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CursorUtils.decode(CursorUtils.encode(1L), 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CursorUtils.decode(CursorUtils.encode(1L, 2L, 3L), 2)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
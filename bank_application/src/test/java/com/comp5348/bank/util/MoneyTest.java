@@ -0,0 +1,120 @@
+package com.comp5348.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Money is exact: arithmetic on cents, decimals round-trip through valueOf and toString, amounts
+ * with fractions of a cent are rejected, and money moved between accounts is never created or lost.
+ */
+class MoneyTest {
+    private static final int ACCOUNTS = 1_000;
+    private static final int TRANSFERS = 10_000_000;
+
+    @Test
+    void arithmeticIsExact() {
+        Money price = Money.valueOf("0.10");
+
+        assertThat(price.plus(Money.valueOf("0.20"))).isEqualTo(Money.valueOf("0.30"));
+        assertThat(Money.valueOf("1.00").minus(Money.valueOf("0.99"))).isEqualTo(Money.ofCents(1));
+        assertThat(price.times(3)).isEqualTo(Money.valueOf("0.30"));
+        assertThat(price.negate()).isEqualTo(Money.ofCents(-10));
+        assertThat(price.minus(price)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    void arithmeticThrowsOnOverflow() {
+        Money max = Money.ofCents(Long.MAX_VALUE);
+
+        assertThatThrownBy(() -> max.plus(Money.ofCents(1))).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.ofCents(Long.MIN_VALUE).minus(Money.ofCents(1))).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> Money.ofCents(Long.MIN_VALUE).negate()).isInstanceOf(ArithmeticException.class);
+        assertThatThrownBy(() -> max.times(2)).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void signAndOrder() {
+        assertThat(Money.ofCents(1).isPositive()).isTrue();
+        assertThat(Money.ZERO.isPositive()).isFalse();
+        assertThat(Money.ZERO.isNegative()).isFalse();
+        assertThat(Money.ofCents(-1).isNegative()).isTrue();
+        assertThat(Money.valueOf("9.99")).isLessThan(Money.valueOf("10.00"));
+        assertThat(Money.valueOf("10")).isEqualByComparingTo(Money.valueOf("10.00"));
+    }
+
+    @Test
+    void valueOfAndToStringRoundTrip() {
+        for (String amount : new String[]{"0.00", "0.01", "12.34", "-0.05", "-12.30", "92233720368547758.07"}) {
+            assertThat(Money.valueOf(amount).toString()).isEqualTo(amount);
+        }
+
+        Random random = new Random(5348);
+        for (int i = 0; i < 100_000; i++) {
+            Money money = Money.ofCents(random.nextLong());
+            assertThat(Money.valueOf(money.toString())).isEqualTo(money);
+        }
+    }
+
+    @Test
+    void valueOfNormalisesToTwoDecimals() {
+        assertThat(Money.valueOf("12").toString()).isEqualTo("12.00");
+        assertThat(Money.valueOf("12.5").toString()).isEqualTo("12.50");
+        assertThat(Money.valueOf(" 12.340 ")).isEqualTo(Money.ofCents(1234));
+        assertThat(Money.valueOf("1E+2")).isEqualTo(Money.ofCents(10000));
+        assertThat(Money.of(new BigDecimal("0.1")).toDecimal()).isEqualTo(new BigDecimal("0.10"));
+    }
+
+    @Test
+    void valueOfRejectsFractionsOfACentInsteadOfRounding() {
+        assertThatThrownBy(() -> Money.valueOf("12.345")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Money.valueOf("0.005")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Money.valueOf("abc")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Money.of(new BigDecimal("0.001"))).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void converterStoresCents() {
+        MoneyConverter converter = new MoneyConverter();
+
+        assertThat(converter.convertToDatabaseColumn(Money.valueOf("12.34"))).isEqualTo(1234L);
+        assertThat(converter.convertToEntityAttribute(1234L)).isEqualTo(Money.valueOf("12.34"));
+        assertThat(converter.convertToDatabaseColumn(null)).isNull();
+        assertThat(converter.convertToEntityAttribute(null)).isNull();
+    }
+
+    @Test
+    void randomTransfersKeepTheTotal() {
+        Random random = new Random(5348);
+        Money[] balances = new Money[ACCOUNTS];
+        BigDecimal[] expected = new BigDecimal[ACCOUNTS];
+        Money total = Money.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            balances[i] = Money.ofCents(random.nextInt(1_000_000));
+            expected[i] = balances[i].toDecimal();
+            total = total.plus(balances[i]);
+        }
+
+        // move random amounts, including fractions of a dollar, between random accounts
+        for (int i = 0; i < TRANSFERS; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            int to = random.nextInt(ACCOUNTS);
+            Money amount = Money.ofCents(random.nextInt(10_000));
+            balances[from] = balances[from].minus(amount);
+            balances[to] = balances[to].plus(amount);
+            expected[from] = expected[from].subtract(amount.toDecimal());
+            expected[to] = expected[to].add(amount.toDecimal());
+        }
+
+        Money sum = Money.ZERO;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(balances[i].toDecimal()).isEqualTo(expected[i]);
+            sum = sum.plus(balances[i]);
+        }
+        assertThat(sum).isEqualTo(total);
+    }
+}
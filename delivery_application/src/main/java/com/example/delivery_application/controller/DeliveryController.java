@@ -6,6 +6,7 @@ import com.example.delivery_application.service.DeliveryService;
 import com.example.delivery_application.util.ServiceResult;
 import com.example.delivery_application.util.ValidationUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -61,11 +62,21 @@ public class DeliveryController {
         }
 
         // 2. create a delivery
-        ServiceResult<DeliveryDTO> result = deliveryService.createDelivery(
-                deliveryRequest.orderId,
-                deliveryRequest.quantity,
-                deliveryRequest.address,
-                deliveryRequest.email);
+        ServiceResult<DeliveryDTO> result;
+        try {
+            result = deliveryService.createDelivery(
+                    deliveryRequest.orderId,
+                    deliveryRequest.quantity,
+                    deliveryRequest.address,
+                    deliveryRequest.email);
+        } catch (DataIntegrityViolationException e) {
+            // a concurrent request for the same order committed first, this attempt returns its delivery
+            result = deliveryService.createDelivery(
+                    deliveryRequest.orderId,
+                    deliveryRequest.quantity,
+                    deliveryRequest.address,
+                    deliveryRequest.email);
+        }
 
         // 3. handle result
         if (!result.isSuccess()) {
@@ -11,6 +11,12 @@ import java.util.Date;
 @Setter
 @NoArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_delivery_next_transition_at", columnList = "next_transition_at"),
+        @Index(name = "idx_delivery_order_update_due_at", columnList = "order_update_due_at"),
+        // one delivery per order, a retried create request finds the existing one
+        @Index(name = "uk_delivery_order_id", columnList = "orderId", unique = true)
+})
 public class Delivery {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY) // use IDENTITY to auto-increment starting from 1
@@ -45,6 +51,16 @@ public class Delivery {
     @Column(nullable = false)
     private String email;
 
+    //due time of the next status transition, null once the delivery is completed or cancelled
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_transition_at")
+    private Date nextTransitionAt;
+
+    //due time of the next attempt to send the current status to the store, null once the store has it
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "order_update_due_at")
+    private Date orderUpdateDueAt;
+
     //constructor
     public Delivery(long orderId, DeliveryStatus status, Date timestamp, int quantity, String address, String email) {
         this.orderId = orderId;
@@ -1,11 +1,37 @@
 package com.example.delivery_application.repository;
 
 import com.example.delivery_application.model.Delivery;
+import com.example.delivery_application.model.DeliveryStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 public interface DeliveryRepository extends JpaRepository<Delivery, Long> {
     // fina a delivery by order id
     Optional<Delivery> findByOrderId(Long orderId);
+
+    // claim a page of due deliveries, rows locked by another delivery node are skipped
+    @Query(value = "SELECT * FROM delivery WHERE next_transition_at <= :now " +
+            "ORDER BY next_transition_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Delivery> claimDueDeliveries(@Param("now") Date now, @Param("limit") int limit);
+
+    // claim a single delivery if it is due and not locked by another delivery node
+    @Query(value = "SELECT * FROM delivery WHERE id = :id AND next_transition_at <= :now " +
+            "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    Optional<Delivery> claimDueDelivery(@Param("id") long id, @Param("now") Date now);
+
+    // claim a page of deliveries whose status the store has not confirmed yet, rows locked by another delivery node are skipped
+    @Query(value = "SELECT * FROM delivery WHERE order_update_due_at <= :now " +
+            "ORDER BY order_update_due_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Delivery> claimPendingOrderUpdates(@Param("now") Date now, @Param("limit") int limit);
+
+    // the store has the status, unless the delivery moved on in the meantime nothing is owed anymore
+    @Modifying
+    @Query("UPDATE Delivery d SET d.orderUpdateDueAt = null WHERE d.id = :id AND d.status = :status")
+    int clearOrderUpdate(@Param("id") long id, @Param("status") DeliveryStatus status);
 }
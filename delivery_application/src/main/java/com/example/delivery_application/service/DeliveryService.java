@@ -4,33 +4,61 @@ import com.example.delivery_application.dto.DeliveryDTO;
 import com.example.delivery_application.model.Delivery;
 import com.example.delivery_application.model.DeliveryStatus;
 import com.example.delivery_application.repository.DeliveryRepository;
+import com.example.delivery_application.util.DeliveryScheduler;
 import com.example.delivery_application.util.ServiceResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 @Service
 public class DeliveryService {
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryService.class);
+    // delays between the steps of the delivery procedure
+    private static final long PICKUP_DELAY_SECONDS = 20;
+    private static final long STEP_DELAY_SECONDS = 5;
+    // delay before an order update that was not confirmed by the store is sent again
+    private static final long ORDER_UPDATE_RETRY_SECONDS = 30;
+    private static final String ORDER_UPDATE_REJECTED = "Order update failed due to business logic error";
+
     private final DeliveryRepository deliveryRepository;
     private final RestTemplate restTemplate;
+    private final DeliveryScheduler deliveryScheduler;
+    private final EmailBatcher emailBatcher;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer transitionLagTimer;
 
     @Autowired
-    public DeliveryService(DeliveryRepository deliveryRepository, RestTemplate restTemplate) {
+    public DeliveryService(DeliveryRepository deliveryRepository,
+                           RestTemplate restTemplate,
+                           DeliveryScheduler deliveryScheduler,
+                           EmailBatcher emailBatcher,
+                           TransactionTemplate transactionTemplate,
+                           MeterRegistry meterRegistry) {
         this.deliveryRepository = deliveryRepository;
         this.restTemplate = restTemplate;
+        this.deliveryScheduler = deliveryScheduler;
+        this.emailBatcher = emailBatcher;
+        this.transactionTemplate = transactionTemplate;
+        this.transitionLagTimer = Timer.builder("delivery.transition.lag")
+                .description("Delay between the due time of a persisted delivery transition and its execution")
+                .register(meterRegistry);
     }
 
     /*
@@ -50,120 +78,191 @@ public class DeliveryService {
     }
 
     /*
-    create a delivery
+    create a delivery, idempotent per order: the store retries the request under the same order id
+    when a response is lost, the retry gets the delivery that was already created
      */
     @Transactional
     public ServiceResult<DeliveryDTO> createDelivery(Long orderId, Integer quantity, String address, String email) {
-        // 1. create a delivery
+        // 1. a retried request returns the delivery of the order as it is
+        Optional<Delivery> existing = deliveryRepository.findByOrderId(orderId);
+        if (existing.isPresent()) {
+            return ServiceResult.success(new DeliveryDTO(existing.get()));
+        }
+
+        // 1.1 create a delivery: the pickup is due in 20 seconds
         Delivery delivery = new Delivery(orderId, DeliveryStatus.SETUP, new Date(), quantity, address, email);
+        delivery.setNextTransitionAt(new Date(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(PICKUP_DELAY_SECONDS)));
+
         // 2. save the delivery
         deliveryRepository.save(delivery);
 
-        // 3. start the delivery procedure
-
-        // 3.1 create a scheduler
-        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        // 3. start the delivery procedure: the poller picks it up if this node goes away before it is due,
+        // or if the scheduler of this node is full
+        long deliveryId = delivery.getId();
+        deliveryScheduler.schedule(() -> advanceDelivery(deliveryId), PICKUP_DELAY_SECONDS, TimeUnit.SECONDS);
 
-        // 3.2 wait for 20 seconds to complete the delivery pickup
-        scheduler.schedule(() -> {
-            // get the delivery
-            Optional<Delivery> deliverySetupOptional = deliveryRepository.findByOrderId(orderId);
-
-            // check if the delivery exists
-            if (deliverySetupOptional.isEmpty()) {
-                scheduler.shutdown();
-                return;
-            }
-
-            Delivery deliverySetup = deliverySetupOptional.get();
-
-            // check if the delivery is cancelled
-            if (deliverySetup.getStatus() == DeliveryStatus.CANCELLED) {
-                scheduler.shutdown();
-                return;
-            }
-
-            // update the order
-            updateOrder(orderId, DeliveryStatus.PICKUP);
+        return ServiceResult.success(new DeliveryDTO(delivery));
+    }
 
-            // update the delivery
-            deliverySetup.setStatus(DeliveryStatus.PICKUP);
-            String accident = "Null";
-            if (Math.random() < 0.5) {
-                accident = "Lost 5% of the products";
-                deliverySetup.setQuantity((int) (deliverySetup.getQuantity() * 0.95));
-            }
-            deliveryRepository.save(deliverySetup);
+    /*
+    advance a single delivery if it is due
+     */
+    public void advanceDelivery(long deliveryId) {
+        // 1. claim and advance the delivery in a short transaction
+        Optional<DeliveryTransition> transition = transactionTemplate.execute(status ->
+                deliveryRepository.claimDueDelivery(deliveryId, new Date()).map(this::applyTransition));
+
+        // 2. notify the store and the customer once the new status is committed
+        if (transition != null) {
+            transition.ifPresent(this::notifyTransition);
+        }
+    }
 
-            // create an email
-            createEmail((int) deliverySetup.getId(), email, DeliveryStatus.PICKUP.ordinal(), address, accident);
+    /*
+    advance a page of due deliveries, return the number of deliveries advanced
+     */
+    public int advanceDueDeliveries(int batchSize) {
+        // 1. claim and advance a page of due deliveries in one transaction
+        List<DeliveryTransition> transitions = transactionTemplate.execute(status ->
+                deliveryRepository.claimDueDeliveries(new Date(), batchSize).stream().map(this::applyTransition).toList());
 
+        if (transitions == null) {
+            return 0;
+        }
 
-            // 3.3 wait for an additional 5 seconds to complete the delivering
-            scheduler.schedule(() -> {
-                // get the delivery
-                Optional<Delivery> deliveryPickupOptional = deliveryRepository.findByOrderId(orderId);
+        // 2. notify the store and the customer once the new statuses are committed
+        transitions.forEach(this::notifyTransition);
 
-                // check if the delivery exists
-                if (deliveryPickupOptional.isEmpty()) {
-                    scheduler.shutdown();
-                    return;
-                }
+        return transitions.size();
+    }
 
-                Delivery deliveryPickup = deliveryPickupOptional.get();
+    /*
+    send the status of a page of deliveries the store has not confirmed yet, return the number of deliveries sent;
+    covers a node that went away after a transition committed and an order update that failed
+     */
+    public int resendPendingOrderUpdates(int batchSize) {
+        // 1. claim a page and push its due time past the retry delay, so no other node sends it meanwhile
+        List<DeliveryTransition> pending = transactionTemplate.execute(status -> {
+            Date now = new Date();
+            Date retryAt = new Date(now.getTime() + TimeUnit.SECONDS.toMillis(ORDER_UPDATE_RETRY_SECONDS));
+            return deliveryRepository.claimPendingOrderUpdates(now, batchSize).stream().map(delivery -> {
+                delivery.setOrderUpdateDueAt(retryAt);
+                deliveryRepository.save(delivery);
+                return new DeliveryTransition(delivery, null);
+            }).toList();
+        });
+
+        if (pending == null) {
+            return 0;
+        }
 
-                // update the order
-                updateOrder(orderId, DeliveryStatus.DELIVERING);
+        // 2. send the current statuses outside the transaction
+        pending.forEach(transition -> sendOrderUpdate(transition.deliveryId, transition.orderId, transition.status));
 
-                // update the delivery
-                deliveryPickup.setStatus(DeliveryStatus.DELIVERING);
-                String accidentDelivering = "Null";
-                if (Math.random() < 0.5) {
-                    accidentDelivering = "Lost 5% of the products";
-                    deliveryPickup.setQuantity((int) (deliveryPickup.getQuantity() * 0.95));
-                }
-                deliveryRepository.save(deliveryPickup);
+        return pending.size();
+    }
 
-                // create an email
-                createEmail((int) deliveryPickup.getId(), email, DeliveryStatus.DELIVERING.ordinal(), address, accidentDelivering);
+    /*
+    move a claimed delivery to its next status
+     */
+    private DeliveryTransition applyTransition(Delivery delivery) {
+        // 1. record how late the transition is
+        Date now = new Date();
+        transitionLagTimer.record(Math.max(now.getTime() - delivery.getNextTransitionAt().getTime(), 0), TimeUnit.MILLISECONDS);
+
+        // 2. update the delivery
+        DeliveryStatus nextStatus = nextStatus(delivery.getStatus());
+        delivery.setStatus(nextStatus);
+        String accident = "Null";
+        if (Math.random() < 0.5) {
+            accident = "Lost 5% of the products";
+            delivery.setQuantity((int) (delivery.getQuantity() * 0.95));
+        }
 
+        // 3. wait for an additional 5 seconds to complete the next step
+        if (nextStatus == DeliveryStatus.COMPLETED) {
+            delivery.setNextTransitionAt(null);
+        } else {
+            delivery.setNextTransitionAt(new Date(now.getTime() + TimeUnit.SECONDS.toMillis(STEP_DELAY_SECONDS)));
+        }
 
-                // 3.4 wait for an additional 5 seconds to complete the delivery
-                scheduler.schedule(() -> {
-                    // get the delivery
-                    Optional<Delivery> deliveryDeliveringOptional = deliveryRepository.findByOrderId(orderId);
+        // 4. the store is owed the new status until it confirms it, the poller sends it again if this node does not
+        delivery.setOrderUpdateDueAt(new Date(now.getTime() + TimeUnit.SECONDS.toMillis(ORDER_UPDATE_RETRY_SECONDS)));
+        deliveryRepository.save(delivery);
 
-                    // check if the delivery exists
-                    if (deliveryDeliveringOptional.isEmpty()) {
-                        scheduler.shutdown();
-                        return;
-                    }
+        return new DeliveryTransition(delivery, accident);
+    }
 
-                    Delivery deliveryDelivering = deliveryDeliveringOptional.get();
+    /*
+    send the order update and the email of a committed transition
+     */
+    private void notifyTransition(DeliveryTransition transition) {
+        // 1. update the order
+        sendOrderUpdate(transition.deliveryId, transition.orderId, transition.status);
 
-                    // update the order
-                    updateOrder(orderId, DeliveryStatus.COMPLETED);
+        // 2. queue the email, it is sent with the next batch
+        emailBatcher.enqueue(new CreateEmailRequest((int) transition.deliveryId, transition.email, transition.status.ordinal(), transition.address, transition.accident));
 
-                    // update the delivery
-                    deliveryDelivering.setStatus(DeliveryStatus.COMPLETED);
-                    String accidentCompleted = "Null";
-                    if (Math.random() < 0.5) {
-                        accidentCompleted = "Lost 5% of the products";
-                        deliveryDelivering.setQuantity((int) (deliveryDelivering.getQuantity() * 0.95));
-                    }
-                    deliveryRepository.save(deliveryDelivering);
+        // 3. schedule the next step on this node, a full scheduler leaves it to the poller
+        if (transition.nextTransitionAt != null) {
+            long delay = Math.max(transition.nextTransitionAt.getTime() - System.currentTimeMillis(), 0);
+            deliveryScheduler.schedule(() -> advanceDelivery(transition.deliveryId), delay, TimeUnit.MILLISECONDS);
+        }
+    }
 
-                    // create an email
-                    createEmail((int) deliveryDelivering.getId(), email, DeliveryStatus.COMPLETED.ordinal(), address, accidentCompleted);
+    /*
+    send a delivery status to the store and clear the pending update once the store answered;
+    a rejected update is final, a system error leaves it pending for the poller
+     */
+    private void sendOrderUpdate(long deliveryId, long orderId, DeliveryStatus status) {
+        // 1. send the update
+        ServiceResult<DeliveryStatus> result = updateOrder(orderId, status);
+        if (!result.isSuccess() && !ORDER_UPDATE_REJECTED.equals(result.getErrorMessage())) {
+            logger.warn("Order {} was not updated to {}, retrying later: {}", orderId, status, result.getErrorMessage());
+            return;
+        }
+        if (!result.isSuccess()) {
+            logger.error("Store rejected the update of order {} to {}", orderId, status);
+        }
 
-                    scheduler.shutdown();
-                }, 5, TimeUnit.SECONDS);
+        // 2. nothing is owed anymore
+        transactionTemplate.executeWithoutResult(transactionStatus -> deliveryRepository.clearOrderUpdate(deliveryId, status));
+    }
 
-            }, 5, TimeUnit.SECONDS);
+    /*
+    get the status that follows the given one in the delivery procedure
+     */
+    private static DeliveryStatus nextStatus(DeliveryStatus status) {
+        return switch (status) {
+            case SETUP -> DeliveryStatus.PICKUP;
+            case PICKUP -> DeliveryStatus.DELIVERING;
+            case DELIVERING -> DeliveryStatus.COMPLETED;
+            default -> throw new IllegalStateException("Delivery in status " + status + " has no next step");
+        };
+    }
 
-        }, 20, TimeUnit.SECONDS);
+    /*
+    a committed delivery transition
+     */
+    public static class DeliveryTransition {
+        public final long deliveryId;
+        public final long orderId;
+        public final DeliveryStatus status;
+        public final String email;
+        public final String address;
+        public final String accident;
+        public final Date nextTransitionAt;
 
-        return ServiceResult.success(new DeliveryDTO(delivery));
+        // constructor
+        public DeliveryTransition(Delivery delivery, String accident) {
+            this.deliveryId = delivery.getId();
+            this.orderId = delivery.getOrderId();
+            this.status = delivery.getStatus();
+            this.email = delivery.getEmail();
+            this.address = delivery.getAddress();
+            this.accident = accident;
+            this.nextTransitionAt = delivery.getNextTransitionAt();
+        }
     }
 
     /*
@@ -195,8 +294,8 @@ public class DeliveryService {
 
             return ServiceResult.success(DeliveryStatus.values()[responseBody.get("status")]);
 
-        } catch (HttpClientErrorException.BadRequest e) { // business logic error
-            return ServiceResult.failure("Order update failed due to business logic error");
+        } catch (HttpClientErrorException e) { // business logic error
+            return ServiceResult.failure(ORDER_UPDATE_REJECTED);
         }
         catch (Exception e) { // system error
             return ServiceResult.failure("Order update failed due to system error");
@@ -215,43 +314,6 @@ public class DeliveryService {
         }
     }
 
-    /*
-    create email
-     */
-    public ServiceResult<DeliveryStatus> createEmail(Integer deliverId, String email, Integer deliveryStatus, String address, String accident) {
-        // 1. use HTTP request to create an email
-        String website = "http://localhost:8083/";
-        String url = website + "/email/emails";
-
-        // 2. create a request body
-        CreateEmailRequest createEmailRequest = new CreateEmailRequest(deliverId, email, deliveryStatus, address, accident);
-        HttpEntity<CreateEmailRequest> requestEntity = new HttpEntity<>(createEmailRequest);
-
-        // 3. send HTTP request to create an email
-        try {
-            // 4. send the POST request and get the response
-            ResponseEntity<Map<String, Integer>> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, new ParameterizedTypeReference<>() {});
-
-            // 5. if the creation succeeded
-
-            // 5.1 check is the response body is empty
-            if (response.getBody() == null) {
-                return ServiceResult.failure("Wrong email response");
-            }
-
-            // 5.2 cast the response body to a map
-            Map<String, Integer> responseBody = response.getBody();
-
-            return ServiceResult.success(DeliveryStatus.values()[responseBody.get("status")]);
-
-        } catch (HttpClientErrorException.BadRequest e){ // business logic error
-            return ServiceResult.failure("Email creation failed due to business logic error");
-        }
-        catch (Exception e) { // system error
-            return ServiceResult.failure("Email creation failed due to system error");
-        }
-    }
-
     /*
     create email request body
      */
@@ -288,9 +350,12 @@ public class DeliveryService {
         // 3. get the delivery object
         Delivery deliveryObject = delivery.get();
 
-        // 3. update the delivery
+        // 3. update the delivery: a finished delivery has no pending transition
         deliveryObject.setStatus(status);
         deliveryObject.setQuantity(quantity);
+        if (status == DeliveryStatus.COMPLETED || status == DeliveryStatus.CANCELLED) {
+            deliveryObject.setNextTransitionAt(null);
+        }
         deliveryRepository.save(delivery.get());
 
         return ServiceResult.success(new DeliveryDTO(delivery.get()));
@@ -312,13 +377,19 @@ public class DeliveryService {
         // 3. get the delivery
         Delivery delivery = deliveryOptional.get();
 
-        // 3. check if the delivery is cancelable
+        // 3. a retried cancellation succeeds again
+        if (delivery.getStatus() == DeliveryStatus.CANCELLED) {
+            return ServiceResult.success(new DeliveryDTO(delivery));
+        }
+
+        // 3.1 check if the delivery is cancelable
         if (delivery.getStatus().ordinal() != 1) {
             return ServiceResult.failure("Delivery is not cancelable");
         }
 
-        // 4. update the delivery
+        // 4. update the delivery and drop its pending transition
         delivery.setStatus(DeliveryStatus.CANCELLED);
+        delivery.setNextTransitionAt(null);
         deliveryRepository.save(delivery);
 
         return ServiceResult.success(new DeliveryDTO(delivery));
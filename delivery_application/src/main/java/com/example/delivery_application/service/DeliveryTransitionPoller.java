@@ -0,0 +1,51 @@
+package com.example.delivery_application.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/*
+ * Advances every persisted delivery whose next transition is due.
+ *
+ * The in-memory scheduler only knows about deliveries created on this node since it started, so
+ * this poller is what recovers deliveries after a restart and shares the load between nodes. It also
+ * sends the store every status it has not confirmed yet, the update after a transition is lost if
+ * the node goes away after the commit or the store is unavailable.
+ */
+@Component
+public class DeliveryTransitionPoller {
+    private final DeliveryService deliveryService;
+    private final int batchSize;
+
+    @Autowired
+    public DeliveryTransitionPoller(DeliveryService deliveryService,
+                                    @Value("${delivery.poller.batch-size:200}") int batchSize) {
+        this.deliveryService = deliveryService;
+        this.batchSize = batchSize;
+    }
+
+    /*
+    drain the due deliveries page by page
+     */
+    @Scheduled(fixedDelayString = "${delivery.poller.interval-millis:1000}")
+    public void advanceDueDeliveries() {
+        // keep claiming pages until a page comes back short
+        int advanced;
+        do {
+            advanced = deliveryService.advanceDueDeliveries(batchSize);
+        } while (advanced == batchSize);
+    }
+
+    /*
+    send the pending order updates page by page
+     */
+    @Scheduled(fixedDelayString = "${delivery.poller.interval-millis:1000}")
+    public void resendPendingOrderUpdates() {
+        // keep claiming pages until a page comes back short
+        int sent;
+        do {
+            sent = deliveryService.resendPendingOrderUpdates(batchSize);
+        } while (sent == batchSize);
+    }
+}
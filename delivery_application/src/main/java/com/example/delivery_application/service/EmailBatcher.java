@@ -0,0 +1,187 @@
+package com.example.delivery_application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Sends the emails of delivery status changes to the email service in batches.
+ *
+ * A transition only queues its email. Every delivery.email.flush-interval-millis the queue is posted
+ * to the bulk endpoint of the email service, up to delivery.email.batch-size emails per request, so
+ * a burst of transitions becomes a few requests and a few batched inserts instead of one each.
+ *
+ * The email service creates the valid emails of a batch and reports the invalid ones by index, those
+ * are logged and dropped. A batch that fails with a 5xx or an I/O error is put back at the head of
+ * the queue, so the emails of a delivery keep their order, and sent again with the next flush.
+ *
+ * The queue holds at most delivery.email.capacity emails. While the email service is down a full
+ * queue makes the transitions wait up to delivery.email.enqueue-timeout-millis for room, then the
+ * email is dropped and counted, so an outage cannot grow the heap without limit. The queue is kept
+ * in memory only: it is flushed on shutdown, but a crash loses what it holds.
+ */
+@Component
+public class EmailBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(EmailBatcher.class);
+
+    private final RestTemplate restTemplate;
+    private final int batchSize;
+    private final int capacity;
+    private final long enqueueTimeoutNanos;
+    // guarded by itself, waiting producers are notified when a flush makes room
+    private final Deque<DeliveryService.CreateEmailRequest> queue = new ArrayDeque<>();
+    private final Counter droppedCounter;
+
+    @Autowired
+    public EmailBatcher(RestTemplate restTemplate,
+                        @Value("${delivery.email.batch-size:500}") int batchSize,
+                        @Value("${delivery.email.capacity:10000}") int capacity,
+                        @Value("${delivery.email.enqueue-timeout-millis:100}") long enqueueTimeoutMillis,
+                        MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.batchSize = Math.max(batchSize, 1);
+        this.capacity = Math.max(capacity, 1);
+        this.enqueueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(enqueueTimeoutMillis);
+        Gauge.builder("delivery.email.queue", this, EmailBatcher::size)
+                .description("Emails waiting to be sent to the email service")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("delivery.email.dropped")
+                .description("Emails dropped because the queue stayed full")
+                .register(meterRegistry);
+    }
+
+    /*
+    queue an email, it is sent with the next flush; waits for room while the queue is full and
+    returns false if the email was dropped
+     */
+    public boolean enqueue(DeliveryService.CreateEmailRequest request) {
+        synchronized (queue) {
+            // 1. wait for a flush to make room
+            long deadline = System.nanoTime() + enqueueTimeoutNanos;
+            while (queue.size() >= capacity) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    droppedCounter.increment();
+                    logger.error("Email queue is full, dropped the email of delivery {} to {}", request.deliveryId, request.emailAddress);
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    droppedCounter.increment();
+                    return false;
+                }
+            }
+
+            // 2. queue it behind the others
+            queue.addLast(request);
+            return true;
+        }
+    }
+
+    /*
+    number of emails waiting to be sent
+     */
+    public int size() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /*
+    send the queued emails batch by batch
+     */
+    @Scheduled(fixedDelayString = "${delivery.email.flush-interval-millis:200}")
+    public void flush() {
+        // keep sending until a batch comes back short
+        List<DeliveryService.CreateEmailRequest> batch;
+        do {
+            batch = take();
+            if (batch.isEmpty()) {
+                return;
+            }
+            // stop until the next flush if the email service is unavailable
+            if (!send(batch)) {
+                return;
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /*
+    take the next batch from the head of the queue
+     */
+    private List<DeliveryService.CreateEmailRequest> take() {
+        List<DeliveryService.CreateEmailRequest> batch = new ArrayList<>();
+        synchronized (queue) {
+            DeliveryService.CreateEmailRequest request;
+            while (batch.size() < batchSize && (request = queue.pollFirst()) != null) {
+                batch.add(request);
+            }
+            queue.notifyAll();
+        }
+        return batch;
+    }
+
+    /*
+    post a batch to the email service, returns false if it was queued again to be retried
+     */
+    private boolean send(List<DeliveryService.CreateEmailRequest> batch) {
+        String website = "http://localhost:8083/";
+        String url = website + "email/emails/batch";
+        try {
+            ResponseEntity<Map> response = restTemplate.postForEntity(url, batch, Map.class);
+            Object errors = response.getBody() == null ? null : response.getBody().get("errors");
+            if (errors instanceof List<?> rejected && !rejected.isEmpty()) {
+                logger.error("Email service rejected {} of {} emails: {}", rejected.size(), batch.size(), rejected);
+            }
+        } catch (HttpClientErrorException.BadRequest e) { // business logic error, sending it again would not help
+            logger.error("Email service rejected {} emails: {}", batch.size(), e.getResponseBodyAsString());
+        } catch (HttpServerErrorException | ResourceAccessException e) { // email service unavailable, try again later
+            logger.warn("{} emails could not be sent, retrying: {}", batch.size(), e.getMessage());
+            requeue(batch);
+            return false;
+        } catch (Exception e) { // system error
+            logger.error("{} emails could not be sent", batch.size(), e);
+        }
+        return true;
+    }
+
+    /*
+    put a failed batch back at the head in its original order, ahead of the emails queued since;
+    this may go over the capacity by one batch, new emails wait until it is sent
+     */
+    private void requeue(List<DeliveryService.CreateEmailRequest> batch) {
+        synchronized (queue) {
+            ListIterator<DeliveryService.CreateEmailRequest> iterator = batch.listIterator(batch.size());
+            while (iterator.hasPrevious()) {
+                queue.addFirst(iterator.previous());
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.example.delivery_application.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Shared scheduler for the delivery lifecycle.
+ *
+ * A hashed timer wheel: one ticker thread moves timeouts into buckets and hands expired ones to a
+ * fixed pool of worker threads, so the thread count stays constant no matter how many deliveries
+ * are in flight. Each pending timeout costs a single small object on the heap.
+ *
+ * Both queues are bounded. At most delivery.scheduler.capacity timeouts are pending, beyond that
+ * schedule refuses the task; every delivery keeps its due time in the database, so the transition
+ * poller advances a refused one when it is due. When the worker queue is full the ticker waits for
+ * room, so a backlog of expired transitions fills the wheel and new tasks are refused instead of
+ * piling up in memory.
+ */
+@Component
+public class DeliveryScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(DeliveryScheduler.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final ArrayDeque<Timeout>[] wheel;
+    // bounded by the capacity: a timeout is counted as pending before it is added
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final long capacity;
+    private final Counter rejectedCounter;
+    private final ThreadPoolExecutor workers;
+    private final Thread ticker;
+    private final Timer lagTimer;
+    private final long startTime;
+    private volatile boolean running = true;
+    private long tick;
+
+    @Autowired
+    @SuppressWarnings("unchecked")
+    public DeliveryScheduler(@Value("${delivery.scheduler.tick-millis:100}") long tickMillis,
+                             @Value("${delivery.scheduler.wheel-size:512}") int wheelSize,
+                             @Value("${delivery.scheduler.worker-threads:4}") int workerThreads,
+                             @Value("${delivery.scheduler.capacity:100000}") long capacity,
+                             @Value("${delivery.scheduler.worker-queue-capacity:1000}") int workerQueueCapacity,
+                             MeterRegistry meterRegistry) {
+        // 1. round the wheel size up to a power of two so the bucket index is a simple mask
+        int buckets = Integer.highestOneBit(Math.max(wheelSize, 1) - 1) << 1;
+        buckets = Math.max(buckets, 1);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = buckets - 1;
+        this.capacity = Math.max(capacity, 1);
+        this.wheel = new ArrayDeque[buckets];
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+
+        // 2. fixed worker pool that runs the expired transitions, the ticker waits while its queue is full
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(workerQueueCapacity, 1)), runnable -> {
+            Thread thread = new Thread(runnable, "delivery-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, this::waitForWorker);
+        // the waiting ticker puts into the queue directly, so every worker must already be polling it
+        this.workers.prestartAllCoreThreads();
+
+        // 3. metrics: how many transitions are waiting and how late they start
+        Gauge.builder("delivery.scheduler.pending", pending, AtomicLong::get)
+                .description("Delivery transitions waiting in the scheduler")
+                .register(meterRegistry);
+        Gauge.builder("delivery.scheduler.workers.queue", workers, executor -> executor.getQueue().size())
+                .description("Expired delivery transitions waiting for a worker thread")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("delivery.scheduler.rejected")
+                .description("Delivery transitions refused because the scheduler was full, left to the poller")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("delivery.scheduler.lag")
+                .description("Delay between the due time of a delivery transition and its start")
+                .register(meterRegistry);
+
+        // 4. start the ticker
+        this.startTime = System.nanoTime();
+        this.ticker = new Thread(this::run, "delivery-scheduler");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /*
+    schedule a task to run after the given delay, false when the scheduler is full and the task was not scheduled
+     */
+    public boolean schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Delivery scheduler is stopped");
+        }
+
+        // 1. take a place, a full scheduler refuses the task
+        long current;
+        do {
+            current = pending.get();
+            if (current >= capacity) {
+                rejectedCounter.increment();
+                return false;
+            }
+        } while (!pending.compareAndSet(current, current + 1));
+
+        // 2. hand it to the ticker
+        long deadline = System.nanoTime() - startTime + unit.toNanos(delay);
+        incoming.add(new Timeout(task, deadline));
+        return true;
+    }
+
+    /*
+    number of tasks that have not been started yet
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        ticker.interrupt();
+        workers.shutdown();
+    }
+
+    private void run() {
+        while (running) {
+            // 1. wait for the end of the current tick
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            // 2. place the newly scheduled timeouts into their buckets
+            transferIncoming();
+
+            // 3. fire every timeout of the current bucket that is due in this round
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            // never schedule into the past: late timeouts go into the current bucket
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            iterator.remove();
+            dispatch(timeout);
+        }
+    }
+
+    private void dispatch(Timeout timeout) {
+        pending.decrementAndGet();
+        workers.execute(() -> {
+            long lag = System.nanoTime() - startTime - timeout.deadline;
+            lagTimer.record(Math.max(lag, 0), TimeUnit.NANOSECONDS);
+            try {
+                timeout.task.run();
+            } catch (Exception e) {
+                logger.error("Delivery transition failed", e);
+            }
+        });
+    }
+
+    /*
+    back-pressure on the ticker: wait for room in the worker queue instead of dropping an expired transition;
+    after shutdown the transition is left to the poller
+     */
+    private void waitForWorker(Runnable runnable, ThreadPoolExecutor executor) {
+        try {
+            while (!executor.isShutdown()) {
+                if (executor.getQueue().offer(runnable, tickNanos, TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
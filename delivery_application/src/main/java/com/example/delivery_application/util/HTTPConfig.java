@@ -1,13 +1,96 @@
 package com.example.delivery_application.util;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ * Outbound HTTP: one pooled client shared by every RestTemplate call, with keep-alive and timeouts
+ * so a slow peer cannot hold a thread forever.
+ */
 @Configuration
 public class HTTPConfig {
+    // the services this application calls
+    private static final Map<String, HttpHost> PEERS = Map.of(
+            "store", new HttpHost("http", "localhost", 8080),
+            "email", new HttpHost("http", "localhost", 8083));
+
+    @Bean(destroyMethod = "close")
+    public PoolingHttpClientConnectionManager connectionManager(@Value("${delivery.http.max-connections:200}") int maxConnections,
+                                                                @Value("${delivery.http.max-connections-per-peer:50}") int maxConnectionsPerPeer,
+                                                                @Value("${delivery.http.connect-timeout-millis:2000}") long connectTimeoutMillis,
+                                                                @Value("${delivery.http.read-timeout-millis:5000}") long readTimeoutMillis,
+                                                                MeterRegistry meterRegistry) {
+        // 1. pool connections per peer, check idle ones before reuse
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerPeer)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+
+        // 2. metrics per peer: connections in use, idle, and requests waiting for one
+        PEERS.forEach((peer, host) -> {
+            HttpRoute route = new HttpRoute(host);
+            registerPoolGauge(meterRegistry, "http.client.pool.leased", "Connections in use", peer,
+                    connectionManager, manager -> manager.getStats(route), PoolStats::getLeased);
+            registerPoolGauge(meterRegistry, "http.client.pool.available", "Idle connections kept alive", peer,
+                    connectionManager, manager -> manager.getStats(route), PoolStats::getAvailable);
+            registerPoolGauge(meterRegistry, "http.client.pool.pending", "Requests waiting for a connection", peer,
+                    connectionManager, manager -> manager.getStats(route), PoolStats::getPending);
+        });
+        return connectionManager;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+                                          @Value("${delivery.http.connection-request-timeout-millis:2000}") long connectionRequestTimeoutMillis,
+                                          @Value("${delivery.http.keep-alive-millis:15000}") long keepAliveMillis) {
+        // keep-alive stays below the 20s Tomcat keeps an idle connection open, so a pooled connection is not reused after the peer closed it
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMillis))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> TimeValue.ofMilliseconds(keepAliveMillis))
+                .evictIdleConnections(TimeValue.ofMilliseconds(keepAliveMillis))
+                .evictExpiredConnections()
+                .build();
+    }
+
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+
+    private static void registerPoolGauge(MeterRegistry meterRegistry, String name, String description, String peer,
+                                          PoolingHttpClientConnectionManager connectionManager,
+                                          Function<PoolingHttpClientConnectionManager, PoolStats> stats,
+                                          Function<PoolStats, Integer> value) {
+        Gauge.builder(name, connectionManager, manager -> value.apply(stats.apply(manager)))
+                .description(description)
+                .tag("peer", peer)
+                .register(meterRegistry);
     }
 }
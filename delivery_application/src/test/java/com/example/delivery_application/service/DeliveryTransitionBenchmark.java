@@ -0,0 +1,115 @@
+package com.example.delivery_application.service;
+
+import com.example.delivery_application.model.Delivery;
+import com.example.delivery_application.model.DeliveryStatus;
+import com.example.delivery_application.repository.DeliveryRepository;
+import com.example.delivery_application.util.DeliveryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/*
+ * Throughput of the due-delivery poller: 100k due deliveries are advanced by four nodes claiming
+ * pages with FOR UPDATE SKIP LOCKED, each delivery exactly once. The store and the email service
+ * are stubbed, so this measures the claim, the transition and the cleared order update.
+ *
+ * Runs on the embedded database with ./gradlew benchmark; for numbers that match production, run
+ * it with spring.test.database.replace=none and spring.datasource.* pointing at Postgres.
+ */
+@DataJpaTest
+@Tag("benchmark")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DeliveryTransitionBenchmark {
+    private static final int DELIVERIES = 100_000;
+    private static final int NODES = 4;
+    private static final int BATCH_SIZE = 200;
+
+    @Autowired
+    private DeliveryRepository deliveryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void advance100kDueDeliveries() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // 1. 100k deliveries that are all due
+        Date due = new Date(System.currentTimeMillis() - 1000);
+        for (int start = 0; start < DELIVERIES; start += 1000) {
+            List<Delivery> chunk = new ArrayList<>();
+            for (int i = start; i < start + 1000; i++) {
+                Delivery delivery = new Delivery(i + 1, DeliveryStatus.SETUP, due, 20, "1 Main Street", "customer@example.com");
+                delivery.setNextTransitionAt(due);
+                chunk.add(delivery);
+            }
+            transactionTemplate.executeWithoutResult(status -> deliveryRepository.saveAll(chunk));
+        }
+
+        // 2. the delivery nodes share the database, the store answers every update
+        RestTemplate restTemplate = mock(RestTemplate.class, withSettings().stubOnly());
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(), any(ParameterizedTypeReference.class)))
+                .thenAnswer(invocation -> ResponseEntity.ok(Map.of("status", 1)));
+        DeliveryService deliveryService = new DeliveryService(deliveryRepository, restTemplate,
+                mock(DeliveryScheduler.class, withSettings().stubOnly()), mock(EmailBatcher.class, withSettings().stubOnly()),
+                transactionTemplate, new SimpleMeterRegistry());
+
+        // 3. every node drains pages until it finds nothing left to claim
+        ExecutorService nodes = Executors.newFixedThreadPool(NODES);
+        long startNanos = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int node = 0; node < NODES; node++) {
+            results.add(nodes.submit(() -> {
+                int total = 0;
+                int advanced;
+                do {
+                    advanced = deliveryService.advanceDueDeliveries(BATCH_SIZE);
+                    total += advanced;
+                } while (advanced > 0);
+                return total;
+            }));
+        }
+        int advanced = 0;
+        for (Future<Integer> result : results) {
+            advanced += result.get(10, TimeUnit.MINUTES);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        nodes.shutdown();
+        System.out.printf("Advanced %d deliveries on %d nodes in %d ms (%.0f deliveries/s)%n",
+                advanced, NODES, elapsedMillis, advanced * 1000.0 / Math.max(elapsedMillis, 1));
+
+        // 4. each delivery moved exactly one step and the store confirmed it
+        assertThat(advanced).isEqualTo(DELIVERIES);
+        Map<DeliveryStatus, Long> statuses = deliveryRepository.findAll().stream()
+                .collect(Collectors.groupingBy(Delivery::getStatus, Collectors.counting()));
+        assertThat(statuses).containsExactly(Map.entry(DeliveryStatus.PICKUP, (long) DELIVERIES));
+        assertThat(deliveryRepository.claimPendingOrderUpdates(new Date(System.currentTimeMillis() + 60_000), 1)).isEmpty();
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.delivery_application.service;
+
+import com.example.delivery_application.model.Delivery;
+import com.example.delivery_application.model.DeliveryStatus;
+import com.example.delivery_application.repository.DeliveryRepository;
+import com.example.delivery_application.util.DeliveryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/*
+ * Persisted due times: the poller drains the due deliveries page by page, and every claimed delivery
+ * moves one step with its next due time stored on the row. The store is owed each new status until it
+ * answers, a failed or lost update is sent again by the poller.
+ */
+class DeliveryTransitionPollerTest {
+    private DeliveryRepository deliveryRepository;
+    private DeliveryScheduler deliveryScheduler;
+    private EmailBatcher emailBatcher;
+    private RestTemplate restTemplate;
+    private DeliveryService deliveryService;
+
+    @BeforeEach
+    void setUp() {
+        deliveryRepository = mock(DeliveryRepository.class);
+        deliveryScheduler = mock(DeliveryScheduler.class);
+        emailBatcher = mock(EmailBatcher.class);
+        restTemplate = mock(RestTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        deliveryService = new DeliveryService(deliveryRepository, restTemplate,
+                deliveryScheduler, emailBatcher, transactionTemplate, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void pollerClaimsPagesUntilOneComesBackShort() {
+        DeliveryService deliveryService = mock(DeliveryService.class);
+        when(deliveryService.advanceDueDeliveries(100)).thenReturn(100, 100, 37, 100);
+
+        new DeliveryTransitionPoller(deliveryService, 100).advanceDueDeliveries();
+
+        verify(deliveryService, times(3)).advanceDueDeliveries(100);
+    }
+
+    @Test
+    void claimedDeliveriesAdvanceOneStepAndStoreTheirNextDueTime() {
+        Delivery pickedUp = delivery(1, DeliveryStatus.SETUP);
+        Delivery delivered = delivery(2, DeliveryStatus.DELIVERING);
+        when(deliveryRepository.claimDueDeliveries(any(Date.class), eq(50))).thenReturn(List.of(pickedUp, delivered));
+
+        long before = System.currentTimeMillis();
+        int advanced = deliveryService.advanceDueDeliveries(50);
+
+        assertThat(advanced).isEqualTo(2);
+        assertThat(pickedUp.getStatus()).isEqualTo(DeliveryStatus.PICKUP);
+        assertThat(pickedUp.getNextTransitionAt().getTime()).isBetween(before + 5000, System.currentTimeMillis() + 5000);
+        assertThat(delivered.getStatus()).isEqualTo(DeliveryStatus.COMPLETED);
+        assertThat(delivered.getNextTransitionAt()).isNull();
+        verify(deliveryRepository).save(pickedUp);
+        verify(deliveryRepository).save(delivered);
+
+        // both customers are emailed, only the delivery that is not completed gets a next step
+        verify(emailBatcher, times(2)).enqueue(any());
+        verify(deliveryScheduler, times(1)).schedule(any(Runnable.class), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void confirmedOrderUpdateIsNoLongerOwed() {
+        storeAnswers();
+        Delivery pickedUp = delivery(1, DeliveryStatus.SETUP);
+        when(deliveryRepository.claimDueDeliveries(any(Date.class), eq(50))).thenReturn(List.of(pickedUp));
+
+        long before = System.currentTimeMillis();
+        deliveryService.advanceDueDeliveries(50);
+
+        // the transition committed the pending update together with the new status
+        assertThat(pickedUp.getOrderUpdateDueAt().getTime()).isGreaterThanOrEqualTo(before + 30_000);
+        verify(deliveryRepository).clearOrderUpdate(1, DeliveryStatus.PICKUP);
+    }
+
+    @Test
+    void failedOrderUpdateStaysOwed() {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(), any(ParameterizedTypeReference.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+        Delivery pickedUp = delivery(1, DeliveryStatus.SETUP);
+        when(deliveryRepository.claimDueDeliveries(any(Date.class), eq(50))).thenReturn(List.of(pickedUp));
+
+        deliveryService.advanceDueDeliveries(50);
+
+        assertThat(pickedUp.getOrderUpdateDueAt()).isNotNull();
+        verify(deliveryRepository, never()).clearOrderUpdate(anyLong(), any());
+    }
+
+    @Test
+    void pollerResendsPendingOrderUpdates() {
+        storeAnswers();
+        // a node went away after committing the transition of delivery 1 to DELIVERING
+        Delivery owed = delivery(1, DeliveryStatus.DELIVERING);
+        owed.setOrderUpdateDueAt(new Date(System.currentTimeMillis() - 1000));
+        when(deliveryRepository.claimPendingOrderUpdates(any(Date.class), eq(50))).thenReturn(List.of(owed));
+
+        long before = System.currentTimeMillis();
+        int sent = deliveryService.resendPendingOrderUpdates(50);
+
+        assertThat(sent).isEqualTo(1);
+        // leased past the retry delay before the call, so another node does not send it meanwhile
+        assertThat(owed.getOrderUpdateDueAt().getTime()).isGreaterThanOrEqualTo(before + 30_000);
+        verify(deliveryRepository).save(owed);
+        verify(restTemplate).exchange(eq("http://localhost:8080//store/users/-1/orders/10"), eq(HttpMethod.PUT), any(), any(ParameterizedTypeReference.class));
+        verify(deliveryRepository).clearOrderUpdate(1, DeliveryStatus.DELIVERING);
+        // nothing else is repeated
+        verify(emailBatcher, never()).enqueue(any());
+        verify(deliveryScheduler, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    void pollerResendsPagesUntilOneComesBackShort() {
+        DeliveryService deliveryService = mock(DeliveryService.class);
+        when(deliveryService.resendPendingOrderUpdates(100)).thenReturn(100, 12, 100);
+
+        new DeliveryTransitionPoller(deliveryService, 100).resendPendingOrderUpdates();
+
+        verify(deliveryService, times(2)).resendPendingOrderUpdates(100);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void storeAnswers() {
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.PUT), any(), any(ParameterizedTypeReference.class)))
+                .thenAnswer(invocation -> ResponseEntity.ok(Map.of("status", 1)));
+    }
+
+    private static Delivery delivery(long id, DeliveryStatus status) {
+        Delivery delivery = new Delivery(id * 10, status, new Date(), 20, "1 Main Street", "customer@example.com");
+        delivery.setId(id);
+        delivery.setNextTransitionAt(new Date(System.currentTimeMillis() - 1000));
+        return delivery;
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.delivery_application.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/*
+ * Queued emails are sent in batches; a batch the email service could not take because it was down
+ * is sent again with the next flush ahead of newer emails, one it rejected is dropped. The queue is
+ * bounded: a full queue holds producers back for a while, then drops and counts the email.
+ */
+class EmailBatcherTest {
+    private RestTemplate restTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private EmailBatcher emailBatcher;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate = mock(RestTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        emailBatcher = new EmailBatcher(restTemplate, 2, 4, 50, meterRegistry);
+    }
+
+    @Test
+    void flushSendsTheQueueInBatches() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class))).thenReturn(accepted());
+        for (int i = 1; i <= 5; i++) {
+            emailBatcher.enqueue(email(i));
+        }
+
+        emailBatcher.flush();
+
+        assertThat(sentBatches(3)).extracting(List::size).containsExactly(2, 2, 1);
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void batchIsRetriedAfterAServerError() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE))
+                .thenReturn(accepted());
+        emailBatcher.enqueue(email(1));
+
+        emailBatcher.flush();
+        assertThat(queued()).isEqualTo(1);
+
+        emailBatcher.flush();
+        List<List<?>> batches = sentBatches(2);
+        assertThat(batches.get(1)).isEqualTo(batches.get(0));
+        assertThat(queued()).isZero();
+    }
+
+    @Test
+    void batchIsRetriedAfterAnIoError() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"));
+        for (int i = 1; i <= 5; i++) {
+            emailBatcher.enqueue(email(i));
+        }
+
+        emailBatcher.flush();
+
+        // the flush stops at the first failure and keeps every email
+        verify(restTemplate, times(1)).postForEntity(anyString(), any(), eq(Map.class));
+        assertThat(queued()).isEqualTo(5);
+    }
+
+    @Test
+    void retriedBatchStaysAheadOfNewerEmails() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(new ResourceAccessException("Connection refused"))
+                .thenReturn(accepted());
+        emailBatcher.enqueue(email(1));
+        emailBatcher.enqueue(email(2));
+        emailBatcher.flush();
+
+        // newer emails arrive while the email service is down
+        emailBatcher.enqueue(email(3));
+        emailBatcher.flush();
+
+        List<List<?>> batches = sentBatches(3);
+        assertThat(batches.get(1)).extracting(request -> ((DeliveryService.CreateEmailRequest) request).deliveryId).containsExactly(1, 2);
+        assertThat(batches.get(2)).extracting(request -> ((DeliveryService.CreateEmailRequest) request).deliveryId).containsExactly(3);
+    }
+
+    @Test
+    void fullQueueDropsAndCountsTheEmail() {
+        for (int i = 1; i <= 4; i++) {
+            assertThat(emailBatcher.enqueue(email(i))).isTrue();
+        }
+
+        long start = System.nanoTime();
+        assertThat(emailBatcher.enqueue(email(5))).isFalse();
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(50);
+        assertThat(queued()).isEqualTo(4);
+        assertThat(meterRegistry.get("delivery.email.dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueWaitsForAFlush() throws Exception {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class))).thenReturn(accepted());
+        EmailBatcher patientBatcher = new EmailBatcher(restTemplate, 2, 2, 10_000, meterRegistry);
+        patientBatcher.enqueue(email(1));
+        patientBatcher.enqueue(email(2));
+
+        CompletableFuture<Boolean> blocked = CompletableFuture.supplyAsync(() -> patientBatcher.enqueue(email(3)));
+        Thread.sleep(100);
+        assertThat(blocked).isNotDone();
+
+        patientBatcher.flush();
+
+        assertThat(blocked.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(patientBatcher.size()).isLessThanOrEqualTo(1);
+    }
+
+    @Test
+    void rejectedBatchIsDropped() {
+        when(restTemplate.postForEntity(anyString(), any(), eq(Map.class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request", HttpHeaders.EMPTY, new byte[0], null));
+        emailBatcher.enqueue(email(1));
+
+        emailBatcher.flush();
+        emailBatcher.flush();
+
+        verify(restTemplate, times(1)).postForEntity(anyString(), any(), eq(Map.class));
+        assertThat(queued()).isZero();
+    }
+
+    private List<List<?>> sentBatches(int count) {
+        ArgumentCaptor<Object> batches = ArgumentCaptor.forClass(Object.class);
+        verify(restTemplate, times(count)).postForEntity(anyString(), batches.capture(), eq(Map.class));
+        return batches.getAllValues().stream().<List<?>>map(batch -> (List<?>) batch).toList();
+    }
+
+    private double queued() {
+        return meterRegistry.get("delivery.email.queue").gauge().value();
+    }
+
+    private static ResponseEntity<Map> accepted() {
+        return ResponseEntity.ok(Map.of("statuses", List.of(), "errors", List.of()));
+    }
+
+    private static DeliveryService.CreateEmailRequest email(int deliveryId) {
+        return new DeliveryService.CreateEmailRequest(deliveryId, "customer@example.com", 2, "1 Main Street", null);
+    }
+}
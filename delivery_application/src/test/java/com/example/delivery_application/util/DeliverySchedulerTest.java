@@ -0,0 +1,139 @@
+package com.example.delivery_application.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * The timer wheel fires tasks in the order of their due times, never before they are due, including
+ * tasks that are more than one turn of the wheel away. A full scheduler refuses new tasks, and
+ * busy workers hold the ticker back instead of queueing expired tasks without limit.
+ */
+class DeliverySchedulerTest {
+    private DeliveryScheduler deliveryScheduler;
+
+    @BeforeEach
+    void setUp() {
+        // 10 ms ticks on 8 buckets: one turn of the wheel is 80 ms, a single worker keeps the firing order
+        deliveryScheduler = new DeliveryScheduler(10, 8, 1, 100, 100, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        deliveryScheduler.shutdown();
+    }
+
+    @Test
+    void tasksFireInTheOrderOfTheirDueTimes() throws InterruptedException {
+        long[] delays = {250, 30, 170, 90, 10};
+        List<Long> fired = Collections.synchronizedList(new ArrayList<>());
+        List<Long> early = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(delays.length);
+
+        for (long delay : delays) {
+            long scheduledAt = System.nanoTime();
+            deliveryScheduler.schedule(() -> {
+                if (System.nanoTime() - scheduledAt < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    early.add(delay);
+                }
+                fired.add(delay);
+                done.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(fired).containsExactly(10L, 30L, 90L, 170L, 250L);
+        assertThat(early).isEmpty();
+        assertThat(deliveryScheduler.getPendingCount()).isZero();
+    }
+
+    @Test
+    void taskMoreThanOneTurnAwayWaitsForItsRound() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        deliveryScheduler.schedule(done::countDown, 200, TimeUnit.MILLISECONDS);
+
+        // its bucket comes round after 40 ms and 120 ms without firing it
+        assertThat(done.await(150, TimeUnit.MILLISECONDS)).isFalse();
+        assertThat(deliveryScheduler.getPendingCount()).isEqualTo(1);
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void fullSchedulerRefusesTasks() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DeliveryScheduler small = new DeliveryScheduler(10, 8, 1, 2, 1, meterRegistry);
+        try {
+            assertThat(small.schedule(() -> { }, 1, TimeUnit.MINUTES)).isTrue();
+            assertThat(small.schedule(() -> { }, 1, TimeUnit.MINUTES)).isTrue();
+
+            assertThat(small.schedule(() -> { }, 1, TimeUnit.MINUTES)).isFalse();
+            assertThat(small.getPendingCount()).isEqualTo(2);
+            assertThat(meterRegistry.counter("delivery.scheduler.rejected").count()).isEqualTo(1);
+        } finally {
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void busyWorkersHoldBackTheTickerUntilTheSchedulerIsFull() throws InterruptedException {
+        // one worker with room for one queued task, at most four pending
+        DeliveryScheduler small = new DeliveryScheduler(10, 8, 1, 4, 1, new SimpleMeterRegistry());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        try {
+            small.schedule(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, 0, TimeUnit.MILLISECONDS);
+
+            // 1. due tasks fill the worker queue, then the waiting ticker, then the scheduler
+            int accepted = 0;
+            boolean refused = false;
+            for (int i = 0; i < 100 && !refused; i++) {
+                if (small.schedule(ran::incrementAndGet, 0, TimeUnit.MILLISECONDS)) {
+                    accepted++;
+                    Thread.sleep(20);
+                } else {
+                    refused = true;
+                }
+            }
+            assertThat(refused).isTrue();
+            // at most four pending, one queued for the worker and one held by the ticker
+            assertThat(accepted).isBetween(3, 6);
+
+            // 2. once the worker is free every accepted task runs
+            release.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (ran.get() < accepted && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(ran.get()).isEqualTo(accepted);
+            assertThat(small.getPendingCount()).isZero();
+        } finally {
+            release.countDown();
+            small.shutdown();
+        }
+    }
+
+    @Test
+    void stoppedSchedulerRejectsTasks() {
+        deliveryScheduler.shutdown();
+
+        assertThatThrownBy(() -> deliveryScheduler.schedule(() -> { }, 10, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
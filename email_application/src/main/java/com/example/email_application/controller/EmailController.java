@@ -5,21 +5,31 @@ import com.example.email_application.model.DeliveryStatus;
 import com.example.email_application.service.EmailService;
 import com.example.email_application.util.ServiceResult;
 import com.example.email_application.util.ValidationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/email/emails")
 public class EmailController {
+    private static final Logger logger = LoggerFactory.getLogger(EmailController.class);
+
     private final EmailService emailService;
+    private final int maxBatchSize;
 
     @Autowired
-    public EmailController(EmailService emailService) {
+    public EmailController(EmailService emailService,
+                           @Value("${email.batch.max-size:1000}") int maxBatchSize) {
         this.emailService = emailService;
+        this.maxBatchSize = maxBatchSize;
     }
 
     /*
@@ -44,37 +54,65 @@ public class EmailController {
     @PostMapping
     public ResponseEntity<?> createEmail(@RequestBody CreateEmailRequest request) {
         // 1. check validation
-
-        // 1.1 check if the deliveryId is valid
-        if (request.deliveryId == null || request.deliveryId <= 0) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid deliveryId"));
+        ServiceResult<EmailService.EmailEvent> event = toEvent(request);
+        if (!event.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", event.getErrorMessage()));
         }
+        DeliveryStatus deliveryStatus = event.getData().deliveryStatus;
 
-        // 1.2 check if email is valid
-        if (!ValidationUtils.isValidEmail(request.emailAddress)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid email format"));
+        // 2. create an email: if throw exception, system will return 500 error
+        ServiceResult<EmailDTO> result = emailService.createEmail(request.deliveryId, request.emailAddress, deliveryStatus, request.address, request.accident);
+
+        // 3. log the description of email
+        logger.debug(result.getData().getDescription());
+
+        return ResponseEntity.ok(Map.of("status", deliveryStatus.ordinal()));
+    }
+
+    /*
+    create the emails of several delivery status changes at once,
+    the valid ones are created and the invalid ones are reported by their index in the batch
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createEmails(@RequestBody List<CreateEmailRequest> requests) {
+        // 1. check validation
+
+        // 1.1 check the size of the batch
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "No emails"));
+        }
+        if (requests.size() > maxBatchSize) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "At most " + maxBatchSize + " emails per batch"));
         }
 
-        // 1.3 check if deliveryStatus is valid
-        DeliveryStatus deliveryStatus;
-        try {
-            deliveryStatus = DeliveryStatus.values()[request.deliveryStatus];
-        } catch (ArrayIndexOutOfBoundsException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid delivery status"));
+        // 1.2 check every email, an invalid one is reported without failing the others
+        List<EmailService.EmailEvent> events = new ArrayList<>(requests.size());
+        List<Map<String, Object>> errors = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ServiceResult<EmailService.EmailEvent> event = toEvent(requests.get(i));
+            if (!event.isSuccess()) {
+                errors.add(Map.of("index", i, "message", event.getErrorMessage()));
+                continue;
+            }
+            events.add(event.getData());
         }
 
-        // 1.4 check if address is valid
-        if (request.address == null || request.address.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid address"));
+        // 1.3 check if any email is valid
+        if (events.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "No valid emails", "errors", errors));
         }
 
-        // 2. create an email: if throw exception, system will return 500 error
-        ServiceResult<EmailDTO> result = emailService.createEmail(request.deliveryId, request.emailAddress, deliveryStatus, request.address, request.accident);
+        // 2. create the valid emails: if throw exception, system will return 500 error
+        ServiceResult<List<EmailDTO>> result = emailService.createEmails(events);
 
-        // 3. print the description of email
-        System.out.println(result.getData().getDescription());
+        // 3. log the descriptions of the emails
+        if (logger.isDebugEnabled()) {
+            result.getData().forEach(email -> logger.debug(email.getDescription()));
+        }
 
-        return ResponseEntity.ok(Map.of("status", deliveryStatus.ordinal()));
+        return ResponseEntity.ok(Map.of(
+                "statuses", events.stream().map(event -> event.deliveryStatus.ordinal()).toList(),
+                "errors", errors));
     }
 
     /*
@@ -108,6 +146,34 @@ public class EmailController {
         return ResponseEntity.ok(Map.of("status", deliveryStatus.ordinal()));
     }
 
+    /*
+    check a create email request and turn it into an email event
+     */
+    private static ServiceResult<EmailService.EmailEvent> toEvent(CreateEmailRequest request) {
+        // 1. check if the deliveryId is valid
+        if (request == null || request.deliveryId == null || request.deliveryId <= 0) {
+            return ServiceResult.failure("Invalid deliveryId");
+        }
+
+        // 2. check if email is valid
+        if (!ValidationUtils.isValidEmail(request.emailAddress)) {
+            return ServiceResult.failure("Invalid email format");
+        }
+
+        // 3. check if deliveryStatus is valid
+        if (request.deliveryStatus == null || request.deliveryStatus < 0 || request.deliveryStatus >= DeliveryStatus.values().length) {
+            return ServiceResult.failure("Invalid delivery status");
+        }
+        DeliveryStatus deliveryStatus = DeliveryStatus.values()[request.deliveryStatus];
+
+        // 4. check if address is valid
+        if (request.address == null || request.address.isEmpty()) {
+            return ServiceResult.failure("Invalid address");
+        }
+
+        return ServiceResult.success(new EmailService.EmailEvent(request.deliveryId, request.emailAddress, deliveryStatus, request.address, request.accident));
+    }
+
     /*
     Request body for createEmail
      */
@@ -12,8 +12,10 @@ import java.util.Date;
 @NoArgsConstructor
 @Entity
 public class Email {
+    // ids come from a sequence, 50 at a time, so Hibernate can batch the inserts (IDENTITY cannot)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY) // use IDENTITY to auto-increment starting from 1
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "email_seq")
+    @SequenceGenerator(name = "email_seq", sequenceName = "email_seq", allocationSize = 50)
     private long id;
 
     // version for optimistic locking
@@ -9,7 +9,9 @@ import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -43,21 +45,64 @@ public class EmailService {
      */
     @Transactional
     public ServiceResult<EmailDTO> createEmail(Integer deliveryId, String emailAddress, DeliveryStatus deliveryStatus, String address, String accident) {
-        // 1. generate description
-        String description = "email address: " + emailAddress +
-                ", delivery ID: " + deliveryId +
-                ", delivery status: " + deliveryStatus +
-                ", address: " + address +
-                ", accident: " + accident;
-
-        // 2. create an email
-        Email email = new Email(deliveryId, emailAddress,description,new Date(), deliveryStatus, address);
+        // 1. create an email
+        Email email = newEmail(new EmailEvent(deliveryId, emailAddress, deliveryStatus, address, accident));
         emailRepository.save(email);
 
-        // 3. return email
+        // 2. return email
         return ServiceResult.success(new EmailDTO(email));
     }
 
+    /*
+    create the emails of several events in one transaction, the inserts are sent in JDBC batches
+     */
+    @Transactional
+    public ServiceResult<List<EmailDTO>> createEmails(List<EmailEvent> events) {
+        // 1. create the emails
+        List<Email> emails = new ArrayList<>(events.size());
+        for (EmailEvent event : events) {
+            emails.add(newEmail(event));
+        }
+
+        // 2. save them together
+        emailRepository.saveAll(emails);
+
+        // 3. return emails
+        return ServiceResult.success(emails.stream().map(EmailDTO::new).toList());
+    }
+
+    /*
+    build an email and its description from an event
+     */
+    private static Email newEmail(EmailEvent event) {
+        String description = "email address: " + event.emailAddress +
+                ", delivery ID: " + event.deliveryId +
+                ", delivery status: " + event.deliveryStatus +
+                ", address: " + event.address +
+                ", accident: " + event.accident;
+        return new Email(event.deliveryId, event.emailAddress, description, new Date(), event.deliveryStatus, event.address);
+    }
+
+    /*
+    a delivery status change to send an email about
+     */
+    public static class EmailEvent {
+        public final long deliveryId;
+        public final String emailAddress;
+        public final DeliveryStatus deliveryStatus;
+        public final String address;
+        public final String accident;
+
+        // constructor
+        public EmailEvent(long deliveryId, String emailAddress, DeliveryStatus deliveryStatus, String address, String accident) {
+            this.deliveryId = deliveryId;
+            this.emailAddress = emailAddress;
+            this.deliveryStatus = deliveryStatus;
+            this.address = address;
+            this.accident = accident;
+        }
+    }
+
     /*
     delete an email
      */
@@ -0,0 +1,72 @@
+package com.example.email_application.controller;
+
+import com.example.email_application.model.DeliveryStatus;
+import com.example.email_application.service.EmailService;
+import com.example.email_application.util.ServiceResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+/*
+ * A batch with invalid emails creates the valid ones and reports the others by index.
+ */
+class EmailControllerTest {
+    private EmailService emailService;
+    private EmailController emailController;
+
+    @BeforeEach
+    void setUp() {
+        emailService = mock(EmailService.class);
+        when(emailService.createEmails(anyList())).thenReturn(ServiceResult.success(List.of()));
+        emailController = new EmailController(emailService, 1000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void createEmailsSavesTheValidEntriesAndReportsTheInvalidOnes() {
+        List<EmailController.CreateEmailRequest> requests = List.of(
+                request(1, "a@example.com", DeliveryStatus.PICKUP),
+                request(2, "not an email", DeliveryStatus.PICKUP),
+                request(3, "c@example.com", DeliveryStatus.COMPLETED),
+                request(4, "d@example.com", null));
+
+        ResponseEntity<?> response = emailController.createEmails(requests);
+
+        ArgumentCaptor<List<EmailService.EmailEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(emailService).createEmails(events.capture());
+        assertThat(events.getValue()).extracting(event -> event.deliveryId).containsExactly(1L, 3L);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertThat(body.get("statuses")).isEqualTo(List.of(DeliveryStatus.PICKUP.ordinal(), DeliveryStatus.COMPLETED.ordinal()));
+        assertThat(body.get("errors")).isEqualTo(List.of(
+                Map.of("index", 1, "message", "Invalid email format"),
+                Map.of("index", 3, "message", "Invalid delivery status")));
+    }
+
+    @Test
+    void createEmailsRejectsABatchWithoutValidEntries() {
+        ResponseEntity<?> response = emailController.createEmails(List.of(request(0, "a@example.com", DeliveryStatus.PICKUP)));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(emailService, never()).createEmails(anyList());
+    }
+
+    private static EmailController.CreateEmailRequest request(int deliveryId, String emailAddress, DeliveryStatus deliveryStatus) {
+        EmailController.CreateEmailRequest request = new EmailController.CreateEmailRequest();
+        request.deliveryId = deliveryId;
+        request.emailAddress = emailAddress;
+        request.deliveryStatus = deliveryStatus == null ? null : deliveryStatus.ordinal();
+        request.address = "1 Main Street";
+        return request;
+    }
+}
@@ -5,6 +5,7 @@
 
 import type { AxiosInstance } from 'axios';
 import axios from 'axios/dist/browser/axios.cjs';
+import { getToken } from './services/sessionUtil';
 
 const baseURL = process.env.REACT_APP_API_BASE_URL || 'http://127.0.0.1:8080';
 
@@ -19,4 +20,15 @@ const http: AxiosInstance = axios.create({
   },
 });
 
+/**
+ * 已登录时为每个请求附加会话令牌
+ */
+http.interceptors.request.use((config) => {
+  const token = getToken();
+  if (token) {
+    config.headers.Authorization = `Bearer ${token}`;
+  }
+  return config;
+});
+
 export default http;
@@ -66,8 +66,8 @@ const Login: React.FC<LoginPageProps> = ({ className }) => {
         // 检查响应状态是否为 200（成功）
         if (response.status === 200) {
           const userId = response.data.id;
-          // 保存用户会话
-          setSession({ userId });
+          // 保存用户会话和会话令牌
+          setSession({ userId, token: response.data.token });
           // 重定向到首页
           navigate('/', { replace: true });
         }
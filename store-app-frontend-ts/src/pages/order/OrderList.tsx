@@ -49,7 +49,8 @@ const OrderList: React.FC<OrderListPageProps> = ({ className }) => {
       paymentService
         .cancelPayment(userId, paymentId, orderId)
         .then((response) => {
-          if (response.status === 200) {
+          // 取消和退款在后台处理，后端返回 202 Accepted
+          if (response.status === 200 || response.status === 202) {
             alert('Payment cancelled successfully');
             //刷新订单列表
             setOrders((previousOrders) =>
@@ -84,7 +84,8 @@ const PaymentInfo: React.FC<PaymentInfoPageProps> = ({ className }) => {
 
     try {
       const response = await paymentService.createPayment(userId, data.id, account);
-      if (response && response.status === 200) {
+      // 支付在后台处理，后端返回 202 Accepted
+      if (response && (response.status === 200 || response.status === 202)) {
         alert('Payment Successful!');
         // 支付成功后回到订单列表
         navigate('/order-list', { replace: true });
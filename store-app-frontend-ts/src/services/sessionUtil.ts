@@ -10,6 +10,7 @@ import type { SessionData } from '../types';
  */
 const SESSION_KEYS = {
   USER_ID: 'userId',
+  TOKEN: 'token',
 } as const;
 
 /**
@@ -34,6 +35,22 @@ export const setUserId = (userId: number): void => {
   sessionStorage.setItem(SESSION_KEYS.USER_ID, userId.toString());
 };
 
+/**
+ * 获取会话令牌
+ * @returns 会话令牌，如果不存在则返回 null
+ */
+export const getToken = (): string | null => {
+  return sessionStorage.getItem(SESSION_KEYS.TOKEN);
+};
+
+/**
+ * 设置会话令牌
+ * @param token - 登录时返回的会话令牌
+ */
+export const setToken = (token: string): void => {
+  sessionStorage.setItem(SESSION_KEYS.TOKEN, token);
+};
+
 /**
  * 获取完整的会话数据
  * @returns 会话数据对象，如果用户未登录则返回 null
@@ -43,7 +60,8 @@ export const getSession = (): SessionData | null => {
   if (userId === null) {
     return null;
   }
-  return { userId };
+  const token = getToken();
+  return token === null ? { userId } : { userId, token };
 };
 
 /**
@@ -52,6 +70,9 @@ export const getSession = (): SessionData | null => {
  */
 export const setSession = (data: SessionData): void => {
   setUserId(data.userId);
+  if (data.token) {
+    setToken(data.token);
+  }
 };
 
 /**
@@ -60,6 +81,7 @@ export const setSession = (data: SessionData): void => {
  */
 export const clearSession = (): void => {
   sessionStorage.removeItem(SESSION_KEYS.USER_ID);
+  sessionStorage.removeItem(SESSION_KEYS.TOKEN);
 };
 
 /**
@@ -77,6 +99,8 @@ export const isLoggedIn = (): boolean => {
 const sessionUtil = {
   getUserId,
   setUserId,
+  getToken,
+  setToken,
   getSession,
   setSession,
   clearSession,
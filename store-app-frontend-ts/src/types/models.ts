@@ -22,6 +22,8 @@ export interface User {
   email: string;
   /** 用户密码（可选，通常不从API返回） */
   password?: string;
+  /** 会话令牌（仅登录响应返回） */
+  token?: string;
 }
 
 /**
@@ -230,9 +232,11 @@ export interface PaymentInfoLocationState {
 export interface SessionData {
   /** 用户ID */
   userId: number;
+  /** 会话令牌，请求时作为 Bearer 令牌发送 */
+  token?: string;
 }
 
 /**
  * 会话存储的键类型
  */
-export type SessionKey = 'userId';
+export type SessionKey = 'userId' | 'token';
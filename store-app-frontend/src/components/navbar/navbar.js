@@ -13,6 +13,7 @@ const Navbar = () => {
 
     const handleLogout = () => {
         sessionStorage.removeItem('userId');
+        sessionStorage.removeItem('token');
         window.location.reload();
     };
 
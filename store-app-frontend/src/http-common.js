@@ -1,9 +1,21 @@
 import axios from "axios";
+import { getSessionData } from "./util/session_util";
 
-export default axios.create({
+const http = axios.create({
     baseURL: "http://127.0.0.1:8080",
     headers: {
         "Content-type": "application/json",
         "Access-Control-Allow-Origin": "*"
     }
-});
\ No newline at end of file
+});
+
+// send the session token of the logged in user with every request
+http.interceptors.request.use(config => {
+    const token = getSessionData('token');
+    if (token) {
+        config.headers.Authorization = `Bearer ${token}`;
+    }
+    return config;
+});
+
+export default http;
@@ -34,6 +34,7 @@ function Login() {
                     const userId = response.data.id;
                     //Cookies.set('userId', userId, { expires: 7 });
                     setSessionData('userId', { userId });
+                    setSessionData('token', response.data.token);
                     // Redirect to the home page
                     window.location.href = "/";
                 }
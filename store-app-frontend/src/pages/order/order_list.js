@@ -17,7 +17,7 @@ const OrderList = () => {
         e.preventDefault();
         PaymentService.cancelPayment(userId, paymentId, orderId)
             .then(response => {
-                if (response.status == 200) {
+                if (response.status == 200 || response.status == 202) {
                     alert("successful")
                 }
             })
@@ -26,7 +26,7 @@ const PaymentInfo = () => {
         }
         try {
             const response = await paymentService.createPayment(userId, data.id, account)
-            if (response && response.status == 200) {
+            if (response && (response.status == 200 || response.status == 202)) {
                 alert("SuccessFul")
             }
         } catch (e) {
@@ -0,0 +1,85 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import com.comp5348.practice9.group5.store.util.GeocodeTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Cost of planning one reservation for each strategy, from 10 to 10,000 inventory rows of a product.
+ * The rows are spread over a quarter as many warehouses in the places of the geocode table, and the
+ * order takes a quarter of the stock so every strategy walks well past its first choice. Run with
+ * -Pjmh.includes=AllocationStrategy, add profilers = ['gc'] to the jmh block for allocations per plan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AllocationStrategyBenchmark {
+    private static final String[] PLACES = {"Sydney", "Parramatta", "Penrith", "Liverpool", "Newcastle", "Wollongong",
+            "Canberra", "Melbourne", "Geelong", "Brisbane", "Gold Coast", "Adelaide", "Perth", "Hobart", "Darwin", "Nowhere"};
+
+    @Param({"10", "100", "1000", "10000"})
+    public int rows;
+
+    @Param({"greedy", "fewest-warehouses", "nearest", "round-robin"})
+    public String strategy;
+
+    private AllocationStrategy allocationStrategy;
+    private List<InventoryRepository.Stock> stocks;
+    private int quantity;
+
+    @Setup
+    public void setUp() {
+        allocationStrategy = List.of(new GreedyAllocationStrategy(), new FewestWarehousesAllocationStrategy(),
+                        new NearestWarehouseAllocationStrategy(new GeocodeTable(), "sydney"), new RoundRobinAllocationStrategy())
+                .stream()
+                .filter(candidate -> candidate.getName().equals(strategy))
+                .findFirst()
+                .orElseThrow();
+
+        // the same random inventories for every strategy
+        Random random = new Random(42);
+        int warehouses = Math.max(rows / 4, 1);
+        stocks = new ArrayList<>(rows);
+        int total = 0;
+        for (int i = 0; i < rows; i++) {
+            long warehouseId = i % warehouses;
+            int stock = 1 + random.nextInt(100);
+            stocks.add(new StockRow(i + 1, stock, warehouseId, warehouseId + " " + PLACES[(int) (warehouseId % PLACES.length)] + " Road"));
+            total += stock;
+        }
+        quantity = Math.max(total / 4, 1);
+    }
+
+    @Benchmark
+    public Map<Long, Integer> allocate() {
+        return allocationStrategy.allocate(stocks, quantity);
+    }
+
+    private record StockRow(long id, int quantity, long warehouseId, String warehouseAddress) implements InventoryRepository.Stock {
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public int getQuantity() {
+            return quantity;
+        }
+
+        @Override
+        public long getWarehouseId() {
+            return warehouseId;
+        }
+
+        @Override
+        public String getWarehouseAddress() {
+            return warehouseAddress;
+        }
+    }
+}
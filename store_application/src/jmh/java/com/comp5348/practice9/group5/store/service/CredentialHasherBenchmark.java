@@ -0,0 +1,45 @@
+package com.comp5348.practice9.group5.store.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Login throughput against the PBKDF2 cost: eight request threads verify passwords through the
+ * bounded hasher pool, for each iteration count and pool size. Pick the highest iteration count
+ * whose logins per second still cover the peak login rate with the pool size the store runs with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class CredentialHasherBenchmark {
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"100000", "210000", "400000", "600000"})
+    public int iterations;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private CredentialHasher credentialHasher;
+    private String storedHash;
+
+    @Setup
+    public void setUp() {
+        credentialHasher = new CredentialHasher(iterations, threads, 1024, new SimpleMeterRegistry());
+        storedHash = credentialHasher.hash(PASSWORD).join();
+    }
+
+    @TearDown
+    public void tearDown() {
+        credentialHasher.shutdown();
+    }
+
+    // one login as a request thread sees it: queue for a hasher thread, derive, compare
+    @Benchmark
+    public boolean login() {
+        return credentialHasher.verify(PASSWORD, storedHash).join();
+    }
+}
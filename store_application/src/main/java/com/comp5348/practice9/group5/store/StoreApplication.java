@@ -3,8 +3,10 @@ package com.comp5348.practice9.group5.store;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(exclude = {SecurityAutoConfiguration.class}) // Disable Spring Security
+@EnableScheduling
 public class StoreApplication {
 
 	public static void main(String[] args) {
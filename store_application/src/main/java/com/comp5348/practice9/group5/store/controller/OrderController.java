@@ -1,6 +1,7 @@
 package com.comp5348.practice9.group5.store.controller;
 
 import com.comp5348.practice9.group5.store.dto.OrderDTO;
+import com.comp5348.practice9.group5.store.dto.PageDTO;
 import com.comp5348.practice9.group5.store.model.DeliveryStatus;
 import com.comp5348.practice9.group5.store.model.OrderStatus;
 import com.comp5348.practice9.group5.store.service.OrderService;
@@ -41,6 +42,24 @@ public class OrderController {
         return ResponseEntity.ok(result.getData());
     }
 
+    /*
+    Get a page of orders info of a user, pass the returned nextCursor to get the next page
+     */
+    @GetMapping("/page")
+    public ResponseEntity<?> getOrdersPage(@PathVariable Long userId,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "" + OrderService.DEFAULT_PAGE_SIZE) int size) {
+        // 1. Get a page of orders info of a user
+        ServiceResult<PageDTO<OrderDTO>> result = orderService.getOrdersPage(userId, cursor, size);
+
+        // 2. handle result
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+        }
+
+        return ResponseEntity.ok(result.getData());
+    }
+
     /*
     Get a specific order info
      */
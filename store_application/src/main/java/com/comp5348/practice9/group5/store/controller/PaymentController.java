@@ -1,6 +1,7 @@
 package com.comp5348.practice9.group5.store.controller;
 
 import com.comp5348.practice9.group5.store.dto.PaymentDTO;
+import com.comp5348.practice9.group5.store.service.OutboxRelay;
 import com.comp5348.practice9.group5.store.service.PaymentService;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +9,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.Map;
 
 @RestController
@@ -15,10 +17,12 @@ import java.util.Map;
 @RequestMapping("/store/users/{userId}/orders/{orderId}/payments")
 public class PaymentController {
     private final PaymentService paymentService;
+    private final OutboxRelay outboxRelay;
 
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, OutboxRelay outboxRelay) {
         this.paymentService = paymentService;
+        this.outboxRelay = outboxRelay;
     }
 
     /*
@@ -38,7 +42,8 @@ public class PaymentController {
     }
 
     /*
-    create a payment
+    create a payment: the transfer and the delivery are processed in the background,
+    poll the returned payment until it is no longer PENDING
      */
     @PostMapping
     public ResponseEntity<?> createPayment(@PathVariable Long userId, @PathVariable Long orderId, @RequestBody CreatePaymentRequest request) {
@@ -47,7 +52,7 @@ public class PaymentController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "fromAccountId and address are required"));
         }
 
-        // 2. Create a payment
+        // 2. Create a payment, the transfer is queued in the outbox
         ServiceResult<PaymentDTO> result = paymentService.createPayment(userId, orderId, request.fromAccountId, request.address);
 
         // 3. handle result
@@ -55,11 +60,16 @@ public class PaymentController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
         }
 
-        return ResponseEntity.ok(result.getData());
+        // 4. the payment is committed, send the transfer right away
+        outboxRelay.wakeUp();
+
+        URI location = URI.create("/store/users/" + userId + "/orders/" + orderId + "/payments/" + result.getData().getId());
+        return ResponseEntity.accepted().location(location).body(result.getData());
     }
 
     /*
-    cancel a payment
+    cancel a payment: the delivery cancellation and the refund are processed in the background,
+    poll the payment until it is REFUNDED
      */
     @PutMapping("/{paymentId}")
     public ResponseEntity<?> cancelPayment(@PathVariable Long paymentId) {
@@ -71,7 +81,10 @@ public class PaymentController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
         }
 
-        return ResponseEntity.ok(result.getData());
+        // 3. the cancellation is committed, send it right away
+        outboxRelay.wakeUp();
+
+        return ResponseEntity.accepted().body(result.getData());
     }
 
     public static class CreatePaymentRequest {
@@ -1,13 +1,16 @@
 package com.comp5348.practice9.group5.store.controller;
 
+import com.comp5348.practice9.group5.store.dto.PageDTO;
 import com.comp5348.practice9.group5.store.dto.ProductDTO;
 import com.comp5348.practice9.group5.store.service.ProductService;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import com.comp5348.practice9.group5.store.util.ValidationUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -27,7 +30,7 @@ public class ProductController {
     Get all products info
      */
     @GetMapping
-    public ResponseEntity<?> getAllProductsInfo(@PathVariable Long userId) {
+    public ResponseEntity<?> getAllProductsInfo(@PathVariable Long userId, WebRequest webRequest) {
         // 1. check validation
 
         // 1.1 check if userId valid
@@ -35,9 +38,74 @@ public class ProductController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid userId"));
         }
 
-        // 2. call service to get all products info
+        // 2. answer 304 if the client already has the current list
+        ServiceResult<String> etagResult = productService.getAllProductsETag(userId);
+        if (!etagResult.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", etagResult.getErrorMessage()));
+        }
+        if (webRequest.checkNotModified(etagResult.getData())) {
+            return null;
+        }
+
+        // 3. call service to get all products info
         ServiceResult<List<ProductDTO>> result = productService.getAllProductsInfo(userId);
 
+        // 4. handle result
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+        }
+
+        return ResponseEntity.ok().eTag(etagResult.getData()).body(result.getData());
+    }
+
+    /*
+    Get a page of products info, pass the returned nextCursor with the same filter and sort to get the next page
+     */
+    @GetMapping("/page")
+    public ResponseEntity<?> getProductsPage(@PathVariable Long userId,
+                                             @RequestParam(required = false) String namePrefix,
+                                             @RequestParam(required = false) Money minPrice,
+                                             @RequestParam(required = false) Money maxPrice,
+                                             @RequestParam(defaultValue = "id") String sort,
+                                             @RequestParam(defaultValue = "asc") String order,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "" + ProductService.DEFAULT_PAGE_SIZE) int size) {
+        // 1. check validation
+
+        // 1.1 check if userId valid
+        if(!ValidationUtils.isValidUserId(userId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid userId"));
+        }
+
+        // 2. call service to get a page of products info
+        ServiceResult<PageDTO<ProductDTO>> result = productService.getProductsPage(userId, namePrefix, minPrice, maxPrice, sort, order, cursor, size);
+
+        // 3. handle result
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+        }
+
+        return ResponseEntity.ok(result.getData());
+    }
+
+    /*
+    Search products by keywords in their name and description
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchProducts(@PathVariable Long userId,
+                                            @RequestParam String q,
+                                            @RequestParam(defaultValue = "0") int page,
+                                            @RequestParam(defaultValue = "" + ProductService.DEFAULT_PAGE_SIZE) int size) {
+        // 1. check validation
+
+        // 1.1 check if userId valid
+        if(!ValidationUtils.isValidUserId(userId)) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid userId"));
+        }
+
+        // 2. call service to search products
+        ServiceResult<List<ProductDTO>> result = productService.searchProducts(userId, q, page, size);
+
         // 3. handle result
         if (!result.isSuccess()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
@@ -93,7 +161,7 @@ public class ProductController {
         if(request.description == null || request.description.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid description"));
         }
-        if(request.price == null || request.price < 0) {
+        if(request.price == null || request.price.isNegative()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid price"));
         }
 
@@ -132,7 +200,7 @@ public class ProductController {
         if(request.description == null || request.description.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid description"));
         }
-        if(request.price == null || request.price < 0) {
+        if(request.price == null || request.price.isNegative()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid price"));
         }
 
@@ -179,6 +247,6 @@ public class ProductController {
     public static class ProductRequest {
         public String name;
         public String description;
-        public Double price;
+        public Money price;
     }
 }
@@ -10,6 +10,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @CrossOrigin(origins = "http://localhost:3000")
@@ -23,66 +26,70 @@ public class UserController {
     }
 
     @PostMapping("/register")
-    public ResponseEntity<?> registerUser(@RequestBody RegisterUserRequest request) {
+    public CompletableFuture<ResponseEntity<?>> registerUser(@RequestBody RegisterUserRequest request) {
 
         // 1. check validation
 
         // 1.1 check if first name is empty
         if (request.firstName == null || request.firstName.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "First name cannot be empty"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "First name cannot be empty")));
 
         }
         // 1.2 check if last name is empty
         if (request.lastName == null || request.lastName.isEmpty()) {
 
             System.out.println(request.lastName);
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Last name cannot be empty"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Last name cannot be empty")));
 
         }
         // 1.3 check if email is valid
         if (!ValidationUtils.isValidEmail(request.email)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid email format"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid email format")));
 
         }
         // 1.4 check if password is valid
         if (!ValidationUtils.isValidPassword(request.password)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid password format"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid password format")));
 
         }
 
         // 2. call service to register user
-        ServiceResult<UserDTO> result = userService.registerUser(request.firstName, request.lastName, request.email, request.password);
-
-        // 3. handle result
-        if (!result.isSuccess()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
-        }
-
-        return ResponseEntity.ok(result.getData());
+        return userService.registerUser(request.firstName, request.lastName, request.email, request.password)
+                .<ResponseEntity<?>>thenApply(result -> {
+                    // 3. handle result
+                    if (!result.isSuccess()) {
+                        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
+                    }
+
+                    return ResponseEntity.ok(result.getData());
+                })
+                .exceptionally(UserController::hasherBusy);
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> loginUser(@RequestBody LoginUserRequest request) {
+    public CompletableFuture<ResponseEntity<?>> loginUser(@RequestBody LoginUserRequest request) {
         // 1. check validation
 
         // 1.1 check if email is valid
         if (!ValidationUtils.isValidEmail(request.email)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid email format"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid email format")));
         }
         // 1.2 check if password is valid
         if (!ValidationUtils.isValidPassword(request.password)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid password format"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid password format")));
         }
 
         // 2. call service to login user
-        ServiceResult<UserDTO> result = userService.loginUser(request.email, request.password);
-
-        // 3. handle result
-        if (!result.isSuccess()) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", result.getErrorMessage()));
-        }
-
-        return ResponseEntity.ok(result.getData());
+        return userService.loginUser(request.email, request.password)
+                .<ResponseEntity<?>>thenApply(result -> {
+                    // 3. handle result
+                    if (!result.isSuccess()) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("message", result.getErrorMessage()));
+                    }
+
+                    return ResponseEntity.ok(result.getData());
+                })
+                .exceptionally(UserController::hasherBusy);
     }
 
     @GetMapping("/{userId}/info")
@@ -100,31 +107,48 @@ public class UserController {
     }
 
     @PutMapping("/{userId}/info/update")
-    public ResponseEntity<?> updateUserInfo(@PathVariable Long userId, @RequestBody UpdateUserInfoRequest request) {
+    public CompletableFuture<ResponseEntity<?>> updateUserInfo(@PathVariable Long userId, @RequestBody UpdateUserInfoRequest request) {
         // 1. check validation
 
         // 1.1 check if first name is empty
         if (request.firstName == null || request.firstName.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "First name cannot be empty"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "First name cannot be empty")));
         }
         // 1.2 check if last name is empty
         if (request.lastName == null || request.lastName.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Last name cannot be empty"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Last name cannot be empty")));
         }
         // 1.3 check if password is valid
         if (!ValidationUtils.isValidPassword(request.password)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid password format"));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid password format")));
         }
 
         // 2. call service to update user info
-        ServiceResult<UserDTO> result = userService.updateUser(userId, request.firstName, request.lastName, request.password);
+        return userService.updateUser(userId, request.firstName, request.lastName, request.password)
+                .<ResponseEntity<?>>thenApply(result -> {
+                    // 3. handle result
+                    if (!result.isSuccess()) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", result.getErrorMessage()));
+                    }
+
+                    return ResponseEntity.ok(result.getData());
+                })
+                .exceptionally(UserController::hasherBusy);
+    }
 
-        // 3. handle result
-        if (!result.isSuccess()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", result.getErrorMessage()));
+    /*
+    the password hasher queue is full: ask the client to come back later instead of holding a request thread
+     */
+    private static ResponseEntity<?> hasherBusy(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1")
+                    .body(Map.of("message", "Too many requests, please try again later"));
         }
-
-        return ResponseEntity.ok(result.getData());
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        throw new CompletionException(cause);
     }
 
     public static class RegisterUserRequest {
@@ -8,6 +8,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Map;
@@ -26,7 +27,7 @@ public class WarehouseController {
     Get all warehouses info
      */
     @GetMapping
-    public ResponseEntity<?> getAllWarehousesInfo(@PathVariable Long userId) {
+    public ResponseEntity<?> getAllWarehousesInfo(@PathVariable Long userId, WebRequest webRequest) {
         // 1.check validation
 
         // 1.1 check if user valid
@@ -34,15 +35,24 @@ public class WarehouseController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", "Invalid user id"));
         }
 
-        // 2. Get all warehouses info
+        // 2. answer 304 if the client already has the current list
+        ServiceResult<String> etagResult = warehouseService.getAllWarehousesETag(userId);
+        if (!etagResult.isSuccess()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", etagResult.getErrorMessage()));
+        }
+        if (webRequest.checkNotModified(etagResult.getData())) {
+            return null;
+        }
+
+        // 3. Get all warehouses info
         ServiceResult<List<WarehouseDTO>> result = warehouseService.getAllWarehousesInfo(userId);
 
-        // 3. handle result
+        // 4. handle result
         if (!result.isSuccess()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("message", result.getErrorMessage()));
         }
 
-        return ResponseEntity.ok(result.getData());
+        return ResponseEntity.ok().eTag(etagResult.getData()).body(result.getData());
     }
 
     /*
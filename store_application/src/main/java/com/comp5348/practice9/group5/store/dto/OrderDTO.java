@@ -1,6 +1,7 @@
 package com.comp5348.practice9.group5.store.dto;
 
 import com.comp5348.practice9.group5.store.model.*;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
@@ -19,7 +20,7 @@ public class OrderDTO {
     private long id;
     private Date timestamp;
     private int quantity;
-    private double amount;
+    private Money amount;
     private OrderStatus orderStatus;
     private DeliveryStatus deliveryStatus;
     private ProductDTO product;
@@ -0,0 +1,21 @@
+package com.comp5348.practice9.group5.store.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+/*
+ * One page of a keyset-paginated listing, nextCursor is null on the last page.
+ */
+@Getter
+@Setter
+public class PageDTO<T> {
+    private List<T> items;
+    private String nextCursor;
+
+    public PageDTO(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+}
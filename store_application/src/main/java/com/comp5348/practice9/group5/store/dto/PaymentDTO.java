@@ -2,6 +2,7 @@ package com.comp5348.practice9.group5.store.dto;
 
 import com.comp5348.practice9.group5.store.model.Payment;
 import com.comp5348.practice9.group5.store.model.PaymentStatus;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
@@ -11,7 +12,7 @@ import lombok.Setter;
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class PaymentDTO {
     private long id;
-    private double amount;
+    private Money amount;
     private PaymentStatus paymentStatus;
     private long transactionRecordId;
     private long fromAccountId;
@@ -3,6 +3,7 @@ package com.comp5348.practice9.group5.store.dto;
 import com.comp5348.practice9.group5.store.model.Inventory;
 import com.comp5348.practice9.group5.store.model.Order;
 import com.comp5348.practice9.group5.store.model.Product;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
@@ -17,7 +18,7 @@ public class ProductDTO {
     private long id;
     private String name;
     private String description;
-    private double price;
+    private Money price;
     private Set<OrderDTO> orders = new HashSet<>();
     private Set<InventoryDTO> inventories = new HashSet<>();
 
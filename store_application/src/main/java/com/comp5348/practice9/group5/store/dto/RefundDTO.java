@@ -1,6 +1,7 @@
 package com.comp5348.practice9.group5.store.dto;
 
 import com.comp5348.practice9.group5.store.model.Refund;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
@@ -10,7 +11,7 @@ import lombok.Setter;
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class RefundDTO {
     private long id;
-    private double amount;
+    private Money amount;
     private long transactionRecordId;
     private OrderDTO order;
 
@@ -20,15 +20,15 @@ public class UserDTO {
     private String firstName;
     private String lastName;
     private String email;
-    private String passwordHash;
     private Set<OrderDTO> orders = new HashSet<>();
+    // session token, only set in the login response
+    private String token;
 
     public UserDTO(User userEntity, boolean includeRelatedEntities) {
         this.id = userEntity.getId();
         this.firstName = userEntity.getFirstName();
         this.lastName = userEntity.getLastName();
         this.email = userEntity.getEmail();
-        this.passwordHash = userEntity.getPasswordHash();
 
         if (includeRelatedEntities) {
             for (Order order : userEntity.getOrders()) {
@@ -1,5 +1,6 @@
 package com.comp5348.practice9.group5.store.model;
 
+import com.comp5348.practice9.group5.store.util.Money;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Min;
 import lombok.Getter;
@@ -14,7 +15,8 @@ import java.util.Date;
 @Setter
 @NoArgsConstructor
 @Entity
-@Table(name = "orders") // avoid using database keywords
+@Table(name = "orders", // avoid using database keywords
+        indexes = @Index(name = "idx_orders_user_id_id", columnList = "user_id, id"))
 public class Order {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY) // use IDENTITY to auto-increment starting from 1
@@ -34,9 +36,9 @@ public class Order {
     @Min(1)
     private int quantity;
 
-    // amount of the order
+    // amount of the order, in cents
     @Column(nullable = false)
-    private double amount;
+    private Money amount;
 
     // status of the order
     @Column(nullable = false)
@@ -69,7 +71,7 @@ public class Order {
     public Order(Date timestamp, int quantity, User user, Product product) {
         this.timestamp = timestamp;
         this.quantity = quantity;
-        this.amount = product.getPrice() * quantity;
+        this.amount = product.getPrice().times(quantity);
         this.orderStatus = OrderStatus.PENDING;
         this.deliveryStatus = DeliveryStatus.EMPTY;
         this.user = user;
@@ -0,0 +1,79 @@
+package com.comp5348.practice9.group5.store.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+/*
+ * A remote call to the bank or the delivery service, written in the same transaction as the
+ * payment or order change it belongs to and sent later by the outbox relay.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(indexes = @Index(name = "idx_outbox_message_status_next_attempt_at", columnList = "status, next_attempt_at"))
+public class OutboxMessage {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY) // use IDENTITY to auto-increment starting from 1
+    private long id;
+
+    // version for optimistic locking
+    @Version
+    private int version;
+
+    @Column(nullable = false)
+    private OutboxMessageType type;
+
+    // the payment this call belongs to
+    @Column(nullable = false)
+    private long paymentId;
+
+    @Column(nullable = false)
+    private String url;
+
+    @Column(nullable = false)
+    private String httpMethod;
+
+    // JSON request body
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    // sent with every attempt so the receiver can drop duplicates
+    @Column(nullable = false, unique = true)
+    private String idempotencyKey;
+
+    @Column(name = "status", nullable = false)
+    private OutboxStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    // the relay picks the message up from this time on
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "next_attempt_at", nullable = false)
+    private Date nextAttemptAt;
+
+    private String lastError;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date createdAt;
+
+    // constructor
+    public OutboxMessage(OutboxMessageType type, long paymentId, String url, String httpMethod, String payload, String idempotencyKey) {
+        this.type = type;
+        this.paymentId = paymentId;
+        this.url = url;
+        this.httpMethod = httpMethod;
+        this.payload = payload;
+        this.idempotencyKey = idempotencyKey;
+        this.status = OutboxStatus.PENDING;
+        this.attempts = 0;
+        this.createdAt = new Date();
+        this.nextAttemptAt = this.createdAt;
+    }
+}
@@ -0,0 +1,9 @@
+package com.comp5348.practice9.group5.store.model;
+
+public enum OutboxMessageType {
+    TRANSFER,        // charge the customer for a payment
+    DELIVERY,        // create the delivery of a paid order
+    CANCEL_DELIVERY, // cancel the delivery of a paid order
+    REFUND,          // refund a cancelled order
+    CHECKOUT_REFUND  // give the money back when the delivery of a checkout could not be created
+}
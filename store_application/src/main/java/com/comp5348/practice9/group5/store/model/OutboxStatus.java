@@ -0,0 +1,7 @@
+package com.comp5348.practice9.group5.store.model;
+
+public enum OutboxStatus {
+    PENDING,
+    SENT,
+    FAILED
+}
@@ -1,5 +1,6 @@
 package com.comp5348.practice9.group5.store.model;
 
+import com.comp5348.practice9.group5.store.util.Money;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -19,7 +20,7 @@ public class Payment {
     private int version;
 
     @Column(nullable = false)
-    private double amount;
+    private Money amount;
 
     // payment status
     @Column(nullable = false)
@@ -38,12 +39,16 @@ public class Payment {
     @Column(nullable = false)
     private long fromAccountId;
 
+    // delivery address given at checkout, used once the transfer went through
+    private String address;
+
     // constructor
-    public Payment(double amount, PaymentStatus paymentStatus, Order order, long transactionRecordId, long fromAccountId) {
+    public Payment(Money amount, PaymentStatus paymentStatus, Order order, long transactionRecordId, long fromAccountId, String address) {
         this.amount = amount;
         this.paymentStatus = paymentStatus;
         this.order = order;
         this.transactionRecordId = transactionRecordId;
         this.fromAccountId = fromAccountId;
+        this.address = address;
     }
 }
\ No newline at end of file
@@ -2,5 +2,8 @@ package com.comp5348.practice9.group5.store.model;
 
 public enum PaymentStatus {
     PAID,
-    REFUNDED
+    REFUNDED,
+    PENDING,   // bank transfer in flight
+    FAILED,    // transfer or delivery failed, the order can be paid again
+    UNRESOLVED // the bank never answered, the transfer is re-sent under the same key until it does
 }
@@ -1,5 +1,6 @@
 package com.comp5348.practice9.group5.store.model;
 
+import com.comp5348.practice9.group5.store.util.Money;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -12,6 +13,10 @@ import java.util.Collection;
 @Setter
 @NoArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_product_name_id", columnList = "name, id"),
+        @Index(name = "idx_product_price_id", columnList = "price, id")
+})
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY) // use IDENTITY to auto-increment starting from 1
@@ -28,7 +33,7 @@ public class Product {
     private String description;
 
     @Column(nullable = false)
-    private double price;
+    private Money price;
 
     // one product can have multiple orders
     @OneToMany(mappedBy = "product")
@@ -39,7 +44,7 @@ public class Product {
     private Collection<Inventory> inventories = new ArrayList<>();
 
     // constructor
-    public Product(String name, String description, double price) {
+    public Product(String name, String description, Money price) {
         this.name = name;
         this.description = description;
         this.price = price;
@@ -0,0 +1,28 @@
+package com.comp5348.practice9.group5.store.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/*
+ * Available stock of a product summed over all its inventories, kept up to date by every inventory write.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+public class ProductStock {
+    // one row per product
+    @Id
+    private long productId;
+
+    @Column(nullable = false)
+    private long quantity;
+
+    // constructor
+    public ProductStock(long productId, long quantity) {
+        this.productId = productId;
+        this.quantity = quantity;
+    }
+}
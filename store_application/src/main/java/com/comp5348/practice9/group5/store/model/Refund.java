@@ -1,5 +1,6 @@
 package com.comp5348.practice9.group5.store.model;
 
+import com.comp5348.practice9.group5.store.util.Money;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -17,7 +18,7 @@ public class Refund {
     private int version;
 
     @Column(nullable = false)
-    private double amount;
+    private Money amount;
 
     // one refund corresponds to one order
     @OneToOne
@@ -30,7 +31,7 @@ public class Refund {
     private long transactionRecordId;
 
     // constructor
-    public Refund(double amount, Order order, long transactionRecordId) {
+    public Refund(Money amount, Order order, long transactionRecordId) {
         this.amount = amount;
         this.order = order;
         this.transactionRecordId = transactionRecordId;
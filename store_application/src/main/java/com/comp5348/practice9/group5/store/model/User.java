@@ -15,7 +15,9 @@ import java.util.Collection;
 @Setter
 @NoArgsConstructor
 @Entity
-@Table(name = "users") // avoid using database keywords
+@Table(name = "users", // avoid using database keywords
+        // one user per email, concurrent registrations of the same email cannot both be saved
+        indexes = @Index(name = "uk_users_email", columnList = "email", unique = true))
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY) // use IDENTITY to auto-increment starting from 1
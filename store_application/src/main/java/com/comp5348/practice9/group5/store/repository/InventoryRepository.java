@@ -2,6 +2,9 @@ package com.comp5348.practice9.group5.store.repository;
 
 import com.comp5348.practice9.group5.store.model.Inventory;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -13,6 +16,38 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     // Find all inventories by product id
     List<Inventory> findByProductId(Long productId);
 
+    // Find the current stock of every inventory of a product, read from the database rather than the persistence context
+    @Query("SELECT i.id AS id, i.quantity AS quantity, w.id AS warehouseId, w.address AS warehouseAddress " +
+            "FROM Inventory i JOIN i.warehouse w WHERE i.product.id = :productId")
+    List<Stock> findStockByProductId(@Param("productId") Long productId);
+
+    // Take stock from an inventory if it still has enough, returns 0 if it does not
+    // the version is bumped so stale copies of the inventory cannot overwrite the new quantity
+    @Modifying
+    @Query("UPDATE Inventory i SET i.quantity = i.quantity - :quantity, i.version = i.version + 1 " +
+            "WHERE i.id = :id AND i.quantity >= :quantity")
+    int decrementQuantity(@Param("id") long id, @Param("quantity") int quantity);
+
+    // Give stock back to an inventory
+    @Modifying
+    @Query("UPDATE Inventory i SET i.quantity = i.quantity + :quantity, i.version = i.version + 1 WHERE i.id = :id")
+    int incrementQuantity(@Param("id") long id, @Param("quantity") int quantity);
+
+    // summarize the ids and versions of all inventories, the stock updates above bump the version too
+    @Query("SELECT COUNT(i) AS count, COALESCE(SUM(i.id), 0) AS idSum, COALESCE(SUM(i.version), 0) AS versionSum, " +
+            "COALESCE(MAX(i.id), 0) AS maxId FROM Inventory i")
+    VersionSummary summarizeVersions();
+
     // delete all inventories by warehouse id
     void deleteByWarehouseId(Long warehouseId);
-}
\ No newline at end of file
+
+    interface Stock {
+        long getId();
+
+        int getQuantity();
+
+        long getWarehouseId();
+
+        String getWarehouseAddress();
+    }
+}
@@ -1,8 +1,13 @@
 package com.comp5348.practice9.group5.store.repository;
 
 import com.comp5348.practice9.group5.store.model.Order;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,6 +15,20 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     // find all orders by user id
     List<Order> findAllByUser_Id(Long userId);
 
+    // find all orders by user id, together with everything an OrderDTO with related entities reads
+    @EntityGraph(attributePaths = {"user", "product", "payment",
+            "inventoryTransactions.inventory.product", "inventoryTransactions.inventory.warehouse"})
+    List<Order> findAllWithDetailsByUser_Id(Long userId);
+
+    // find the ids of a page of orders of a user, newest first, starting below the given id
+    @Query("SELECT o.id FROM Order o WHERE o.user.id = :userId AND o.id < :beforeId ORDER BY o.id DESC")
+    List<Long> findPageIdsByUser(@Param("userId") Long userId, @Param("beforeId") long beforeId, Limit limit);
+
+    // find orders by ids, newest first, together with everything an OrderDTO with related entities reads
+    @EntityGraph(attributePaths = {"user", "product", "payment",
+            "inventoryTransactions.inventory.product", "inventoryTransactions.inventory.warehouse"})
+    List<Order> findAllWithDetailsByIdInOrderByIdDesc(Collection<Long> ids);
+
     // find all orders by product id
     List<Order> findAllByProduct_Id(Long productId);
 }
@@ -0,0 +1,21 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.model.OutboxMessage;
+import com.comp5348.practice9.group5.store.model.OutboxMessageType;
+import com.comp5348.practice9.group5.store.model.OutboxStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+    // claim a page of due messages, rows locked by another relay are skipped
+    @Query(value = "SELECT * FROM outbox_message WHERE status = :status AND next_attempt_at <= :now " +
+            "ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxMessage> claimDueMessages(@Param("status") int status, @Param("now") Date now, @Param("limit") int limit);
+
+    // check if a payment already has a message of this type in the given status
+    boolean existsByPaymentIdAndTypeAndStatus(long paymentId, OutboxMessageType type, OutboxStatus status);
+}
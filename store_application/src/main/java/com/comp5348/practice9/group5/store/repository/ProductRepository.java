@@ -2,6 +2,20 @@ package com.comp5348.practice9.group5.store.repository;
 
 import com.comp5348.practice9.group5.store.model.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
-}
\ No newline at end of file
+import java.util.List;
+
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductRepositoryCustom {
+    // summarize the ids and versions of all products, used as the ETag of the product list
+    @Query("SELECT COUNT(p) AS count, COALESCE(SUM(p.id), 0) AS idSum, COALESCE(SUM(p.version), 0) AS versionSum, " +
+            "COALESCE(MAX(p.id), 0) AS maxId FROM Product p")
+    VersionSummary summarizeVersions();
+
+    // ranked keyword search over name and description, see ProductSearchIndex for the search_vector column
+    @Query(value = "SELECT p.* FROM product p, websearch_to_tsquery('english', :query) q " +
+            "WHERE p.search_vector @@ q ORDER BY ts_rank_cd(p.search_vector, q) DESC, p.id " +
+            "LIMIT :limit OFFSET :offset", nativeQuery = true)
+    List<Product> search(@Param("query") String query, @Param("limit") int limit, @Param("offset") int offset);
+}
@@ -0,0 +1,31 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.model.Product;
+import com.comp5348.practice9.group5.store.util.Money;
+
+import java.util.List;
+
+public interface ProductRepositoryCustom {
+    // find a page of products matching the filter, ordered by the sort key then by id, starting after the cursor
+    List<Product> findPage(ProductPageQuery query, int limit);
+
+    enum SortKey {
+        ID,
+        NAME,
+        PRICE
+    }
+
+    /*
+    Filter, order and cursor of a product page
+     */
+    class ProductPageQuery {
+        public String namePrefix;
+        public Money minPrice;
+        public Money maxPrice;
+        public SortKey sortKey = SortKey.ID;
+        public boolean descending;
+        // sort value and id of the last product of the previous page, both null on the first page
+        public Object afterValue;
+        public Long afterId;
+    }
+}
@@ -0,0 +1,77 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.model.Product;
+import com.comp5348.practice9.group5.store.util.Money;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Keyset-paginated product listing: the filter and the "after the cursor" condition are plain
+ * comparisons on (sort key, id), so the (name, id) and (price, id) indexes serve every page.
+ */
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Product> findPage(ProductPageQuery query, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Product> criteriaQuery = cb.createQuery(Product.class);
+        Root<Product> product = criteriaQuery.from(Product.class);
+        Path<Long> id = product.get("id");
+        Path<String> name = product.get("name");
+        Path<Money> price = product.get("price");
+
+        // 1. filter
+        List<Predicate> predicates = new ArrayList<>();
+        if (query.namePrefix != null && !query.namePrefix.isEmpty()) {
+            predicates.add(cb.like(name, escapeLike(query.namePrefix) + "%", '\\'));
+        }
+        if (query.minPrice != null) {
+            predicates.add(cb.greaterThanOrEqualTo(price, query.minPrice));
+        }
+        if (query.maxPrice != null) {
+            predicates.add(cb.lessThanOrEqualTo(price, query.maxPrice));
+        }
+
+        // 2. start after the cursor and order by the sort key, id breaks ties
+        Order idOrder = query.descending ? cb.desc(id) : cb.asc(id);
+        switch (query.sortKey) {
+            case ID -> {
+                if (query.afterId != null) {
+                    predicates.add(query.descending ? cb.lessThan(id, query.afterId) : cb.greaterThan(id, query.afterId));
+                }
+                criteriaQuery.orderBy(idOrder);
+            }
+            case NAME -> orderAfter(cb, criteriaQuery, predicates, name, (String) query.afterValue, id, query);
+            case PRICE -> orderAfter(cb, criteriaQuery, predicates, price, (Money) query.afterValue, id, query);
+        }
+
+        criteriaQuery.where(predicates.toArray(new Predicate[0]));
+        return entityManager.createQuery(criteriaQuery).setMaxResults(limit).getResultList();
+    }
+
+    private static <T extends Comparable<? super T>> void orderAfter(CriteriaBuilder cb, CriteriaQuery<Product> criteriaQuery,
+                                                                     List<Predicate> predicates, Path<T> sortPath, T afterValue,
+                                                                     Path<Long> id, ProductPageQuery query) {
+        // (sort, id) > (afterValue, afterId), or < when descending
+        if (afterValue != null && query.afterId != null) {
+            Predicate beyondValue = query.descending ? cb.lessThan(sortPath, afterValue) : cb.greaterThan(sortPath, afterValue);
+            Predicate beyondId = query.descending ? cb.lessThan(id, query.afterId) : cb.greaterThan(id, query.afterId);
+            predicates.add(cb.or(beyondValue, cb.and(cb.equal(sortPath, afterValue), beyondId)));
+        }
+        if (query.descending) {
+            criteriaQuery.orderBy(cb.desc(sortPath), cb.desc(id));
+        } else {
+            criteriaQuery.orderBy(cb.asc(sortPath), cb.asc(id));
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
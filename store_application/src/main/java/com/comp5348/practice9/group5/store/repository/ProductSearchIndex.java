@@ -0,0 +1,35 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/*
+ * Full-text search schema of the product table: a generated tsvector column over name (weight A)
+ * and description (weight B) with a GIN index. JPA cannot declare either, so they are added once
+ * the entity schema exists; all statements are idempotent.
+ *
+ * The name prefix filter needs its own index too: under a collation other than "C" the (name, id)
+ * index keeps the sort order of the listing but cannot serve LIKE 'prefix%', text_pattern_ops can.
+ */
+@Component
+public class ProductSearchIndex {
+    private final JdbcTemplate jdbcTemplate;
+
+    // the EntityManagerFactory is injected so the product table is created before this runs
+    @Autowired
+    public ProductSearchIndex(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void createIfMissing() {
+        jdbcTemplate.execute("ALTER TABLE product ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (" +
+                "setweight(to_tsvector('english', coalesce(name, '')), 'A') || " +
+                "setweight(to_tsvector('english', coalesce(description, '')), 'B')) STORED");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_product_search_vector ON product USING GIN (search_vector)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_product_name_pattern ON product (name text_pattern_ops)");
+    }
+}
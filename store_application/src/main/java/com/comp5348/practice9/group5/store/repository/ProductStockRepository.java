@@ -0,0 +1,28 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.model.ProductStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface ProductStockRepository extends JpaRepository<ProductStock, Long> {
+    // find the available stock of a product
+    @Query("SELECT s.quantity FROM ProductStock s WHERE s.productId = :productId")
+    Optional<Long> findQuantityByProductId(@Param("productId") long productId);
+
+    // add a delta to the available stock of a product, creating its row if needed
+    @Modifying
+    @Query(value = "INSERT INTO product_stock (product_id, quantity) VALUES (:productId, :delta) " +
+            "ON CONFLICT (product_id) DO UPDATE SET quantity = product_stock.quantity + :delta", nativeQuery = true)
+    int addQuantity(@Param("productId") long productId, @Param("delta") long delta);
+
+    // recompute the available stock of every product from the inventories
+    @Modifying
+    @Query(value = "INSERT INTO product_stock (product_id, quantity) " +
+            "SELECT p.id, COALESCE(SUM(i.quantity), 0) FROM product p LEFT JOIN inventory i ON i.product_id = p.id GROUP BY p.id " +
+            "ON CONFLICT (product_id) DO UPDATE SET quantity = EXCLUDED.quantity", nativeQuery = true)
+    int rebuild();
+}
@@ -1,7 +1,11 @@
 package com.comp5348.practice9.group5.store.repository;
 
 import com.comp5348.practice9.group5.store.model.User;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Optional;
 
@@ -12,4 +16,9 @@ public interface UserRepository extends JpaRepository<User, Long> {
     // find user by email
     Optional<User> findByEmail(String email);
 
-}
\ No newline at end of file
+    // replace a password hash only if it was not changed in the meantime
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.passwordHash = :newHash, u.version = u.version + 1 WHERE u.id = :id AND u.passwordHash = :oldHash")
+    int replacePasswordHash(@Param("id") long id, @Param("oldHash") String oldHash, @Param("newHash") String newHash);
+}
@@ -0,0 +1,14 @@
+package com.comp5348.practice9.group5.store.repository;
+
+/*
+ * Aggregate over the id and @Version columns of a table, changes whenever a row is added, updated or removed.
+ */
+public interface VersionSummary {
+    long getCount();
+
+    long getIdSum();
+
+    long getVersionSum();
+
+    long getMaxId();
+}
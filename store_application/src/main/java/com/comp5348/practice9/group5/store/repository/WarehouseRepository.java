@@ -2,6 +2,11 @@ package com.comp5348.practice9.group5.store.repository;
 
 import com.comp5348.practice9.group5.store.model.Warehouse;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface WarehouseRepository extends JpaRepository<Warehouse, Long> {
+    // summarize the ids and versions of all warehouses, used as the ETag of the warehouse list
+    @Query("SELECT COUNT(w) AS count, COALESCE(SUM(w.id), 0) AS idSum, COALESCE(SUM(w.version), 0) AS versionSum, " +
+            "COALESCE(MAX(w.id), 0) AS maxId FROM Warehouse w")
+    VersionSummary summarizeVersions();
 }
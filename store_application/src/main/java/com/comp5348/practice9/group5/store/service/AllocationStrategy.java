@@ -0,0 +1,35 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Decides which inventories the stock of an order is taken from, chosen with store.allocation.strategy.
+ */
+public interface AllocationStrategy {
+    // the value of store.allocation.strategy that selects this strategy
+    String getName();
+
+    // how much to take from each inventory, keyed by inventory id; the stocks together cover the quantity
+    Map<Long, Integer> allocate(List<InventoryRepository.Stock> stocks, int quantity);
+
+    // take as much as possible from each inventory in the given order until the quantity is covered
+    static Map<Long, Integer> takeInOrder(List<InventoryRepository.Stock> stocks, int quantity) {
+        Map<Long, Integer> plan = new TreeMap<>();
+        int remainingQuantity = quantity;
+        for (InventoryRepository.Stock stock : stocks) {
+            if (remainingQuantity == 0) {
+                break;
+            }
+            int take = Math.min(stock.getQuantity(), remainingQuantity);
+            if (take > 0) {
+                plan.put(stock.getId(), take);
+                remainingQuantity -= take;
+            }
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,119 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.util.AuthContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/*
+ * Issues and verifies the stateless session tokens of the store.
+ *
+ * A token is "payload.signature", both URL-safe Base64: the payload is "userId:role:expiresAt" and
+ * the signature its HMAC-SHA256 under store.auth.secret. Verifying it needs no database access.
+ * Without a configured secret a random one is generated, so tokens do not survive a restart and
+ * are not accepted by other instances.
+ */
+@Service
+public class AuthTokenService {
+    private static final Logger logger = LoggerFactory.getLogger(AuthTokenService.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    // the admin account is the first registered user
+    public static final long ADMIN_USER_ID = 1;
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    @Autowired
+    public AuthTokenService(@Value("${store.auth.secret:}") String secret,
+                            @Value("${store.auth.ttl-seconds:86400}") long ttlSeconds) {
+        byte[] secretBytes;
+        if (secret.isEmpty()) {
+            logger.warn("store.auth.secret is not set, using a random secret for this instance");
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+        } else {
+            secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(secretBytes, ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Token signing is unavailable", e);
+            }
+        });
+    }
+
+    /*
+    issue a token for a user that just logged in
+     */
+    public String issue(long userId) {
+        // 1. build the payload
+        String role = userId == ADMIN_USER_ID ? "admin" : "user";
+        long expiresAt = Instant.now().getEpochSecond() + ttlSeconds;
+        String payload = userId + ":" + role + ":" + expiresAt;
+
+        // 2. sign it
+        return encode(payload.getBytes(StandardCharsets.UTF_8)) + "." + encode(sign(payload));
+    }
+
+    /*
+    verify a token, empty when it is malformed, forged or expired
+     */
+    public Optional<AuthContext.Principal> verify(String token) {
+        // 1. split and check the signature
+        int dot = token.indexOf('.');
+        if (dot < 0) {
+            return Optional.empty();
+        }
+        String payload;
+        byte[] signature;
+        try {
+            payload = new String(Base64.getUrlDecoder().decode(token.substring(0, dot)), StandardCharsets.UTF_8);
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return Optional.empty();
+        }
+
+        // 2. read the payload and check the expiry
+        String[] parts = payload.split(":");
+        if (parts.length != 3) {
+            return Optional.empty();
+        }
+        try {
+            if (Long.parseLong(parts[2]) < Instant.now().getEpochSecond()) {
+                return Optional.empty();
+            }
+            return Optional.of(new AuthContext.Principal(Long.parseLong(parts[0]), "admin".equals(parts[1])));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    private byte[] sign(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,138 @@
+package com.comp5348.practice9.group5.store.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Hashes and verifies user passwords with PBKDF2-HMAC-SHA256.
+ *
+ * The key derivation is deliberately slow, so it runs on its own bounded pool instead of the request
+ * threads: a login storm fills the queue and is then rejected, while catalog requests keep their
+ * threads. Hashes are stored as "pbkdf2-sha256$iterations$salt$hash", so the cost can be raised
+ * later and old hashes upgraded on the next login (see needsRehash).
+ */
+@Component
+public class CredentialHasher {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadPoolExecutor executor;
+    private final Timer hashTimer;
+
+    @Autowired
+    public CredentialHasher(@Value("${store.credentials.iterations:210000}") int iterations,
+                            @Value("${store.credentials.threads:2}") int threads,
+                            @Value("${store.credentials.queue-capacity:256}") int queueCapacity,
+                            MeterRegistry meterRegistry) {
+        this.iterations = iterations;
+
+        // 1. bounded pool: when the queue is full new requests are rejected instead of piling up
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "credential-hasher-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+
+        // 2. metrics: the hash time is what the iteration count is tuned against
+        Gauge.builder("store.credentials.queue", executor, pool -> pool.getQueue().size())
+                .description("Password hashes waiting for a hasher thread")
+                .register(meterRegistry);
+        this.hashTimer = Timer.builder("store.credentials.hash")
+                .description("Time to derive one password hash")
+                .register(meterRegistry);
+    }
+
+    /*
+    hash a new password, fails with RejectedExecutionException when the hasher is saturated
+     */
+    public CompletableFuture<String> hash(String password) {
+        return CompletableFuture.supplyAsync(() -> {
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            byte[] hash = derive(password, salt, iterations);
+            return PREFIX + "$" + iterations + "$" + encode(salt) + "$" + encode(hash);
+        }, executor);
+    }
+
+    /*
+    check a password against a stored hash, fails with RejectedExecutionException when the hasher is saturated
+     */
+    public CompletableFuture<Boolean> verify(String password, String storedHash) {
+        return CompletableFuture.supplyAsync(() -> matches(password, storedHash), executor);
+    }
+
+    /*
+    whether a stored hash is a legacy one or was made with fewer iterations than configured now
+     */
+    public boolean needsRehash(String storedHash) {
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return true;
+        }
+        return Integer.parseInt(parts[1]) < iterations;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private boolean matches(String password, String storedHash) {
+        // 1. legacy hashes from before PBKDF2 were String.hashCode
+        String[] parts = storedHash.split("\\$");
+        if (parts.length != 4 || !PREFIX.equals(parts[0])) {
+            return constantTimeEquals(String.valueOf(password.hashCode()).getBytes(StandardCharsets.UTF_8),
+                    storedHash.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // 2. derive with the stored parameters and compare
+        byte[] salt = Base64.getDecoder().decode(parts[2]);
+        byte[] expected = Base64.getDecoder().decode(parts[3]);
+        return constantTimeEquals(derive(password, salt, Integer.parseInt(parts[1])), expected);
+    }
+
+    private byte[] derive(String password, byte[] salt, int iterationCount) {
+        long start = System.nanoTime();
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterationCount, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Password hashing is unavailable", e);
+        } finally {
+            spec.clearPassword();
+            hashTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static boolean constantTimeEquals(byte[] a, byte[] b) {
+        return MessageDigest.isEqual(a, b);
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,37 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Fullest warehouses first: for a single product this ships from the smallest possible number of warehouses.
+ */
+@Component
+public class FewestWarehousesAllocationStrategy implements AllocationStrategy {
+    @Override
+    public String getName() {
+        return "fewest-warehouses";
+    }
+
+    @Override
+    public Map<Long, Integer> allocate(List<InventoryRepository.Stock> stocks, int quantity) {
+        // 1. total stock per warehouse
+        Map<Long, Long> warehouseTotals = new HashMap<>();
+        for (InventoryRepository.Stock stock : stocks) {
+            warehouseTotals.merge(stock.getWarehouseId(), (long) stock.getQuantity(), Long::sum);
+        }
+
+        // 2. fullest warehouse first, fullest inventory first within a warehouse
+        List<InventoryRepository.Stock> sorted = new ArrayList<>(stocks);
+        sorted.sort(Comparator.<InventoryRepository.Stock>comparingLong(stock -> warehouseTotals.get(stock.getWarehouseId())).reversed()
+                .thenComparingLong(InventoryRepository.Stock::getWarehouseId)
+                .thenComparing(Comparator.comparingInt(InventoryRepository.Stock::getQuantity).reversed()));
+        return AllocationStrategy.takeInOrder(sorted, quantity);
+    }
+}
@@ -0,0 +1,27 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Fullest inventories first, whatever warehouse they are in.
+ */
+@Component
+public class GreedyAllocationStrategy implements AllocationStrategy {
+    @Override
+    public String getName() {
+        return "greedy";
+    }
+
+    @Override
+    public Map<Long, Integer> allocate(List<InventoryRepository.Stock> stocks, int quantity) {
+        List<InventoryRepository.Stock> sorted = new ArrayList<>(stocks);
+        sorted.sort(Comparator.comparingInt(InventoryRepository.Stock::getQuantity).reversed());
+        return AllocationStrategy.takeInOrder(sorted, quantity);
+    }
+}
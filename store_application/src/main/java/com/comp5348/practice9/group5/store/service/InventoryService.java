@@ -4,8 +4,8 @@ import com.comp5348.practice9.group5.store.dto.InventoryDTO;
 import com.comp5348.practice9.group5.store.model.Inventory;
 import com.comp5348.practice9.group5.store.repository.InventoryRepository;
 import com.comp5348.practice9.group5.store.repository.ProductRepository;
-import com.comp5348.practice9.group5.store.repository.UserRepository;
 import com.comp5348.practice9.group5.store.repository.WarehouseRepository;
+import com.comp5348.practice9.group5.store.util.AuthContext;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,17 +19,17 @@ public class InventoryService {
     private final InventoryRepository inventoryRepository;
     private final ProductRepository productRepository;
     private final WarehouseRepository warehouseRepository;
-    private final UserRepository userRepository;
+    private final ProductStockService productStockService;
 
     @Autowired
     public InventoryService(InventoryRepository inventoryRepository,
                             ProductRepository productRepository,
                             WarehouseRepository warehouseRepository,
-                            UserRepository userRepository) {
+                            ProductStockService productStockService) {
         this.inventoryRepository = inventoryRepository;
         this.productRepository = productRepository;
         this.warehouseRepository = warehouseRepository;
-        this.userRepository = userRepository;
+        this.productStockService = productStockService;
     }
 
     /*
@@ -37,8 +37,8 @@ public class InventoryService {
      */
     @Transactional
     public ServiceResult<List<InventoryDTO>> getAllInventoryInfo(Long userId, Long warehouseId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
@@ -48,7 +48,7 @@ public class InventoryService {
         }
 
         // 3. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -66,8 +66,8 @@ public class InventoryService {
      */
     @Transactional
     public ServiceResult<InventoryDTO> getInventoryInfo(Long userId, Long warehouseId, Long inventoryId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
@@ -77,7 +77,7 @@ public class InventoryService {
         }
 
         // 3. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -100,8 +100,8 @@ public class InventoryService {
      */
     @Transactional
     public ServiceResult<InventoryDTO> createInventory(Long userId, Long warehouseId, long productId, int quantity) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
@@ -116,7 +116,7 @@ public class InventoryService {
         }
 
         // 4. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -127,6 +127,9 @@ public class InventoryService {
         inventory.setWarehouse(warehouseRepository.getReferenceById(warehouseId));
         inventoryRepository.save(inventory);
 
+        // 5.1 add the quantity to the available stock of the product
+        productStockService.adjust(productId, quantity);
+
         // 6. convert to DTO and return success
         InventoryDTO inventoryDTO = new InventoryDTO(inventory, true);
 
@@ -138,8 +141,8 @@ public class InventoryService {
      */
     @Transactional
     public ServiceResult<InventoryDTO> updateInventory(Long userId, Long warehouseId, Long inventoryId, int quantity) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
@@ -149,7 +152,7 @@ public class InventoryService {
         }
 
         // 3. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -163,9 +166,13 @@ public class InventoryService {
 
         // 6. update the inventory
         Inventory inventory = inventoryOptional.get();
+        int previousQuantity = inventory.getQuantity();
         inventory.setQuantity(quantity);
         inventoryRepository.save(inventory);
 
+        // 6.1 apply the difference to the available stock of the product
+        productStockService.adjust(inventory.getProduct().getId(), quantity - previousQuantity);
+
         // 7. convert to DTO and return success
         InventoryDTO inventoryDTO = new InventoryDTO(inventory, true);
 
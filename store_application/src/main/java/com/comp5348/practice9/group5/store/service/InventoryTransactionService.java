@@ -6,28 +6,54 @@ import com.comp5348.practice9.group5.store.repository.InventoryRepository;
 import com.comp5348.practice9.group5.store.repository.InventoryTransactionRepository;
 import com.comp5348.practice9.group5.store.repository.OrderRepository;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 public class InventoryTransactionService {
     private final InventoryTransactionRepository inventoryTransactionRepository;
     private final InventoryRepository inventoryRepository;
     private final OrderRepository orderRepository;
+    private final ProductStockService productStockService;
+    private final AllocationStrategy allocationStrategy;
+    private final int maxReservationAttempts;
+    private final Counter reservationConflictCounter;
+    private final Counter reservationExhaustedCounter;
 
     @Autowired
     public InventoryTransactionService(InventoryTransactionRepository inventoryTransactionRepository,
                                        InventoryRepository inventoryRepository,
-                                       OrderRepository orderRepository) {
+                                       OrderRepository orderRepository,
+                                       ProductStockService productStockService,
+                                       List<AllocationStrategy> allocationStrategies,
+                                       @Value("${store.allocation.strategy:greedy}") String allocationStrategyName,
+                                       @Value("${store.inventory.reservation.max-attempts:5}") int maxReservationAttempts,
+                                       MeterRegistry meterRegistry) {
         this.inventoryTransactionRepository = inventoryTransactionRepository;
         this.inventoryRepository = inventoryRepository;
         this.orderRepository = orderRepository;
+        this.productStockService = productStockService;
+        this.allocationStrategy = allocationStrategies.stream()
+                .filter(strategy -> strategy.getName().equals(allocationStrategyName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown allocation strategy: " + allocationStrategyName));
+        this.maxReservationAttempts = maxReservationAttempts;
+        this.reservationConflictCounter = Counter.builder("store.inventory.reservation.conflicts")
+                .description("Stock decrements that lost the race to a concurrent order")
+                .register(meterRegistry);
+        this.reservationExhaustedCounter = Counter.builder("store.inventory.reservation.exhausted")
+                .description("Reservations given up after the maximum number of attempts")
+                .register(meterRegistry);
     }
 
     /*
@@ -71,7 +97,7 @@ public class InventoryTransactionService {
     }
 
     /*
-    launch a consolidation
+    launch a consolidation: reserve the stock of an order across the inventories of its product
      */
     @Transactional
     public ServiceResult<List<InventoryTransactionDTO>> launchConsolidation(Long userId, Long orderId) {
@@ -91,63 +117,83 @@ public class InventoryTransactionService {
             return ServiceResult.failure("User is not the owner of the order");
         }
 
-        // 5. get product object
-        Product product = order.getProduct();
-
-        // 6. get the inventories
-        List<Inventory> inventories = inventoryRepository.findByProductId(product.getId());
-
-        // 7. make sure the total quantity of the inventories can meet the order
-        int totalQuantity = inventories.stream().mapToInt(Inventory::getQuantity).sum();
-        if (totalQuantity < order.getQuantity()) {
+        // 5. fail fast when the product is known to be short
+        long productId = order.getProduct().getId();
+        if (!productStockService.isAvailable(productId, order.getQuantity())) {
             return ServiceResult.failure("Inventories cannot meet the order");
         }
 
-        // 8. modify the inventories
+        // 6. reserve the stock, each inventory is decremented atomically so concurrent orders never oversell
+        TreeMap<Long, Integer> reserved = new TreeMap<>();
+        int remainingQuantity = order.getQuantity();
+        for (int attempt = 1; remainingQuantity > 0; attempt++) {
+            // 6.1 check if there are attempts left
+            if (attempt > maxReservationAttempts) {
+                reservationExhaustedCounter.increment();
+                releaseStock(reserved);
+                return ServiceResult.failure("Inventories are busy, please try again");
+            }
 
-        // 8.1 sort the inventories by quantity in descending order
-        inventories.sort(Comparator.comparingInt(Inventory::getQuantity).reversed());
+            // 6.2 read the current stock
+            List<InventoryRepository.Stock> stocks = inventoryRepository.findStockByProductId(productId);
 
-        // 8.2 remove the inventories until the total quantity can meet the order: also need to update the inventory transactions
-        int remainingQuantity = order.getQuantity();
-        List<InventoryTransaction> inventoryTransactions = new ArrayList<>();
-        for (Inventory inventory : inventories) {
-            // if the inventory can meet the remaining quantity
-            if (inventory.getQuantity() >= remainingQuantity) {
-                // update the inventory
-                inventory.setQuantity(inventory.getQuantity() - remainingQuantity);
-                inventoryRepository.save(inventory);
-
-                // create an inventory transaction
-                InventoryTransaction inventoryTransaction = new InventoryTransaction(remainingQuantity, InventoryStatus.DISPATCHED, inventory, order);
-                inventoryTransactionRepository.save(inventoryTransaction);
-
-                // add the inventory transaction to the list
-                inventoryTransactions.add(inventoryTransaction);
-
-                break;
-            } else { // if the inventory cannot meet the remaining quantity
-                // update the inventory
-                int quantity = inventory.getQuantity();
-                remainingQuantity -= quantity;
-                inventory.setQuantity(0);
-                inventoryRepository.save(inventory);
-
-                // create an inventory transaction
-                InventoryTransaction inventoryTransaction = new InventoryTransaction(quantity, InventoryStatus.DISPATCHED, inventory, order);
-                inventoryTransactionRepository.save(inventoryTransaction);
-
-                // add the inventory transaction to the list
-                inventoryTransactions.add(inventoryTransaction);
+            // 6.3 make sure the total quantity of the inventories can meet the rest of the order
+            int totalQuantity = stocks.stream().mapToInt(InventoryRepository.Stock::getQuantity).sum();
+            if (totalQuantity < remainingQuantity) {
+                releaseStock(reserved);
+                return ServiceResult.failure("Inventories cannot meet the order");
+            }
+
+            // 6.4 the rows taken by an earlier attempt stay locked until commit, so a retry only plans over
+            // those rows and the ones after them in id order; a row before them could deadlock with another order
+            long highestHeld = reserved.isEmpty() ? Long.MIN_VALUE : reserved.lastKey();
+            List<InventoryRepository.Stock> lockable = stocks.stream()
+                    .filter(stock -> stock.getId() > highestHeld || reserved.containsKey(stock.getId()))
+                    .toList();
+            if (lockable.stream().mapToInt(InventoryRepository.Stock::getQuantity).sum() < remainingQuantity) {
+                reservationExhaustedCounter.increment();
+                releaseStock(reserved);
+                return ServiceResult.failure("Inventories are busy, please try again");
+            }
+
+            // 6.5 take the stock, in inventory id order so concurrent orders lock the rows in the same order
+            Map<Long, Integer> plan = new TreeMap<>(allocationStrategy.allocate(lockable, remainingQuantity));
+            for (Map.Entry<Long, Integer> entry : plan.entrySet()) {
+                if (inventoryRepository.decrementQuantity(entry.getKey(), entry.getValue()) == 1) {
+                    reserved.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                    remainingQuantity -= entry.getValue();
+                } else {
+                    // another order took the stock since it was read, plan the rest again
+                    reservationConflictCounter.increment();
+                }
             }
         }
 
+        // 7. record an inventory transaction for every inventory the stock was taken from
+        List<InventoryTransaction> inventoryTransactions = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : reserved.entrySet()) {
+            Inventory inventory = inventoryRepository.getReferenceById(entry.getKey());
+            InventoryTransaction inventoryTransaction = new InventoryTransaction(entry.getValue(), InventoryStatus.DISPATCHED, inventory, order);
+            inventoryTransactionRepository.save(inventoryTransaction);
+            inventoryTransactions.add(inventoryTransaction);
+        }
+
+        // 8. the product has that much less available stock, done last as the product_stock row stays locked until commit
+        productStockService.adjust(productId, -order.getQuantity());
+
         // 9. convert to DTO
         List<InventoryTransactionDTO> inventoryTransactionDTOs = inventoryTransactions.stream().map(InventoryTransactionDTO::new).toList();
 
         return ServiceResult.success(inventoryTransactionDTOs);
     }
 
+    /*
+    give stock back to the inventories, in inventory id order as the reservations take it
+     */
+    private void releaseStock(Map<Long, Integer> reserved) {
+        reserved.forEach(inventoryRepository::incrementQuantity);
+    }
+
     /*
     restore inventories by inventory transactions
      */
@@ -161,19 +207,32 @@ public class InventoryTransactionService {
             return ServiceResult.failure("Inventory transactions not found");
         }
 
-        // 2. restore the inventories and update the inventory transactions
+        // 2. mark the inventory transactions restored and sum what goes back to each inventory and product
+        Map<Long, Integer> restored = new TreeMap<>();
+        Map<Long, Integer> restoredByProduct = new TreeMap<>();
         for (InventoryTransaction inventoryTransaction : inventoryTransactions) {
-            // 2.1 restore the inventory
+            // 2.1 skip the inventory transactions that were already restored
+            if (inventoryTransaction.getStatus() == InventoryStatus.RECEIVED) {
+                continue;
+            }
+
+            // 2.2 add the quantity to its inventory and product
             Inventory inventory = inventoryTransaction.getInventory();
-            inventory.setQuantity(inventory.getQuantity() + inventoryTransaction.getQuantity());
-            inventoryRepository.save(inventory);
+            restored.merge(inventory.getId(), inventoryTransaction.getQuantity(), Integer::sum);
+            restoredByProduct.merge(inventory.getProduct().getId(), inventoryTransaction.getQuantity(), Integer::sum);
 
-            // 2.2 update the inventory transaction
+            // 2.3 update the inventory transaction
             inventoryTransaction.setStatus(InventoryStatus.RECEIVED);
             inventoryTransactionRepository.save(inventoryTransaction);
         }
 
-        // 3. convert to DTO
+        // 3. restore the inventories atomically, in inventory id order like a reservation
+        releaseStock(restored);
+
+        // 4. give the stock back to the products last, one update per product
+        restoredByProduct.forEach(productStockService::adjust);
+
+        // 5. convert to DTO
         List<InventoryTransactionDTO> inventoryTransactionDTOs = inventoryTransactions.stream().map(InventoryTransactionDTO::new).toList();
 
         return ServiceResult.success(inventoryTransactionDTOs);
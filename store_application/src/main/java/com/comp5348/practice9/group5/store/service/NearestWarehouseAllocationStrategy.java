@@ -0,0 +1,62 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import com.comp5348.practice9.group5.store.util.GeocodeTable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Warehouses closest to the dispatch origin first; warehouses whose address is not in the geocode table go last.
+ *
+ * Orders are consolidated before the customer gives a delivery address, so the distance is measured
+ * from store.allocation.nearest.origin rather than from the customer.
+ */
+@Component
+public class NearestWarehouseAllocationStrategy implements AllocationStrategy {
+    private final GeocodeTable geocodeTable;
+    private final Optional<double[]> origin;
+
+    @Autowired
+    public NearestWarehouseAllocationStrategy(GeocodeTable geocodeTable,
+                                              @Value("${store.allocation.nearest.origin:sydney}") String origin) {
+        this.geocodeTable = geocodeTable;
+        this.origin = geocodeTable.locate(origin);
+    }
+
+    @Override
+    public String getName() {
+        return "nearest";
+    }
+
+    @Override
+    public Map<Long, Integer> allocate(List<InventoryRepository.Stock> stocks, int quantity) {
+        // 1. distance of every warehouse, looked up once per warehouse
+        Map<Long, Double> distances = new HashMap<>();
+        for (InventoryRepository.Stock stock : stocks) {
+            distances.computeIfAbsent(stock.getWarehouseId(), warehouseId -> distanceFromOrigin(stock.getWarehouseAddress()));
+        }
+
+        // 2. nearest warehouse first, fullest inventory first within a warehouse
+        List<InventoryRepository.Stock> sorted = new ArrayList<>(stocks);
+        sorted.sort(Comparator.<InventoryRepository.Stock>comparingDouble(stock -> distances.get(stock.getWarehouseId()))
+                .thenComparingLong(InventoryRepository.Stock::getWarehouseId)
+                .thenComparing(Comparator.comparingInt(InventoryRepository.Stock::getQuantity).reversed()));
+        return AllocationStrategy.takeInOrder(sorted, quantity);
+    }
+
+    private double distanceFromOrigin(String address) {
+        Optional<double[]> location = geocodeTable.locate(address);
+        if (origin.isEmpty() || location.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return GeocodeTable.distanceKm(origin.get(), location.get());
+    }
+}
@@ -2,14 +2,17 @@ package com.comp5348.practice9.group5.store.service;
 
 import com.comp5348.practice9.group5.store.dto.InventoryTransactionDTO;
 import com.comp5348.practice9.group5.store.dto.OrderDTO;
+import com.comp5348.practice9.group5.store.dto.PageDTO;
 import com.comp5348.practice9.group5.store.model.*;
-import com.comp5348.practice9.group5.store.repository.InventoryRepository;
 import com.comp5348.practice9.group5.store.repository.OrderRepository;
 import com.comp5348.practice9.group5.store.repository.ProductRepository;
 import com.comp5348.practice9.group5.store.repository.UserRepository;
+import com.comp5348.practice9.group5.store.util.CursorUtils;
+import com.comp5348.practice9.group5.store.util.AuthContext;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
@@ -18,22 +21,25 @@ import java.util.Optional;
 
 @Service
 public class OrderService {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+
     private final OrderRepository orderRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
-    private final InventoryRepository inventoryRepository;
+    private final ProductStockService productStockService;
     private final InventoryTransactionService inventoryTransactionService;
 
     @Autowired
     public OrderService(OrderRepository orderRepository,
                         UserRepository userRepository,
                         ProductRepository productRepository,
-                        InventoryRepository inventoryRepository,
+                        ProductStockService productStockService,
                         InventoryTransactionService inventoryTransactionService) {
         this.orderRepository = orderRepository;
         this.userRepository = userRepository;
         this.productRepository = productRepository;
-        this.inventoryRepository = inventoryRepository;
+        this.productStockService = productStockService;
         this.inventoryTransactionService = inventoryTransactionService;
     }
 
@@ -42,13 +48,13 @@ public class OrderService {
      */
     @Transactional
     public ServiceResult<List<OrderDTO>> getAllOrdersInfo(Long userId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
-        // 2. get all orders info
-        List<Order> orders = orderRepository.findAll();
+        // 2. get all orders info of the user, related entities included
+        List<Order> orders = orderRepository.findAllWithDetailsByUser_Id(userId);
 
         // 3. convert to DTO and return success
         List<OrderDTO> orderDTOs = orders.stream().map(Order -> new OrderDTO(Order,true)).toList();
@@ -56,17 +62,58 @@ public class OrderService {
         return ServiceResult.success(orderDTOs);
     }
 
+    /*
+    Get a page of orders info of a user, newest first
+     */
+    @Transactional
+    public ServiceResult<PageDTO<OrderDTO>> getOrdersPage(Long userId, String cursor, int size) {
+        // 1. check the page size
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ServiceResult.failure("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        // 2. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
+            return ServiceResult.failure("User not found");
+        }
+
+        // 3. decode the cursor: the id of the last order of the previous page
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                beforeId = Long.parseLong(CursorUtils.decode(cursor, 1)[0]);
+            } catch (IllegalArgumentException e) {
+                return ServiceResult.failure("Invalid cursor");
+            }
+        }
+
+        // 4. get one more order id than asked to know if there is a next page
+        List<Long> orderIds = orderRepository.findPageIdsByUser(userId, beforeId, Limit.of(size + 1));
+        boolean hasNext = orderIds.size() > size;
+        if (hasNext) {
+            orderIds = orderIds.subList(0, size);
+        }
+
+        // 4.1 load the orders of the page with their related entities in a single query
+        List<Order> orders = orderIds.isEmpty() ? List.of() : orderRepository.findAllWithDetailsByIdInOrderByIdDesc(orderIds);
+
+        // 5. convert to DTO and return success
+        List<OrderDTO> orderDTOs = orders.stream().map(order -> new OrderDTO(order, true)).toList();
+        String nextCursor = hasNext ? CursorUtils.encode(orderIds.get(orderIds.size() - 1)) : null;
+
+        return ServiceResult.success(new PageDTO<>(orderDTOs, nextCursor));
+    }
+
     /*
     Get a specific order info
      */
     @Transactional
     public ServiceResult<OrderDTO> getOrderInfo(Long userId, Long orderId) {
-        // 1. get optional user and order
-        Optional<User> userOptional = userRepository.findById(userId);
+        // 1. get optional order
         Optional<Order> orderOptional = orderRepository.findById(orderId);
 
-        // 1.1 check if the user exists
-        if (userOptional.isEmpty()) {
+        // 1.1 check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
@@ -75,12 +122,11 @@ public class OrderService {
             return ServiceResult.failure("Order not found");
         }
 
-        // 2. get the user and order
-        User user = userOptional.get();
+        // 2. get the order
         Order order = orderOptional.get();
 
         // 3. check if the order belongs to the user
-        if (!order.getUser().equals(user)) {
+        if (order.getUser().getId() != userId) {
             return ServiceResult.failure("Order not found");
         }
 
@@ -93,12 +139,11 @@ public class OrderService {
      */
     @Transactional
     public ServiceResult<OrderDTO> createOrder(Long userId, Long productId, int quantity) {
-        // 1. get optional user and product
-        Optional<User> userOptional = userRepository.findById(userId);
+        // 1. get optional product
         Optional<Product> productOptional = productRepository.findById(productId);
 
-        // 1.1 check if the user exists
-        if (userOptional.isEmpty()) {
+        // 1.1 check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
@@ -107,20 +152,12 @@ public class OrderService {
             return ServiceResult.failure("Product not found");
         }
 
-        // 2. get the user and product
-        User user = userOptional.get();
+        // 2. get the user, a reference is enough for the order, and the product
+        User user = userRepository.getReferenceById(userId);
         Product product = productOptional.get();
 
-        // 3. check if the inventories are enough
-
-        // 3.1 get all inventories of the product
-        List<Inventory> inventories = inventoryRepository.findByProductId(productId);
-
-        // 3.2 calculate the total quantity of the inventories
-        int totalQuantity = inventories.stream().mapToInt(Inventory::getQuantity).sum();
-
-        // 3.3 check if the total quantity can meet the order
-        if (totalQuantity < quantity) {
+        // 3. check if the available stock of the product can meet the order
+        if (!productStockService.isAvailable(productId, quantity)) {
             return ServiceResult.failure("Inventories are not enough");
         }
 
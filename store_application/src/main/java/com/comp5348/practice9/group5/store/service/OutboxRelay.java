@@ -0,0 +1,157 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.model.OutboxMessage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.*;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Sends the outbox to the bank and the delivery service.
+ *
+ * Messages are claimed in batches and sent in parallel without any transaction open; each result
+ * is applied in its own short transaction by PaymentService. A 4xx answer is final, anything else
+ * (timeouts, connection errors, 5xx) is retried with backoff under the same idempotency key. Those
+ * errors leave it open whether the call went through, so they never lead to compensation: once the
+ * backoff is used up the message keeps being re-sent at the reconcile interval instead.
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private final OutboxService outboxService;
+    private final PaymentService paymentService;
+    private final RestTemplate restTemplate;
+    private final int batchSize;
+    private final ThreadPoolExecutor senders;
+    private final ThreadPoolExecutor drainer;
+
+    @Autowired
+    public OutboxRelay(OutboxService outboxService,
+                       PaymentService paymentService,
+                       RestTemplate restTemplate,
+                       @Value("${store.outbox.batch-size:100}") int batchSize,
+                       @Value("${store.outbox.threads:8}") int threads) {
+        this.outboxService = outboxService;
+        this.paymentService = paymentService;
+        this.restTemplate = restTemplate;
+        this.batchSize = batchSize;
+
+        // 1. senders: the remote calls of one batch run in parallel
+        AtomicInteger threadCount = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "outbox-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 2. drainer: a single thread for on-demand drains, extra wake-ups are dropped while it is busy
+        this.drainer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "outbox-drainer");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /*
+    drain the outbox now instead of waiting for the next poll, called after a commit that added messages
+     */
+    public void wakeUp() {
+        try {
+            drainer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // shutting down, the next start picks the messages up
+        }
+    }
+
+    /*
+    poll the outbox, keep going while full batches come back
+     */
+    @Scheduled(fixedDelayString = "${store.outbox.interval-millis:1000}")
+    public void drain() {
+        try {
+            int relayed;
+            do {
+                relayed = relayBatch();
+            } while (relayed == batchSize);
+        } catch (Exception e) {
+            logger.error("Outbox relay failed", e);
+        }
+    }
+
+    private int relayBatch() {
+        // 1. claim a batch of due messages
+        List<OutboxMessage> messages = outboxService.claimBatch(batchSize);
+
+        // 2. send them in parallel and wait for the whole batch
+        CompletableFuture<?>[] futures = messages.stream()
+                .map(message -> CompletableFuture.runAsync(() -> relay(message), senders))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+
+        return messages.size();
+    }
+
+    private void relay(OutboxMessage message) {
+        try {
+            // 1. send the request
+            Map<String, Object> response = send(message);
+
+            // 2. apply the result
+            paymentService.handleOutboxSuccess(message.getId(), response);
+        } catch (HttpClientErrorException e) {
+            // 3. rejected by the receiver, retrying will not help
+            paymentService.handleOutboxFailure(message.getId(), e.getStatusCode() + " " + e.getResponseBodyAsString());
+        } catch (Exception e) {
+            // 4. transient error, try again later under the same idempotency key
+            logger.warn("Outbox message {} failed, attempt {}: {}", message.getId(), message.getAttempts(), e.getMessage());
+            if (!outboxService.retryLater(message.getId(), e.getMessage())) {
+                paymentService.handleOutboxUnresolved(message.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, Object> send(OutboxMessage message) {
+        // 1. create a request entity from the stored payload
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set(IDEMPOTENCY_KEY_HEADER, message.getIdempotencyKey());
+        HttpEntity<String> requestEntity = new HttpEntity<>(message.getPayload(), headers);
+
+        // 2. send the request, a non-2xx status throws
+        ResponseEntity<Map<String, Object>> response = restTemplate.exchange(message.getUrl(),
+                HttpMethod.valueOf(message.getHttpMethod()), requestEntity, new ParameterizedTypeReference<>() {});
+
+        // 3. check if the response body is present
+        if (response.getBody() == null) {
+            throw new IllegalStateException("Empty response from " + message.getUrl());
+        }
+        return response.getBody();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainer.shutdown();
+        senders.shutdown();
+    }
+}
@@ -0,0 +1,153 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.model.OutboxMessage;
+import com.comp5348.practice9.group5.store.model.OutboxMessageType;
+import com.comp5348.practice9.group5.store.model.OutboxStatus;
+import com.comp5348.practice9.group5.store.repository.OutboxMessageRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+ * Storage side of the transactional outbox: messages are written together with the change that
+ * caused them and claimed in batches by the OutboxRelay.
+ */
+@Service
+public class OutboxService {
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final OutboxMessageRepository outboxMessageRepository;
+    private final ObjectMapper objectMapper;
+    private final long leaseMillis;
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long reconcileDelayMillis;
+
+    @Autowired
+    public OutboxService(OutboxMessageRepository outboxMessageRepository,
+                         ObjectMapper objectMapper,
+                         @Value("${store.outbox.lease-millis:30000}") long leaseMillis,
+                         @Value("${store.outbox.max-attempts:8}") int maxAttempts,
+                         @Value("${store.outbox.base-delay-millis:1000}") long baseDelayMillis,
+                         @Value("${store.outbox.max-delay-millis:60000}") long maxDelayMillis,
+                         @Value("${store.outbox.reconcile-delay-millis:600000}") long reconcileDelayMillis) {
+        this.outboxMessageRepository = outboxMessageRepository;
+        this.objectMapper = objectMapper;
+        this.leaseMillis = leaseMillis;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.reconcileDelayMillis = reconcileDelayMillis;
+    }
+
+    /*
+    add a message to the outbox, must join the transaction of the change it belongs to
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public OutboxMessage enqueue(OutboxMessageType type, long paymentId, String url, String httpMethod, Object body) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize outbox payload", e);
+        }
+        OutboxMessage message = new OutboxMessage(type, paymentId, url, httpMethod, payload, UUID.randomUUID().toString());
+        return outboxMessageRepository.save(message);
+    }
+
+    /*
+    check if a payment has a message of this type waiting to be sent
+     */
+    @Transactional
+    public boolean hasPendingMessage(long paymentId, OutboxMessageType type) {
+        return outboxMessageRepository.existsByPaymentIdAndTypeAndStatus(paymentId, type, OutboxStatus.PENDING);
+    }
+
+    /*
+    claim a batch of due messages; they are leased so no other relay picks them up while they are in flight
+     */
+    @Transactional
+    public List<OutboxMessage> claimBatch(int batchSize) {
+        // 1. lock a page of due messages, skipping rows another relay holds
+        Date now = new Date();
+        List<OutboxMessage> messages = outboxMessageRepository.claimDueMessages(OutboxStatus.PENDING.ordinal(), now, batchSize);
+
+        // 2. push their due time past the lease, if the relay dies they are picked up again afterwards
+        Date leaseEnd = new Date(now.getTime() + leaseMillis);
+        for (OutboxMessage message : messages) {
+            message.setNextAttemptAt(leaseEnd);
+            message.setAttempts(message.getAttempts() + 1);
+        }
+        return outboxMessageRepository.saveAll(messages);
+    }
+
+    /*
+    get a message that is still waiting for its result, empty if another relay already handled it
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public Optional<OutboxMessage> findPending(long messageId) {
+        return outboxMessageRepository.findById(messageId)
+                .filter(message -> message.getStatus() == OutboxStatus.PENDING);
+    }
+
+    /*
+    mark a message as delivered
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void markSent(OutboxMessage message) {
+        message.setStatus(OutboxStatus.SENT);
+        message.setLastError(null);
+        outboxMessageRepository.save(message);
+    }
+
+    /*
+    mark a message as given up
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void markFailed(OutboxMessage message, String error) {
+        message.setStatus(OutboxStatus.FAILED);
+        message.setLastError(truncate(error));
+        outboxMessageRepository.save(message);
+    }
+
+    /*
+    schedule another attempt with exponential backoff, return false once the attempts are used up;
+    the message is never dropped here: the call may have gone through, so it keeps being re-sent
+    under the same idempotency key at the reconcile interval until the receiver gives a final answer
+     */
+    @Transactional
+    public boolean retryLater(long messageId, String error) {
+        // 1. get the message, skip it if it was handled in the meantime
+        Optional<OutboxMessage> optionalMessage = findPending(messageId);
+        if (optionalMessage.isEmpty()) {
+            return true;
+        }
+        OutboxMessage message = optionalMessage.get();
+
+        // 2. back off: base, 2 * base, 4 * base ... up to the maximum, then the reconcile interval
+        boolean attemptsLeft = message.getAttempts() < maxAttempts;
+        long delay = attemptsLeft
+                ? Math.min(baseDelayMillis << Math.min(message.getAttempts() - 1, 20), maxDelayMillis)
+                : reconcileDelayMillis;
+        message.setNextAttemptAt(new Date(System.currentTimeMillis() + delay));
+        message.setLastError(truncate(error));
+        outboxMessageRepository.save(message);
+        return attemptsLeft;
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -1,20 +1,19 @@
 package com.comp5348.practice9.group5.store.service;
 
 import com.comp5348.practice9.group5.store.dto.InventoryTransactionDTO;
-import com.comp5348.practice9.group5.store.dto.OrderDTO;
 import com.comp5348.practice9.group5.store.dto.PaymentDTO;
 import com.comp5348.practice9.group5.store.model.*;
 import com.comp5348.practice9.group5.store.repository.OrderRepository;
 import com.comp5348.practice9.group5.store.repository.PaymentRepository;
-import com.comp5348.practice9.group5.store.repository.UserRepository;
+import com.comp5348.practice9.group5.store.util.AuthContext;
 import com.comp5348.practice9.group5.store.util.BankConfig;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
 import java.util.Map;
@@ -22,23 +21,22 @@ import java.util.Optional;
 
 @Service
 public class PaymentService {
+    private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
+
     private final PaymentRepository paymentRepository;
-    private final UserRepository userRepository;
     private final OrderRepository orderRepository;
     private final InventoryTransactionService inventoryTransactionService;
-    private final RestTemplate restTemplate;
+    private final OutboxService outboxService;
 
     @Autowired
-    public PaymentService(UserRepository userRepository,
-                          OrderRepository orderRepository,
+    public PaymentService(OrderRepository orderRepository,
                           PaymentRepository paymentRepository,
                           InventoryTransactionService inventoryTransactionService,
-                          RestTemplate restTemplate) {
+                          OutboxService outboxService) {
         this.paymentRepository = paymentRepository;
-        this.userRepository = userRepository;
         this.orderRepository = orderRepository;
         this.inventoryTransactionService = inventoryTransactionService;
-        this.restTemplate = restTemplate;
+        this.outboxService = outboxService;
     }
 
     /*
@@ -59,271 +57,220 @@ public class PaymentService {
     }
 
     /*
-    Create a payment
+    Create a payment: records a pending payment and queues the bank transfer in the same transaction,
+    the outbox relay sends it and creates the delivery afterwards
      */
     @Transactional
     public ServiceResult<PaymentDTO> createPayment(Long userId, Long orderId, long fromAccountId, String address) {
-        // 1. get optional order and user
+        // 1. get optional order
         Optional<Order> optionalOrder = orderRepository.findById(orderId);
-        Optional<User> optionalUser = userRepository.findById(userId);
 
         // 1.1 check if the order exists
         if (optionalOrder.isEmpty()) {
             return ServiceResult.failure("Order not found");
         }
 
-        // 1.2 check if the user exists
-        if (optionalUser.isEmpty()) {
+        // 1.2 check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
-        // 2. get the order and user
+        // 2. get the order, it must belong to the user
         Order order = optionalOrder.get();
-        User user = optionalUser.get();
-
-        // 3. use HTTP request to make a payment
-
-        // 3.1 create a transfer
-        ServiceResult<PaymentDTO> paymentResult = createTransfer(fromAccountId, order);
-
-        // 3.2 if the payment failed, return the result
-        if (!paymentResult.isSuccess()) {
-            return paymentResult;
+        if (order.getUser().getId() != userId) {
+            return ServiceResult.failure("Order not found");
         }
 
-        // 4. use HTTP request to create a delivery
-
-        // 4.1 create a delivery
-        ServiceResult<OrderDTO> deliveryResult = createDelivery(address, order, user);
-
-        // 4.2 if the delivery failed, return the result
-        if (!deliveryResult.isSuccess()) {
-            // 4.2.1 refund the payment
-            Payment payment = paymentRepository.getReferenceById(paymentResult.getData().getId());
-            refundTransfer(payment, order);
-
-            // 4.2.2 restore the status of order
-            order.setOrderStatus(OrderStatus.PENDING);
-            order.setDeliveryStatus(DeliveryStatus.EMPTY);
-            orderRepository.save(order);
-
-            // 4.2.3 delete the payment
-            paymentRepository.delete(payment);
-
-            // 4.2.4 return the result
-            return ServiceResult.failure(deliveryResult.getErrorMessage());
+        // 3. check if the order can be paid
+        if (order.getOrderStatus() != OrderStatus.PENDING) {
+            return ServiceResult.failure("Order cannot be paid");
         }
 
-
-        return paymentResult;
-    }
-
-    /*
-    create a transfer
-     */
-    public ServiceResult<PaymentDTO> createTransfer(long fromAccountId, Order order) {
-        // 1. determine url
-        String website = "http://localhost:8081/";
-        String url = website + "bank/customers/0/accounts/" + fromAccountId + "/transaction_records/transfer";
-
-        // 2. create a request entity
-        TransferRequest transferRequest = new TransferRequest(BankConfig.CUSTOMER_ID, BankConfig.ACCOUNT_ID, order.getAmount());
-        HttpEntity<TransferRequest> requestEntity = new HttpEntity<>(transferRequest);
-
-        // 3. send a POST request to complete the bank transfer
-        try {
-            // 3.1 send a POST request and get the response
-            ResponseEntity<Map<String, Integer>> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, new ParameterizedTypeReference<>() {});
-
-            // 4. if the payment succeeded
-
-            // 4.1 check if the response body is present
-            if (response.getBody() == null) {
-                return ServiceResult.failure("Empty bank response");
-            }
-
-            // 4.2 get the response body
-            Map<String, Integer> responseBody = response.getBody();
-
-            // 4.3 create a payment
-            Payment payment = new Payment(order.getAmount(), PaymentStatus.PAID, order, responseBody.get("id"), fromAccountId);
-            paymentRepository.save(payment);
-
-            // 4.4 update the order
-            order.setOrderStatus(OrderStatus.PROCESSING);
-            orderRepository.save(order);
-
-            return ServiceResult.success(new PaymentDTO(payment));
-        } catch (Exception e) {
-            return ServiceResult.failure("Payment failed: " + e.getMessage());
+        // 4. create a pending payment, or retry a failed one
+        Optional<Payment> optionalPayment = paymentRepository.findByOrderId(orderId);
+        Payment payment;
+        if (optionalPayment.isEmpty()) {
+            payment = new Payment(order.getAmount(), PaymentStatus.PENDING, order, 0, fromAccountId, address);
+        } else if (optionalPayment.get().getPaymentStatus() == PaymentStatus.FAILED) {
+            payment = optionalPayment.get();
+            payment.setPaymentStatus(PaymentStatus.PENDING);
+            payment.setAmount(order.getAmount());
+            payment.setFromAccountId(fromAccountId);
+            payment.setAddress(address);
+        } else {
+            return ServiceResult.failure("Payment is already in progress");
         }
-    }
-
-    /*
-    create a delivery
-     */
-    public ServiceResult<OrderDTO> createDelivery(String address, Order order, User user) {
-        // 1. determine url
-        String website = "http://localhost:8082/";
-        String url = website + "delivery/deliveries";
-
-        // 2. create a request entity
-        DeliveryRequest deliveryRequest = new DeliveryRequest(order.getId(), order.getQuantity(), address, user.getEmail());
-        HttpEntity<DeliveryRequest> requestEntity = new HttpEntity<>(deliveryRequest);
+        paymentRepository.save(payment);
 
-        // 3. send a POST request to complete the delivery
-        try {
-            // 3.1 send a POST request and get the response
-            // if the status code is not 2xx, the exchange method will throw an exception
-            ResponseEntity<Map<String, Integer>> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, new ParameterizedTypeReference<>() {});
+        // 5. queue the transfer to the store account
+        TransferRequest transferRequest = new TransferRequest(BankConfig.CUSTOMER_ID, BankConfig.ACCOUNT_ID, payment.getAmount());
+        outboxService.enqueue(OutboxMessageType.TRANSFER, payment.getId(), transferUrl(fromAccountId), "POST", transferRequest);
 
-            // 4. if the delivery succeeded
-
-            // 4.1 check if the response body is empty
-            if (response.getBody() == null) {
-                return ServiceResult.failure("Wrong delivery response");
-            }
-
-            // 4.2 update the order
-            order.setDeliveryStatus(DeliveryStatus.SETUP);
-            orderRepository.save(order);
-
-            return ServiceResult.success(new OrderDTO(order));
-        } catch (Exception e) {
-            return ServiceResult.failure("Delivery failed");
-        }
+        return ServiceResult.success(new PaymentDTO(payment));
     }
 
     /*
-    cancel a payment
+    cancel a payment: queues the delivery cancellation, the refund follows once the delivery service accepted it
      */
     @Transactional
     public ServiceResult<PaymentDTO> cancelPayment(Long paymentId) {
-        // 1. get optional payment and order
+        // 1. get optional payment
         Optional<Payment> optionalPayment = paymentRepository.findById(paymentId);
-        Optional<Order> optionalOrder = orderRepository.findById(paymentId);
 
         // 1.1 check if the payment exists
         if (optionalPayment.isEmpty()) {
             return ServiceResult.failure("Payment not found");
         }
 
-        // 1.2. check if the order exists
-        if (optionalOrder.isEmpty()) {
-            return ServiceResult.failure("Order not found");
-        }
-
         // 2. get the payment and order
         Payment payment = optionalPayment.get();
-        Order order = optionalOrder.get();
+        Order order = payment.getOrder();
 
         // 3. check if the order is refundable
-        if(order.getDeliveryStatus().ordinal()!=1) {
+        if (payment.getPaymentStatus() != PaymentStatus.PAID || order.getDeliveryStatus() != DeliveryStatus.SETUP) {
             return ServiceResult.failure("Order is not refundable");
         }
 
-        // 4. cancel the delivery
-        ServiceResult<OrderDTO> deliveryResult = cancelDelivery(order);
-
-        // 4.1 check if the delivery is cancelled
-        if (!deliveryResult.isSuccess()) {
-            return ServiceResult.failure(deliveryResult.getErrorMessage());
+        // 3.1 check if the order is already being cancelled
+        if (outboxService.hasPendingMessage(payment.getId(), OutboxMessageType.CANCEL_DELIVERY)) {
+            return ServiceResult.failure("Order is already being cancelled");
         }
 
-        // 5. restore the inventories
-        ServiceResult<List< InventoryTransactionDTO>> inventoryTransactionResult = inventoryTransactionService.restoreInventories(order.getId());
-
-        // 5.1 check if the inventories are restored
-        if (!inventoryTransactionResult.isSuccess()) {
-            return ServiceResult.failure(inventoryTransactionResult.getErrorMessage());
-        }
+        // 4. queue the delivery cancellation
+        outboxService.enqueue(OutboxMessageType.CANCEL_DELIVERY, payment.getId(), deliveryUrl(), "PUT", new CancelDeliveryRequest(order.getId()));
 
-        // 6. process the refund
-        ServiceResult<PaymentDTO> refundResult = refundTransfer(payment, order);
+        return ServiceResult.success(new PaymentDTO(payment));
+    }
 
-        // 6.1 check if the refund is successful
-        if (!refundResult.isSuccess()) {
-            return ServiceResult.failure(refundResult.getErrorMessage());
+    /*
+    apply the response to an outbox message
+     */
+    @Transactional
+    public void handleOutboxSuccess(long messageId, Map<String, Object> response) {
+        // 1. get the message, skip it if it was handled in the meantime
+        Optional<OutboxMessage> optionalMessage = outboxService.findPending(messageId);
+        if (optionalMessage.isEmpty()) {
+            return;
         }
+        OutboxMessage message = optionalMessage.get();
+        Payment payment = paymentRepository.getReferenceById(message.getPaymentId());
+        Order order = payment.getOrder();
+
+        // 2. move the payment and order forward
+        switch (message.getType()) {
+            case TRANSFER -> {
+                // 2.1 paid: mark the payment and queue the delivery
+                payment.setPaymentStatus(PaymentStatus.PAID);
+                payment.setTransactionRecordId(((Number) response.get("id")).longValue());
+                order.setOrderStatus(OrderStatus.PROCESSING);
+                DeliveryRequest deliveryRequest = new DeliveryRequest(order.getId(), order.getQuantity(), payment.getAddress(), order.getUser().getEmail());
+                outboxService.enqueue(OutboxMessageType.DELIVERY, payment.getId(), deliveryUrl(), "POST", deliveryRequest);
+            }
+            case DELIVERY -> order.setDeliveryStatus(DeliveryStatus.SETUP);
+            case CANCEL_DELIVERY -> {
+                // 2.2 cancelled: give the stock back and queue the refund
+                order.setDeliveryStatus(DeliveryStatus.CANCELLED);
+                order.setOrderStatus(OrderStatus.CANCELLED);
+                ServiceResult<List<InventoryTransactionDTO>> inventoryTransactionResult = inventoryTransactionService.restoreInventories(order.getId());
+                if (!inventoryTransactionResult.isSuccess()) {
+                    logger.error("Inventories of order {} could not be restored: {}", order.getId(), inventoryTransactionResult.getErrorMessage());
+                }
+                enqueueRefund(OutboxMessageType.REFUND, payment);
+            }
+            case REFUND -> {
+                payment.setPaymentStatus(PaymentStatus.REFUNDED);
+                payment.setTransactionRecordId(((Number) response.get("id")).longValue());
+                order.setOrderStatus(OrderStatus.REFUNDED);
+            }
+            case CHECKOUT_REFUND -> failPayment(payment, order);
+        }
+        paymentRepository.save(payment);
+        orderRepository.save(order);
 
-        return refundResult;
+        // 3. the message is done
+        outboxService.markSent(message);
     }
 
     /*
-    cancel a delivery
+    give up on an outbox message and compensate what it was part of, only for a final (4xx) answer
      */
-    public ServiceResult<OrderDTO> cancelDelivery(Order order) {
-        // 1. determine url
-        String website = "http://localhost:8082/";
-        String url = website + "delivery/deliveries";
-
-        // 2. create a request entity
-        CancelDeliveryRequest cancelDeliveryRequest = new CancelDeliveryRequest(order.getId());
-        HttpEntity<CancelDeliveryRequest> requestEntity = new HttpEntity<>(cancelDeliveryRequest);
-        // 3. send a PUT request to cancel the delivery
-        try {
-            // 3.1 send a PUT request and get the response
-            ResponseEntity<Map<String, Integer>> response = restTemplate.exchange(url, HttpMethod.PUT, requestEntity, new ParameterizedTypeReference<>() {});
-
-            // 4. if the delivery is cancelled
+    @Transactional
+    public void handleOutboxFailure(long messageId, String error) {
+        // 1. get the message, skip it if it was handled in the meantime
+        Optional<OutboxMessage> optionalMessage = outboxService.findPending(messageId);
+        if (optionalMessage.isEmpty()) {
+            return;
+        }
+        OutboxMessage message = optionalMessage.get();
+        Payment payment = paymentRepository.getReferenceById(message.getPaymentId());
+        Order order = payment.getOrder();
+
+        // 2. compensate
+        switch (message.getType()) {
+            // the money never moved: give the order back
+            case TRANSFER -> failPayment(payment, order);
+            // the money moved but there is no delivery: send it back
+            case DELIVERY -> enqueueRefund(OutboxMessageType.CHECKOUT_REFUND, payment);
+            // the delivery went on, the order stays paid
+            case CANCEL_DELIVERY -> logger.warn("Delivery of order {} could not be cancelled: {}", order.getId(), error);
+            // the customer is owed money, needs manual reconciliation
+            case REFUND, CHECKOUT_REFUND -> logger.error("Refund of payment {} failed: {}", payment.getId(), error);
+        }
+        paymentRepository.save(payment);
+        orderRepository.save(order);
 
-            // 4.1 check if the response body is empty
-            if (response.getBody() == null) {
-                return ServiceResult.failure("Wrong delivery response");
-            }
+        // 3. the message is done
+        outboxService.markFailed(message, error);
+    }
 
-            // 4.2 update the order
-            order.setDeliveryStatus(DeliveryStatus.CANCELLED);
-            order.setOrderStatus(OrderStatus.CANCELLED);
-            orderRepository.save(order);
+    /*
+    flag an outbox message whose backoff ran out without an answer: the receiver may have applied it,
+    so nothing is compensated and the relay keeps re-sending it under the same idempotency key
+     */
+    @Transactional
+    public void handleOutboxUnresolved(long messageId, String error) {
+        // 1. get the message, skip it if it was handled in the meantime
+        Optional<OutboxMessage> optionalMessage = outboxService.findPending(messageId);
+        if (optionalMessage.isEmpty()) {
+            return;
+        }
+        OutboxMessage message = optionalMessage.get();
+        Payment payment = paymentRepository.getReferenceById(message.getPaymentId());
 
-            return ServiceResult.success(new OrderDTO(order));
-        } catch (Exception e) {
-            return ServiceResult.failure("Cancel delivery failed");
+        // 2. a transfer in doubt keeps the order from being paid again
+        if (message.getType() == OutboxMessageType.TRANSFER && payment.getPaymentStatus() == PaymentStatus.PENDING) {
+            payment.setPaymentStatus(PaymentStatus.UNRESOLVED);
+            paymentRepository.save(payment);
         }
+        logger.error("Outbox message {} ({}) of payment {} is unresolved, reconciling: {}",
+                message.getId(), message.getType(), payment.getId(), error);
     }
 
     /*
-    refund a transfer
+    mark a payment as failed and restore the status of its order
      */
-    public ServiceResult<PaymentDTO> refundTransfer(Payment payment, Order order) {
-        // 1. determine url
-        String website = "http://localhost:8081/";
-        String url = website + "bank/customers/0/accounts/" + BankConfig.ACCOUNT_ID + "/transaction_records/transfer";
-
-        // 2. create a request entity
-        TransferRequest transferRequest = new TransferRequest(0L, payment.getFromAccountId(), order.getAmount());
-        HttpEntity<TransferRequest> requestEntity = new HttpEntity<>(transferRequest);
-
-        // 3. send a POST request to complete the bank refund
-        try {
-            // 3.1 send a POST request and get the response
-            ResponseEntity<Map<String, Integer>> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, new ParameterizedTypeReference<>() {});
-
-            // 4. if the payment succeeded
-
-            // 4.1 check if the response body is empty
-            if (response.getBody() == null) {
-                return ServiceResult.failure("Wrong bank response");
-            }
-
-            // 4.2 cast the response body to a map
-            // have to use Integer instead of Long because Jackson cannot convert Long to Integer
-            Map<String, Integer> responseBody = response.getBody();
+    private void failPayment(Payment payment, Order order) {
+        payment.setPaymentStatus(PaymentStatus.FAILED);
+        order.setOrderStatus(OrderStatus.PENDING);
+        order.setDeliveryStatus(DeliveryStatus.EMPTY);
+    }
 
-            // 4.3 update the payment
-            payment.setPaymentStatus(PaymentStatus.REFUNDED);
-            payment.setTransactionRecordId(responseBody.get("id"));
-            paymentRepository.save(payment);
+    /*
+    queue a transfer from the store account back to the customer
+     */
+    private void enqueueRefund(OutboxMessageType type, Payment payment) {
+        TransferRequest refundRequest = new TransferRequest(0L, payment.getFromAccountId(), payment.getAmount());
+        outboxService.enqueue(type, payment.getId(), transferUrl(BankConfig.ACCOUNT_ID), "POST", refundRequest);
+    }
 
-            // 4.4 update the order
-            order.setOrderStatus(OrderStatus.REFUNDED);
-            orderRepository.save(order);
+    private static String transferUrl(long fromAccountId) {
+        String website = "http://localhost:8081/";
+        return website + "bank/customers/0/accounts/" + fromAccountId + "/transaction_records/transfer";
+    }
 
-            return ServiceResult.success(new PaymentDTO(payment));
-        } catch (Exception e) {
-            return ServiceResult.failure("Payment failed");
-        }
+    private static String deliveryUrl() {
+        String website = "http://localhost:8082/";
+        return website + "delivery/deliveries";
     }
 
     /*
@@ -332,9 +279,9 @@ public class PaymentService {
     public static class TransferRequest {
         public long toCustomerId;
         public long toAccountId;
-        public double amount;
+        public Money amount;
 
-        public TransferRequest(Long toCustomerId, Long toAccountId, double amount) {
+        public TransferRequest(Long toCustomerId, Long toAccountId, Money amount) {
             this.toCustomerId = toCustomerId;
             this.toAccountId = toAccountId;
             this.amount = amount;
@@ -0,0 +1,90 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.dto.ProductDTO;
+import com.comp5348.practice9.group5.store.util.TransactionUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+ * Read-through cache of the product catalog.
+ *
+ * Entries are loaded on the first read and dropped after the commit of any product write, so the
+ * catalog served from memory never lags behind the database by more than the writing transaction.
+ */
+@Component
+public class ProductCatalogCache {
+    private static final String ALL_PRODUCTS = "all";
+    private static final String PRODUCT_LIST_ETAG = "etag";
+
+    private final Cache<Long, Optional<ProductDTO>> products;
+    private final Cache<String, List<ProductDTO>> productLists;
+    private final Cache<String, String> etags;
+
+    @Autowired
+    public ProductCatalogCache(@Value("${store.catalog.cache.max-size:10000}") long maxSize,
+                               @Value("${store.catalog.cache.ttl-seconds:300}") long ttlSeconds,
+                               MeterRegistry meterRegistry) {
+        this.products = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.productLists = Caffeine.newBuilder()
+                .maximumSize(16)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        this.etags = Caffeine.newBuilder()
+                .maximumSize(16)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+
+        // hit, miss, eviction and size metrics
+        CaffeineCacheMetrics.monitor(meterRegistry, products, "store.catalog.products");
+        CaffeineCacheMetrics.monitor(meterRegistry, productLists, "store.catalog.product-lists");
+    }
+
+    /*
+    get a product, empty if it does not exist
+     */
+    public Optional<ProductDTO> getProduct(long productId, Function<Long, Optional<ProductDTO>> loader) {
+        return products.get(productId, loader);
+    }
+
+    /*
+    get all products
+     */
+    public List<ProductDTO> getAllProducts(Supplier<List<ProductDTO>> loader) {
+        return productLists.get(ALL_PRODUCTS, key -> loader.get());
+    }
+
+    /*
+    get the ETag of the product list
+     */
+    public String getProductListETag(Supplier<String> loader) {
+        return etags.get(PRODUCT_LIST_ETAG, key -> loader.get());
+    }
+
+    /*
+    drop a product, every list and the ETag once the current transaction commits
+     */
+    public void invalidateProduct(long productId) {
+        TransactionUtils.afterCommit(() -> {
+            products.invalidate(productId);
+            productLists.invalidateAll();
+            etags.invalidateAll();
+        });
+    }
+}
@@ -1,26 +1,41 @@
 package com.comp5348.practice9.group5.store.service;
 
+import com.comp5348.practice9.group5.store.dto.PageDTO;
 import com.comp5348.practice9.group5.store.dto.ProductDTO;
 import com.comp5348.practice9.group5.store.model.Product;
 import com.comp5348.practice9.group5.store.repository.ProductRepository;
-import com.comp5348.practice9.group5.store.repository.UserRepository;
+import com.comp5348.practice9.group5.store.repository.ProductRepositoryCustom;
+import com.comp5348.practice9.group5.store.util.CursorUtils;
+import com.comp5348.practice9.group5.store.util.ETagUtils;
+import com.comp5348.practice9.group5.store.util.AuthContext;
+import com.comp5348.practice9.group5.store.util.Money;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Service
 public class ProductService {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    // ranked results are paged by offset, deep pages are cut off
+    public static final int MAX_SEARCH_PAGES = 50;
+
     private final ProductRepository productRepository;
-    private final UserRepository userRepository;
+    private final ProductStockService productStockService;
+    private final ProductCatalogCache productCatalogCache;
 
     @Autowired
-    public ProductService(ProductRepository productRepository, UserRepository userRepository) {
+    public ProductService(ProductRepository productRepository,
+                          ProductStockService productStockService,
+                          ProductCatalogCache productCatalogCache) {
         this.productRepository = productRepository;
-        this.userRepository = userRepository;
+        this.productStockService = productStockService;
+        this.productCatalogCache = productCatalogCache;
     }
 
     /*
@@ -30,19 +45,151 @@ public class ProductService {
     public ServiceResult<List<ProductDTO>> getAllProductsInfo(Long userId) {
         // 1. check if the user login
         if (userId!=-1) { // if user login
-            // 1.1 check if the user exists
-            if (!userRepository.existsById(userId)) {
+            // 1.1 check if the user is signed in
+            if (!AuthContext.isSignedInAs(userId)) {
                 return ServiceResult.failure("User not found");
             }
         }
 
-        // 2. get all products info
-        List<Product> products = productRepository.findAll();
+        // 2. get all products info, converted to DTO, from the catalog cache
+        List<ProductDTO> productDTOs = productCatalogCache.getAllProducts(
+                () -> productRepository.findAll().stream().map(ProductDTO::new).toList());
+
+        // 3. return success
+        return ServiceResult.success(productDTOs);
+    }
+
+    /*
+    Get a page of products info, filtered by name prefix and price range and sorted by id, name or price
+     */
+    @Transactional
+    public ServiceResult<PageDTO<ProductDTO>> getProductsPage(Long userId, String namePrefix, Money minPrice, Money maxPrice,
+                                                              String sort, String order, String cursor, int size) {
+        // 1. check the page size
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ServiceResult.failure("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        // 2. check if the user login
+        if (userId!=-1) { // if user login
+            // 2.1 check if the user is signed in
+            if (!AuthContext.isSignedInAs(userId)) {
+                return ServiceResult.failure("User not found");
+            }
+        }
 
-        // 3. convert to DTO and return success
+        // 3. build the query
+        ProductRepositoryCustom.ProductPageQuery query = new ProductRepositoryCustom.ProductPageQuery();
+        query.namePrefix = namePrefix;
+        query.minPrice = minPrice;
+        query.maxPrice = maxPrice;
+
+        // 3.1 check the sort key and order
+        try {
+            query.sortKey = ProductRepositoryCustom.SortKey.valueOf(sort.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ServiceResult.failure("Sort must be one of id, name, price");
+        }
+        if (!order.equalsIgnoreCase("asc") && !order.equalsIgnoreCase("desc")) {
+            return ServiceResult.failure("Order must be asc or desc");
+        }
+        query.descending = order.equalsIgnoreCase("desc");
+
+        // 3.2 check the price range
+        if (minPrice != null && maxPrice != null && minPrice.compareTo(maxPrice) > 0) {
+            return ServiceResult.failure("minPrice cannot be greater than maxPrice");
+        }
+
+        // 3.3 decode the cursor: sort key, order, sort value and id of the last product of the previous page
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                String[] values = CursorUtils.decode(cursor, 4);
+                if (!values[0].equals(query.sortKey.name()) || query.descending != Boolean.parseBoolean(values[1])) {
+                    return ServiceResult.failure("Cursor does not match the sort");
+                }
+                query.afterValue = switch (query.sortKey) {
+                    case ID -> null;
+                    case NAME -> values[2];
+                    case PRICE -> Money.valueOf(values[2]);
+                };
+                query.afterId = Long.valueOf(values[3]);
+            } catch (IllegalArgumentException e) {
+                return ServiceResult.failure("Invalid cursor");
+            }
+        }
+
+        // 4. get one more product than asked to know if there is a next page
+        List<Product> products = productRepository.findPage(query, size + 1);
+        boolean hasNext = products.size() > size;
+        if (hasNext) {
+            products = products.subList(0, size);
+        }
+
+        // 5. convert to DTO and return success
         List<ProductDTO> productDTOs = products.stream().map(ProductDTO::new).toList();
+        String nextCursor = null;
+        if (hasNext) {
+            Product last = products.get(products.size() - 1);
+            Object lastValue = switch (query.sortKey) {
+                case ID -> "";
+                case NAME -> last.getName();
+                case PRICE -> last.getPrice();
+            };
+            nextCursor = CursorUtils.encode(query.sortKey.name(), query.descending, lastValue, last.getId());
+        }
 
-        return ServiceResult.success(productDTOs);
+        return ServiceResult.success(new PageDTO<>(productDTOs, nextCursor));
+    }
+
+    /*
+    Search products by keywords in their name and description, best matches first
+     */
+    @Transactional
+    public ServiceResult<List<ProductDTO>> searchProducts(Long userId, String query, int page, int size) {
+        // 1. check the query and the page
+        if (query == null || query.isBlank()) {
+            return ServiceResult.failure("Search query is required");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ServiceResult.failure("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (page < 0 || page >= MAX_SEARCH_PAGES) {
+            return ServiceResult.failure("Page must be between 0 and " + (MAX_SEARCH_PAGES - 1));
+        }
+
+        // 2. check if the user login
+        if (userId!=-1) { // if user login
+            // 2.1 check if the user is signed in
+            if (!AuthContext.isSignedInAs(userId)) {
+                return ServiceResult.failure("User not found");
+            }
+        }
+
+        // 3. search the products
+        List<Product> products = productRepository.search(query, size, page * size);
+
+        // 4. convert to DTO and return success
+        return ServiceResult.success(products.stream().map(ProductDTO::new).toList());
+    }
+
+    /*
+    Get the ETag of all products info, changes whenever a product is created, updated or deleted
+     */
+    @Transactional
+    public ServiceResult<String> getAllProductsETag(Long userId) {
+        // 1. check if the user login
+        if (userId!=-1) { // if user login
+            // 1.1 check if the user is signed in
+            if (!AuthContext.isSignedInAs(userId)) {
+                return ServiceResult.failure("User not found");
+            }
+        }
+
+        // 2. get the ETag from the catalog cache
+        String etag = productCatalogCache.getProductListETag(
+                () -> ETagUtils.fromSummaries("products", productRepository.summarizeVersions()));
+
+        return ServiceResult.success(etag);
     }
 
     /*
@@ -52,14 +199,15 @@ public class ProductService {
     public ServiceResult<ProductDTO> getProductInfo(Long userId, Long productId) {
         // 1. check if the user login
         if (userId!=-1) { // if user login
-            // 1.1 check if the user exists
-            if (!userRepository.existsById(userId)) {
+            // 1.1 check if the user is signed in
+            if (!AuthContext.isSignedInAs(userId)) {
                 return ServiceResult.failure("User not found");
             }
         }
 
-        // 2. get a product info
-        Optional<Product> product = productRepository.findById(productId);
+        // 2. get a product info from the catalog cache
+        Optional<ProductDTO> product = productCatalogCache.getProduct(productId,
+                id -> productRepository.findById(id).map(ProductDTO::new));
 
         // 3. check if the product exists
         if (product.isEmpty()) {
@@ -67,27 +215,28 @@ public class ProductService {
         }
 
         // 4. return product DTO on success
-        return ServiceResult.success(new ProductDTO(product.get()));
+        return ServiceResult.success(product.get());
     }
 
     /*
     Create a product
      */
     @Transactional
-    public ServiceResult<ProductDTO> createProduct(Long userId, String name, String description, double price) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+    public ServiceResult<ProductDTO> createProduct(Long userId, String name, String description, Money price) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId!=1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
         // 3. create a product
         Product product = new Product(name, description, price);
         productRepository.save(product);
+        productCatalogCache.invalidateProduct(product.getId());
 
         return ServiceResult.success(new ProductDTO(product));
     }
@@ -96,14 +245,14 @@ public class ProductService {
     update a product
      */
     @Transactional
-    public ServiceResult<ProductDTO> updateProduct(Long userId, Long productId, String name, String description, double price) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+    public ServiceResult<ProductDTO> updateProduct(Long userId, Long productId, String name, String description, Money price) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -121,6 +270,7 @@ public class ProductService {
         product.setDescription(description);
         product.setPrice(price);
         productRepository.save(product);
+        productCatalogCache.invalidateProduct(productId);
 
         return ServiceResult.success(new ProductDTO(product));
     }
@@ -130,13 +280,13 @@ public class ProductService {
      */
     @Transactional
     public ServiceResult<ProductDTO> deleteProduct(Long userId, Long productId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -145,8 +295,10 @@ public class ProductService {
             return ServiceResult.failure("Product not found");
         }
 
-        // 4. delete the product
+        // 4. delete the product and its available stock
         productRepository.deleteById(productId);
+        productStockService.remove(productId);
+        productCatalogCache.invalidateProduct(productId);
 
         return ServiceResult.success(null);
     }
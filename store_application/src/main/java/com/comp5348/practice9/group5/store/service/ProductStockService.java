@@ -0,0 +1,150 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.ProductStockRepository;
+import com.comp5348.practice9.group5.store.util.TransactionUtils;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Available stock per product without summing the inventories.
+ *
+ * The product_stock table is changed in the same transaction as the inventories, and an in-memory
+ * counter per product in front of it answers availability checks without a query. Commits on this
+ * node add their delta to the counter; commits on other nodes are not seen, so a counter is only
+ * trusted for a short TTL and a value too low for an order is re-read from the table before the
+ * order is rejected. The counter is only a fast check: the stock itself is taken by the atomic
+ * decrements in InventoryTransactionService.
+ *
+ * Lock order: a transaction changes its inventory rows first, in inventory id order, and adjusts
+ * product_stock last, once per product in product id order. The product_stock row is held until
+ * commit and is the hottest row of a product, so nothing else should be done after locking it.
+ */
+@Service
+public class ProductStockService {
+    private final ProductStockRepository productStockRepository;
+    private final long ttlMillis;
+    private final Map<Long, StockCounter> counters = new ConcurrentHashMap<>();
+    // bumped on every write, a read that raced with a write does not fill the cache
+    private final AtomicLong writes = new AtomicLong();
+
+    @Autowired
+    public ProductStockService(ProductStockRepository productStockRepository,
+                               @Value("${store.stock.cache-ttl-millis:5000}") long ttlMillis) {
+        this.productStockRepository = productStockRepository;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /*
+    get the available stock of a product, may be up to the TTL behind the writes of other nodes
+     */
+    public long getAvailableQuantity(long productId) {
+        // 1. check the counter
+        StockCounter counter = counters.get(productId);
+        if (counter != null && System.currentTimeMillis() - counter.loadedAt < ttlMillis) {
+            return counter.quantity.sum();
+        }
+
+        // 2. read the table
+        return load(productId);
+    }
+
+    /*
+    check if a product has the given quantity available; a cached value that is too low is only a hint,
+    it is checked against the table so stock added on another node does not turn orders away
+     */
+    public boolean isAvailable(long productId, long quantity) {
+        // 1. a counter that covers the quantity is enough, the decrements decide in the end
+        if (getAvailableQuantity(productId) >= quantity) {
+            return true;
+        }
+
+        // 2. re-read before rejecting
+        return load(productId) >= quantity;
+    }
+
+    /*
+    change the available stock of a product, must join the transaction that changes the inventories
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void adjust(long productId, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        productStockRepository.addQuantity(productId, delta);
+        TransactionUtils.afterCommit(() -> {
+            writes.incrementAndGet();
+            StockCounter counter = counters.get(productId);
+            if (counter != null) {
+                counter.quantity.add(delta);
+            }
+        });
+    }
+
+    /*
+    forget a deleted product
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void remove(long productId) {
+        if (productStockRepository.existsById(productId)) {
+            productStockRepository.deleteById(productId);
+        }
+        TransactionUtils.afterCommit(() -> {
+            writes.incrementAndGet();
+            counters.remove(productId);
+        });
+    }
+
+    /*
+    recompute the table from the inventories at startup, in case they were changed behind the application's back
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void rebuild() {
+        productStockRepository.rebuild();
+        TransactionUtils.afterCommit(() -> {
+            writes.incrementAndGet();
+            counters.clear();
+        });
+    }
+
+    /*
+    read the available stock from the table and start a new counter from it
+     */
+    private long load(long productId) {
+        // 1. read the table
+        long generation = writes.get();
+        long quantity = productStockRepository.findQuantityByProductId(productId).orElse(0L);
+
+        // 2. start a counter unless a write happened meanwhile, its delta would be missing
+        if (writes.get() == generation) {
+            StockCounter counter = new StockCounter(quantity);
+            counters.put(productId, counter);
+            // a write may have slipped in before the put
+            if (writes.get() != generation) {
+                counters.remove(productId, counter);
+            }
+        }
+        return quantity;
+    }
+
+    /*
+    available stock of a product as last read, plus the deltas committed on this node since
+     */
+    private static class StockCounter {
+        private final LongAdder quantity = new LongAdder();
+        private final long loadedAt = System.currentTimeMillis();
+
+        private StockCounter(long quantity) {
+            this.quantity.add(quantity);
+        }
+    }
+}
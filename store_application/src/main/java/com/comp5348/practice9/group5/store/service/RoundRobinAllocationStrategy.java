@@ -0,0 +1,35 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Each order starts at the next inventory in turn, spreading the picking work over the warehouses.
+ */
+@Component
+public class RoundRobinAllocationStrategy implements AllocationStrategy {
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public String getName() {
+        return "round-robin";
+    }
+
+    @Override
+    public Map<Long, Integer> allocate(List<InventoryRepository.Stock> stocks, int quantity) {
+        // inventories in a stable order, rotated by one for every order
+        List<InventoryRepository.Stock> sorted = new ArrayList<>(stocks);
+        sorted.sort(Comparator.comparingLong(InventoryRepository.Stock::getId));
+        if (!sorted.isEmpty()) {
+            Collections.rotate(sorted, -Math.floorMod(next.getAndIncrement(), sorted.size()));
+        }
+        return AllocationStrategy.takeInOrder(sorted, quantity);
+    }
+}
@@ -5,56 +5,100 @@ import com.comp5348.practice9.group5.store.model.User;
 import com.comp5348.practice9.group5.store.repository.UserRepository;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import jakarta.transaction.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+/*
+ * Password hashing runs on the CredentialHasher pool, so register, login and update return futures
+ * and do their database work before or after the hash in short transactions of their own.
+ */
 @Service
 public class UserService {
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
     private final UserRepository userRepository;
+    private final CredentialHasher credentialHasher;
+    private final TransactionTemplate transactionTemplate;
+    private final AuthTokenService authTokenService;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository,
+                       CredentialHasher credentialHasher,
+                       TransactionTemplate transactionTemplate,
+                       AuthTokenService authTokenService) {
         this.userRepository = userRepository;
+        this.credentialHasher = credentialHasher;
+        this.transactionTemplate = transactionTemplate;
+        this.authTokenService = authTokenService;
     }
 
     /*
     register a new user
      */
-    @Transactional
-    public ServiceResult<UserDTO> registerUser(String firstName, String lastName, String email, String password) {
-        // 1. convert password to hash
-        String passwordHash = password.hashCode() + "";
-        // 2. check if email is unique
+    public CompletableFuture<ServiceResult<UserDTO>> registerUser(String firstName, String lastName, String email, String password) {
+        // 1. check if email is unique, before spending a hash on it
         if (userRepository.existsByEmail(email)) {
-            return ServiceResult.failure("Email already exists");
+            return CompletableFuture.completedFuture(ServiceResult.failure("Email already exists"));
         }
-        // 3. save user
-        User user = new User(firstName, lastName, email, passwordHash);
-        userRepository.save(user);
 
-        return ServiceResult.success(new UserDTO(user));
+        // 2. convert password to hash
+        return credentialHasher.hash(password).thenApply(passwordHash -> {
+            // 3. save user, the unique index catches a registration of the same email that won the race during the hash
+            User user = new User(firstName, lastName, email, passwordHash);
+            try {
+                userRepository.save(user);
+            } catch (DataIntegrityViolationException e) {
+                return ServiceResult.<UserDTO>failure("Email already exists");
+            }
+
+            return ServiceResult.success(new UserDTO(user));
+        });
     }
 
     /*
     login a user
      */
-    @Transactional
-    public ServiceResult<UserDTO> loginUser(String email, String password) {
+    public CompletableFuture<ServiceResult<UserDTO>> loginUser(String email, String password) {
         // 1. get user by email
-        Optional<User> user = userRepository.findByEmail(email);
+        Optional<User> optionalUser = userRepository.findByEmail(email);
         // 2. check if user exists
-        if (user.isEmpty()) {
-            return ServiceResult.failure("User not found");
+        if (optionalUser.isEmpty()) {
+            return CompletableFuture.completedFuture(ServiceResult.failure("User not found"));
         }
+        User user = optionalUser.get();
+
         // 3. check if password is correct
-        String passwordHash = password.hashCode() + "";
-        if (!passwordHash.equals(user.get().getPasswordHash())) {
-            return ServiceResult.failure("Incorrect password");
-        }
+        return credentialHasher.verify(password, user.getPasswordHash()).thenCompose(matches -> {
+            if (!matches) {
+                return CompletableFuture.completedFuture(ServiceResult.<UserDTO>failure("Incorrect password"));
+            }
+            // 3.1 issue the session token the other requests are authenticated with
+            UserDTO userDTO = new UserDTO(user);
+            userDTO.setToken(authTokenService.issue(user.getId()));
+            ServiceResult<UserDTO> result = ServiceResult.success(userDTO);
 
-        return ServiceResult.success(new UserDTO(user.get()));
+            // 4. upgrade a legacy or outdated hash now that the plain password is known
+            if (!credentialHasher.needsRehash(user.getPasswordHash())) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return credentialHasher.hash(password)
+                    .thenApply(newHash -> {
+                        userRepository.replacePasswordHash(user.getId(), user.getPasswordHash(), newHash);
+                        return result;
+                    })
+                    .exceptionally(e -> {
+                        // the login itself succeeded, the upgrade is tried again next time
+                        logger.warn("Password hash of user {} could not be upgraded: {}", user.getId(), e.getMessage());
+                        return result;
+                    });
+        });
     }
 
     /*
@@ -75,25 +119,28 @@ public class UserService {
     /*
     update user info
      */
-    @Transactional
-    public ServiceResult<UserDTO> updateUser(Long id, String newFirstName, String newLastName, String newPassword) {
-        // 1. get user by id
-        Optional<User> userOptional = userRepository.findById(id);
-
-        // 2. check if user exists
-        if (userOptional.isEmpty()) {
-            return ServiceResult.failure("User not found");
+    public CompletableFuture<ServiceResult<UserDTO>> updateUser(Long id, String newFirstName, String newLastName, String newPassword) {
+        // 1. check if user exists, before spending a hash on it
+        if (!userRepository.existsById(id)) {
+            return CompletableFuture.completedFuture(ServiceResult.failure("User not found"));
         }
 
-        // 3. get user
-        User user = userOptional.get();
+        // 2. convert password to hash
+        return credentialHasher.hash(newPassword).thenApply(passwordHash -> transactionTemplate.execute(status -> {
+            // 3. get user by id
+            Optional<User> userOptional = userRepository.findById(id);
+            if (userOptional.isEmpty()) {
+                return ServiceResult.<UserDTO>failure("User not found");
+            }
+            User user = userOptional.get();
 
-        // 4. update user info
-        user.setFirstName(newFirstName);
-        user.setLastName(newLastName);
-        user.setPasswordHash(newPassword.hashCode() + "");
-        userRepository.save(user);
+            // 4. update user info
+            user.setFirstName(newFirstName);
+            user.setLastName(newLastName);
+            user.setPasswordHash(passwordHash);
+            userRepository.save(user);
 
-        return ServiceResult.success(new UserDTO(user));
+            return ServiceResult.success(new UserDTO(user));
+        }));
     }
 }
@@ -1,35 +1,39 @@
 package com.comp5348.practice9.group5.store.service;
 
 import com.comp5348.practice9.group5.store.dto.WarehouseDTO;
+import com.comp5348.practice9.group5.store.model.Inventory;
 import com.comp5348.practice9.group5.store.model.Warehouse;
 import com.comp5348.practice9.group5.store.repository.InventoryRepository;
 import com.comp5348.practice9.group5.store.repository.ProductRepository;
-import com.comp5348.practice9.group5.store.repository.UserRepository;
 import com.comp5348.practice9.group5.store.repository.WarehouseRepository;
+import com.comp5348.practice9.group5.store.util.ETagUtils;
+import com.comp5348.practice9.group5.store.util.AuthContext;
 import com.comp5348.practice9.group5.store.util.ServiceResult;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 public class WarehouseService {
     private final WarehouseRepository warehouseRepository;
     private final ProductRepository productRepository;
     private final InventoryRepository inventoryRepository;
-    private final UserRepository userRepository;
+    private final ProductStockService productStockService;
 
     @Autowired
     public WarehouseService(WarehouseRepository warehouseRepository,
                             ProductRepository productRepository,
                             InventoryRepository inventoryRepository,
-                            UserRepository userRepository) {
+                            ProductStockService productStockService) {
         this.warehouseRepository = warehouseRepository;
         this.productRepository = productRepository;
         this.inventoryRepository = inventoryRepository;
-        this.userRepository = userRepository;
+        this.productStockService = productStockService;
     }
 
     /*
@@ -37,13 +41,13 @@ public class WarehouseService {
      */
     @Transactional
     public ServiceResult<List<WarehouseDTO>> getAllWarehousesInfo(Long userId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if(userId!=1){
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -56,18 +60,39 @@ public class WarehouseService {
         return ServiceResult.success(warehouseDTOs);
     }
 
+    /*
+    Get the ETag of all warehouses info, covers the warehouses and their inventories
+     */
+    @Transactional
+    public ServiceResult<String> getAllWarehousesETag(Long userId) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
+            return ServiceResult.failure("User not found");
+        }
+
+        // 2. check if the user is an admin
+        if (!AuthContext.isAdmin()) {
+            return ServiceResult.failure("User is not an admin");
+        }
+
+        // 3. summarize the versions of the warehouses and inventories
+        String etag = ETagUtils.fromSummaries("warehouses", warehouseRepository.summarizeVersions(), inventoryRepository.summarizeVersions());
+
+        return ServiceResult.success(etag);
+    }
+
     /*
     Get a specific warehouse info
      */
     @Transactional
     public ServiceResult<WarehouseDTO> getWarehouseInfo(Long userId, Long warehouseId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -90,13 +115,13 @@ public class WarehouseService {
      */
     @Transactional
     public ServiceResult<WarehouseDTO> createWarehouse(Long userId, String name, String address) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -112,13 +137,13 @@ public class WarehouseService {
      */
     @Transactional
     public ServiceResult<WarehouseDTO> updateWarehouse(Long userId, Long warehouseId, String name, String address) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -146,13 +171,13 @@ public class WarehouseService {
      */
     @Transactional
     public ServiceResult<String> deleteWarehouse(Long userId, Long warehouseId) {
-        // 1. check if the user exists
-        if (!userRepository.existsById(userId)) {
+        // 1. check if the user is signed in
+        if (!AuthContext.isSignedInAs(userId)) {
             return ServiceResult.failure("User not found");
         }
 
         // 2. check if the user is an admin
-        if (userId != 1) {
+        if (!AuthContext.isAdmin()) {
             return ServiceResult.failure("User is not an admin");
         }
 
@@ -170,9 +195,18 @@ public class WarehouseService {
         // 6. delete the warehouse
         warehouseRepository.delete(warehouse);
 
-        // 7. delete all inventories of the warehouse
+        // 7. sum the stock of the warehouse per product
+        Map<Long, Long> removedByProduct = new TreeMap<>();
+        for (Inventory inventory : inventoryRepository.findByWarehouseId(warehouseId)) {
+            removedByProduct.merge(inventory.getProduct().getId(), (long) -inventory.getQuantity(), Long::sum);
+        }
+
+        // 8. delete all inventories of the warehouse
         inventoryRepository.deleteByWarehouseId(warehouseId);
 
+        // 9. take the stock out of the products last, see ProductStockService for the lock order
+        removedByProduct.forEach(productStockService::adjust);
+
         return ServiceResult.success("Warehouse and its inventories deleted");
     }
 }
@@ -0,0 +1,34 @@
+package com.comp5348.practice9.group5.store.util;
+
+/*
+ * The caller of the current request, as verified from its token by AuthTokenFilter.
+ *
+ * Services check it instead of loading the user: the token was issued at login for an existing
+ * user and carries the role, so no query is needed per request.
+ */
+public class AuthContext {
+    private static final ThreadLocal<Principal> current = new ThreadLocal<>();
+
+    public static void set(Principal principal) {
+        current.set(principal);
+    }
+
+    public static void clear() {
+        current.remove();
+    }
+
+    // whether the request was signed in as this user
+    public static boolean isSignedInAs(Long userId) {
+        Principal principal = current.get();
+        return principal != null && userId != null && principal.userId() == userId;
+    }
+
+    // whether the request was signed in as an admin
+    public static boolean isAdmin() {
+        Principal principal = current.get();
+        return principal != null && principal.admin();
+    }
+
+    public record Principal(long userId, boolean admin) {
+    }
+}
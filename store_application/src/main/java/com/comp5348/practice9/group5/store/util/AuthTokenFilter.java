@@ -0,0 +1,95 @@
+package com.comp5348.practice9.group5.store.util;
+
+import com.comp5348.practice9.group5.store.service.AuthTokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Authenticates every request under /store/users/{userId}: the bearer token must be valid and
+ * issued to that user. The anonymous user -1 needs no token. Register and login are not under a
+ * user id and pass through.
+ */
+@Component
+public class AuthTokenFilter extends OncePerRequestFilter {
+    private static final Pattern USER_PATH = Pattern.compile("^/store/users/(-?\\d+)(/.*)?$");
+    private static final String BEARER = "Bearer ";
+    // the origin allowed by the @CrossOrigin of the controllers, rejections must carry it too
+    private static final String FRONTEND_ORIGIN = "http://localhost:3000";
+
+    private final AuthTokenService authTokenService;
+
+    @Autowired
+    public AuthTokenFilter(AuthTokenService authTokenService) {
+        this.authTokenService = authTokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // 1. only user paths are protected, CORS preflights carry no token
+        Matcher matcher = USER_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        if (!matcher.matches() || HttpMethod.OPTIONS.matches(request.getMethod())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long userId;
+        try {
+            userId = Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException e) {
+            reject(request, response, HttpStatus.BAD_REQUEST, "Invalid userId");
+            return;
+        }
+
+        // 2. the anonymous user browses without a token
+        if (userId != -1) {
+            // 2.1 check the token
+            String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+            if (header == null || !header.startsWith(BEARER)) {
+                reject(request, response, HttpStatus.UNAUTHORIZED, "Login required");
+                return;
+            }
+            Optional<AuthContext.Principal> principal = authTokenService.verify(header.substring(BEARER.length()).trim());
+            if (principal.isEmpty()) {
+                reject(request, response, HttpStatus.UNAUTHORIZED, "Invalid or expired token");
+                return;
+            }
+
+            // 2.2 check that the token belongs to the user of the path
+            if (principal.get().userId() != userId) {
+                reject(request, response, HttpStatus.FORBIDDEN, "Token does not belong to this user");
+                return;
+            }
+            AuthContext.set(principal.get());
+        }
+
+        // 3. continue with the caller known to the services
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            AuthContext.clear();
+        }
+    }
+
+    private static void reject(HttpServletRequest request, HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        if (FRONTEND_ORIGIN.equals(request.getHeader(HttpHeaders.ORIGIN))) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, FRONTEND_ORIGIN);
+        }
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"message\":\"" + message + "\"}");
+    }
+}
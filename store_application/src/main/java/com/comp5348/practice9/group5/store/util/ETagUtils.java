@@ -0,0 +1,17 @@
+package com.comp5348.practice9.group5.store.util;
+
+import com.comp5348.practice9.group5.store.repository.VersionSummary;
+
+public class ETagUtils {
+    // strong ETag built from the version summaries of the tables a response is read from
+    public static String fromSummaries(String prefix, VersionSummary... summaries) {
+        StringBuilder etag = new StringBuilder("\"").append(prefix);
+        for (VersionSummary summary : summaries) {
+            etag.append('-').append(Long.toHexString(summary.getCount()))
+                    .append('.').append(Long.toHexString(summary.getIdSum()))
+                    .append('.').append(Long.toHexString(summary.getVersionSum()))
+                    .append('.').append(Long.toHexString(summary.getMaxId()));
+        }
+        return etag.append('"').toString();
+    }
+}
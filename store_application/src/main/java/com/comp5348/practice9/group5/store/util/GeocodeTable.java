@@ -0,0 +1,85 @@
+package com.comp5348.practice9.group5.store.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/*
+ * Local lookup table from place names to coordinates, loaded from warehouse-geocodes.csv on the classpath.
+ */
+@Component
+public class GeocodeTable {
+    private static final Logger logger = LoggerFactory.getLogger(GeocodeTable.class);
+    private static final String RESOURCE = "warehouse-geocodes.csv";
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private final Map<String, double[]> places = new HashMap<>();
+
+    public GeocodeTable() {
+        ClassPathResource resource = new ClassPathResource(RESOURCE);
+        if (!resource.exists()) {
+            logger.warn("{} not found, every address is treated as unknown", RESOURCE);
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split(",");
+                places.put(normalize(columns[0]), new double[]{Double.parseDouble(columns[1].trim()), Double.parseDouble(columns[2].trim())});
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Cannot load " + RESOURCE, e);
+        }
+    }
+
+    /*
+    find the coordinates of an address: the longest place name it contains
+     */
+    public Optional<double[]> locate(String address) {
+        if (address == null) {
+            return Optional.empty();
+        }
+        String normalized = normalize(address);
+        double[] exact = places.get(normalized);
+        if (exact != null) {
+            return Optional.of(exact);
+        }
+        String bestPlace = null;
+        for (String place : places.keySet()) {
+            if (normalized.contains(place) && (bestPlace == null || place.length() > bestPlace.length())) {
+                bestPlace = place;
+            }
+        }
+        return Optional.ofNullable(bestPlace == null ? null : places.get(bestPlace));
+    }
+
+    /*
+    great-circle distance in kilometres
+     */
+    public static double distanceKm(double[] from, double[] to) {
+        double latitudeDelta = Math.toRadians(to[0] - from[0]);
+        double longitudeDelta = Math.toRadians(to[1] - from[1]);
+        double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2)
+                + Math.cos(Math.toRadians(from[0])) * Math.cos(Math.toRadians(to[0]))
+                * Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(a));
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
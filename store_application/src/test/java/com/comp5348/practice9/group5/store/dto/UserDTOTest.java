@@ -0,0 +1,22 @@
+package com.comp5348.practice9.group5.store.dto;
+
+import com.comp5348.practice9.group5.store.model.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * A user in a response never carries the password hash.
+ */
+class UserDTOTest {
+    @Test
+    void serialisedUserHasNoPasswordHash() throws Exception {
+        User user = new User("Ada", "Lovelace", "ada@example.com", "$argon2id$v=19$m=65536,t=3,p=1$salt$hash");
+
+        String json = new ObjectMapper().writeValueAsString(new UserDTO(user));
+
+        assertThat(json).contains("\"email\":\"ada@example.com\"");
+        assertThat(json).doesNotContainIgnoringCase("password").doesNotContain("argon2id");
+    }
+}
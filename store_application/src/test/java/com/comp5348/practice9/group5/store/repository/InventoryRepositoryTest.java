@@ -0,0 +1,63 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.model.Inventory;
+import com.comp5348.practice9.group5.store.model.Product;
+import com.comp5348.practice9.group5.store.model.Warehouse;
+import com.comp5348.practice9.group5.store.util.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * The conditional decrement takes stock only while there is enough of it, and bumps the version so
+ * a stale copy of the inventory cannot overwrite the new quantity.
+ */
+@DataJpaTest
+class InventoryRepositoryTest {
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    private Inventory inventory;
+
+    @BeforeEach
+    void createInventory() {
+        Product product = entityManager.persist(new Product("Widget", "A widget", Money.ofCents(1999)));
+        Warehouse warehouse = entityManager.persist(new Warehouse("Main", "1 Main Street"));
+        inventory = entityManager.persistFlushFind(new Inventory(10, product, warehouse));
+        entityManager.clear();
+    }
+
+    @Test
+    void decrementTakesStockWhileThereIsEnough() {
+        assertThat(inventoryRepository.decrementQuantity(inventory.getId(), 6)).isEqualTo(1);
+        assertThat(inventoryRepository.decrementQuantity(inventory.getId(), 4)).isEqualTo(1);
+
+        Inventory stored = entityManager.find(Inventory.class, inventory.getId());
+        assertThat(stored.getQuantity()).isZero();
+        assertThat(stored.getVersion()).isEqualTo(inventory.getVersion() + 2);
+    }
+
+    @Test
+    void decrementRefusesToGoBelowZero() {
+        assertThat(inventoryRepository.decrementQuantity(inventory.getId(), 11)).isZero();
+
+        Inventory stored = entityManager.find(Inventory.class, inventory.getId());
+        assertThat(stored.getQuantity()).isEqualTo(10);
+        assertThat(stored.getVersion()).isEqualTo(inventory.getVersion());
+    }
+
+    @Test
+    void incrementGivesStockBack() {
+        inventoryRepository.decrementQuantity(inventory.getId(), 10);
+        inventoryRepository.incrementQuantity(inventory.getId(), 3);
+
+        assertThat(entityManager.find(Inventory.class, inventory.getId()).getQuantity()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,82 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.dto.OrderDTO;
+import com.comp5348.practice9.group5.store.model.*;
+import com.comp5348.practice9.group5.store.util.Money;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * A page of orders with everything an OrderDTO reads is loaded with the same number of statements
+ * whatever the size of the page: the ids, then the orders with their related entities.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrderRepositoryTest {
+    private static final int ORDERS = 500;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private User user;
+
+    @BeforeEach
+    void createOrders() {
+        user = entityManager.persist(new User("Ada", "Lovelace", "ada@example.com", "hash"));
+        Product product = entityManager.persist(new Product("Widget", "A widget", Money.ofCents(1999)));
+        Warehouse warehouse = entityManager.persist(new Warehouse("Main", "1 Main Street"));
+        Inventory inventory = entityManager.persist(new Inventory(ORDERS * 10, product, warehouse));
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = entityManager.persist(new Order(new Date(), 2, user, product));
+            entityManager.persist(new InventoryTransaction(2, InventoryStatus.DISPATCHED, inventory, order));
+            entityManager.persist(new Payment(order.getAmount(), PaymentStatus.PAID, order, i, 42, "1 Main Street"));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void pageOf500OrdersRunsTwoStatements() {
+        assertThat(statementsToLoadPage(ORDERS)).isEqualTo(2);
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithThePageSize() {
+        long smallPage = statementsToLoadPage(5);
+        long largePage = statementsToLoadPage(ORDERS);
+
+        assertThat(largePage).isEqualTo(smallPage);
+    }
+
+    // load a page the way OrderService.getOrdersPage does and count the prepared statements
+    private long statementsToLoadPage(int size) {
+        entityManager.clear();
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<Long> orderIds = orderRepository.findPageIdsByUser(user.getId(), Long.MAX_VALUE, Limit.of(size));
+        List<Order> orders = orderRepository.findAllWithDetailsByIdInOrderByIdDesc(orderIds);
+        List<OrderDTO> orderDTOs = orders.stream().map(order -> new OrderDTO(order, true)).toList();
+
+        assertThat(orderDTOs).hasSize(size);
+        assertThat(orderDTOs).allSatisfy(orderDTO -> {
+            assertThat(orderDTO.getPayment()).isNotNull();
+            assertThat(orderDTO.getInventoryTransactions()).hasSize(1);
+        });
+        return statistics.getPrepareStatementCount();
+    }
+}
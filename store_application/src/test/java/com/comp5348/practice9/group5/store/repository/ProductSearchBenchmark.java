@@ -0,0 +1,111 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Latency of the ranked product search over 1M products: a page of 20 for single words, several
+ * words, a phrase, OR and exclusion, and a deep page. The search runs on Postgres tsvector and GIN,
+ * which the embedded database does not have, so this only runs against a Postgres given with
+ *
+ *   ./gradlew benchmark -Dstore.benchmark.url=jdbc:postgresql://localhost:5432/bench \
+ *       -Dstore.benchmark.username=... -Dstore.benchmark.password=...
+ *
+ * The product table of that database is dropped and created again.
+ */
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=create-drop")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(ProductSearchIndex.class)
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "store.benchmark.url", matches = ".+")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ProductSearchBenchmark {
+    private static final int PRODUCTS = 1_000_000;
+    private static final int WARMUP = 20;
+    private static final int RUNS = 200;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> System.getProperty("store.benchmark.url"));
+        registry.add("spring.datasource.username", () -> System.getProperty("store.benchmark.username", "postgres"));
+        registry.add("spring.datasource.password", () -> System.getProperty("store.benchmark.password", ""));
+    }
+
+    @Test
+    void searchLatencyAt1MProducts() {
+        // 1. 1M products from a small vocabulary, so common words match many rows and rare ones few
+        jdbcTemplate.update("""
+                INSERT INTO product (version, name, description, price)
+                SELECT 0,
+                       (ARRAY['red', 'blue', 'green', 'black', 'white', 'steel', 'wooden', 'glass', 'compact', 'deluxe'])[1 + i % 10]
+                           || ' ' || (ARRAY['widget', 'kettle', 'lamp', 'chair', 'desk', 'mug', 'speaker', 'blender', 'toaster',
+                                            'backpack', 'monitor', 'keyboard', 'jacket', 'umbrella', 'bottle', 'clock'])[1 + i % 16]
+                           || ' model ' || i % 5000,
+                       'A ' || (ARRAY['durable', 'lightweight', 'portable', 'waterproof', 'rechargeable', 'handmade', 'foldable'])[1 + i % 7]
+                           || ' ' || (ARRAY['kitchen', 'office', 'outdoor', 'travel', 'garden', 'gaming'])[1 + i % 6]
+                           || ' item with a ' || (ARRAY['two', 'three', 'five', 'ten'])[1 + i % 4] || ' year warranty',
+                       100 + i % 50000
+                FROM generate_series(1, ?) AS i
+                """, PRODUCTS);
+        jdbcTemplate.execute("ANALYZE product");
+        assertThat(productRepository.count()).isEqualTo(PRODUCTS);
+
+        // 2. queries from broad to narrow
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("one common word", "widget");
+        queries.put("two words", "steel kettle");
+        queries.put("name and description", "lamp waterproof garden");
+        queries.put("phrase", "\"black mug\"");
+        queries.put("or", "toaster or blender");
+        queries.put("exclusion", "chair -wooden");
+        queries.put("rare", "umbrella model 4242");
+        queries.put("no match", "submarine");
+        for (Map.Entry<String, String> query : queries.entrySet()) {
+            report(query.getKey(), query.getValue(), 0);
+        }
+        report("page 50 of one common word", "widget", 49);
+    }
+
+    private void report(String label, String query, int page) {
+        for (int i = 0; i < WARMUP; i++) {
+            productRepository.search(query, 20, page * 20);
+        }
+        long[] nanos = new long[RUNS];
+        int results = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            results = productRepository.search(query, 20, page * 20).size();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-28s %2d results  p50 %6.2f ms  p95 %6.2f ms  p99 %6.2f ms%n", label, results,
+                millis(nanos[RUNS / 2]), millis(nanos[RUNS * 95 / 100]), millis(nanos[RUNS * 99 / 100]));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,26 @@
+package com.comp5348.practice9.group5.store.repository;
+
+import com.comp5348.practice9.group5.store.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * The database keeps one user per email, whatever the checks before the insert saw.
+ */
+@DataJpaTest
+class UserRepositoryTest {
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void secondUserWithTheSameEmailIsRejected() {
+        userRepository.saveAndFlush(new User("Ada", "Lovelace", "ada@example.com", "hash"));
+
+        assertThatThrownBy(() -> userRepository.saveAndFlush(new User("Ada", "King", "ada@example.com", "other")))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+}
@@ -0,0 +1,113 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import com.comp5348.practice9.group5.store.util.GeocodeTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Every allocation strategy covers the quantity exactly without taking more than an inventory has;
+ * they only differ in which inventories they prefer.
+ */
+class AllocationStrategyTest {
+    private static final List<AllocationStrategy> STRATEGIES = List.of(
+            new GreedyAllocationStrategy(),
+            new FewestWarehousesAllocationStrategy(),
+            new RoundRobinAllocationStrategy(),
+            new NearestWarehouseAllocationStrategy(new GeocodeTable(), "sydney"));
+
+    @Test
+    void everyStrategyCoversTheQuantityWithinTheStock() {
+        Random random = new Random(5348);
+        for (int round = 0; round < 1_000; round++) {
+            // random inventories spread over a few warehouses, and a quantity they can cover
+            List<InventoryRepository.Stock> stocks = new ArrayList<>();
+            int inventories = 1 + random.nextInt(8);
+            for (long id = 1; id <= inventories; id++) {
+                stocks.add(new StockRow(id, random.nextInt(20), 1 + random.nextInt(3), "Warehouse, Sydney"));
+            }
+            int total = stocks.stream().mapToInt(InventoryRepository.Stock::getQuantity).sum();
+            if (total == 0) {
+                continue;
+            }
+            int quantity = 1 + random.nextInt(total);
+
+            for (AllocationStrategy strategy : STRATEGIES) {
+                Map<Long, Integer> plan = strategy.allocate(stocks, quantity);
+                assertThat(plan.values().stream().mapToInt(Integer::intValue).sum()).as(strategy.getName()).isEqualTo(quantity);
+                for (InventoryRepository.Stock stock : stocks) {
+                    assertThat(plan.getOrDefault(stock.getId(), 0)).as(strategy.getName()).isBetween(0, stock.getQuantity());
+                }
+                assertThat(plan.values()).as(strategy.getName()).allMatch(take -> take > 0);
+            }
+        }
+    }
+
+    @Test
+    void greedyTakesFromTheFullestInventoryFirst() {
+        List<InventoryRepository.Stock> stocks = List.of(
+                new StockRow(1, 5, 1, "Sydney"), new StockRow(2, 9, 2, "Newcastle"), new StockRow(3, 7, 3, "Penrith"));
+
+        assertThat(new GreedyAllocationStrategy().allocate(stocks, 12)).isEqualTo(Map.of(2L, 9, 3L, 3));
+    }
+
+    @Test
+    void fewestWarehousesShipsFromTheFullestWarehouse() {
+        // warehouse 2 holds 10 in two inventories, enough for the order on its own
+        List<InventoryRepository.Stock> stocks = List.of(
+                new StockRow(1, 8, 1, "Sydney"), new StockRow(2, 6, 2, "Newcastle"), new StockRow(3, 4, 2, "Newcastle"));
+
+        assertThat(new FewestWarehousesAllocationStrategy().allocate(stocks, 10)).isEqualTo(Map.of(2L, 6, 3L, 4));
+    }
+
+    @Test
+    void nearestShipsFromTheClosestWarehouseAndUnknownAddressesLast() {
+        List<InventoryRepository.Stock> stocks = List.of(
+                new StockRow(1, 5, 1, "Somewhere unknown"), new StockRow(2, 5, 2, "1 Station St, Newcastle"),
+                new StockRow(3, 5, 3, "2 George St, Parramatta"));
+        AllocationStrategy nearest = new NearestWarehouseAllocationStrategy(new GeocodeTable(), "sydney");
+
+        assertThat(nearest.allocate(stocks, 8)).isEqualTo(Map.of(3L, 5, 2L, 3));
+        assertThat(nearest.allocate(stocks, 12)).isEqualTo(Map.of(3L, 5, 2L, 5, 1L, 2));
+    }
+
+    @Test
+    void roundRobinStartsEachOrderAtTheNextInventory() {
+        List<InventoryRepository.Stock> stocks = List.of(
+                new StockRow(1, 5, 1, "Sydney"), new StockRow(2, 5, 2, "Newcastle"), new StockRow(3, 5, 3, "Penrith"));
+        AllocationStrategy roundRobin = new RoundRobinAllocationStrategy();
+
+        assertThat(roundRobin.allocate(stocks, 1)).isEqualTo(Map.of(1L, 1));
+        assertThat(roundRobin.allocate(stocks, 1)).isEqualTo(Map.of(2L, 1));
+        assertThat(roundRobin.allocate(stocks, 1)).isEqualTo(Map.of(3L, 1));
+        assertThat(roundRobin.allocate(stocks, 1)).isEqualTo(Map.of(1L, 1));
+    }
+
+    private record StockRow(long id, int quantity, long warehouseId, String warehouseAddress) implements InventoryRepository.Stock {
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public int getQuantity() {
+            return quantity;
+        }
+
+        @Override
+        public long getWarehouseId() {
+            return warehouseId;
+        }
+
+        @Override
+        public String getWarehouseAddress() {
+            return warehouseAddress;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.util.AuthContext;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * A token is accepted only as it was issued: signed with this store's secret, unexpired and well
+ * formed. Anything else verifies as empty rather than throwing.
+ */
+class AuthTokenServiceTest {
+    private static final String SECRET = "test-secret-of-the-store";
+
+    private final AuthTokenService authTokenService = new AuthTokenService(SECRET, 3600);
+
+    @Test
+    void issuedTokenVerifiesAsItsUser() {
+        assertThat(authTokenService.verify(authTokenService.issue(5))).contains(new AuthContext.Principal(5, false));
+        assertThat(authTokenService.verify(authTokenService.issue(AuthTokenService.ADMIN_USER_ID)))
+                .contains(new AuthContext.Principal(AuthTokenService.ADMIN_USER_ID, true));
+    }
+
+    @Test
+    void tokenSignedWithAnotherSecretIsRejected() {
+        String forged = new AuthTokenService("another-secret", 3600).issue(5);
+
+        assertThat(authTokenService.verify(forged)).isEmpty();
+    }
+
+    @Test
+    void payloadChangedUnderItsSignatureIsRejected() {
+        String token = authTokenService.issue(5);
+        String signature = token.substring(token.indexOf('.') + 1);
+        String admin = encode(("1:admin:" + (Instant.now().getEpochSecond() + 3600)).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(authTokenService.verify(admin + "." + signature)).isEmpty();
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        String expired = new AuthTokenService(SECRET, -1).issue(5);
+
+        assertThat(authTokenService.verify(expired)).isEmpty();
+    }
+
+    @Test
+    void malformedTokensAreRejected() {
+        String token = authTokenService.issue(5);
+
+        assertThat(authTokenService.verify("")).isEmpty();
+        assertThat(authTokenService.verify("no-dot")).isEmpty();
+        assertThat(authTokenService.verify("not*base64.sig")).isEmpty();
+        assertThat(authTokenService.verify(token.substring(0, token.indexOf('.')))).isEmpty();
+        assertThat(authTokenService.verify(token + "x")).isEmpty();
+        // correctly signed, but not userId:role:expiresAt
+        assertThat(authTokenService.verify(signed("5:user"))).isEmpty();
+        assertThat(authTokenService.verify(signed("five:user:" + (Instant.now().getEpochSecond() + 3600)))).isEmpty();
+    }
+
+    private static String signed(String payload) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            return encode(bytes) + "." + encode(mac.doFinal(bytes));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
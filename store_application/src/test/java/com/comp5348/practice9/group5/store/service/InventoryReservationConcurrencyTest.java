@@ -0,0 +1,135 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.model.*;
+import com.comp5348.practice9.group5.store.repository.*;
+import com.comp5348.practice9.group5.store.util.Money;
+import com.comp5348.practice9.group5.store.util.ServiceResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/*
+ * Concurrent reservations against a database: 100 buyers of 3 units race for 150 units spread over four
+ * inventories, each in its own transaction. The row locks of the conditional decrements are real,
+ * so a reservation that locked rows out of order would deadlock or time out here. The product_stock
+ * counter uses Postgres-only SQL and is mocked; only the decrements decide.
+ */
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:reservations;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryReservationConcurrencyTest {
+    private static final int BUYERS = 100;
+    private static final int ORDER_QUANTITY = 3;
+    private static final int[] STOCK = {40, 40, 40, 30};
+    private static final int TOTAL_STOCK = 150;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private WarehouseRepository warehouseRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryTransactionRepository inventoryTransactionRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void concurrentBuyersNeverOversellOrDeadlock() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // 1. one product in four warehouses and an order for every buyer
+        User user = userRepository.save(new User("Ada", "Lovelace", "ada@example.com", "hash"));
+        Product product = productRepository.save(new Product("Widget", "A widget", Money.ofCents(1999)));
+        for (int i = 0; i < STOCK.length; i++) {
+            Warehouse warehouse = warehouseRepository.save(new Warehouse("Warehouse " + i, i + " Main Street"));
+            inventoryRepository.save(new Inventory(STOCK[i], product, warehouse));
+        }
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < BUYERS; i++) {
+            orderIds.add(orderRepository.save(new Order(new Date(), ORDER_QUANTITY, user, product)).getId());
+        }
+
+        // 2. the service as the application wires it, with the stock counter always optimistic
+        ProductStockService productStockService = mock(ProductStockService.class);
+        when(productStockService.isAvailable(anyLong(), anyLong())).thenReturn(true);
+        InventoryTransactionService inventoryTransactionService = new InventoryTransactionService(inventoryTransactionRepository,
+                inventoryRepository, orderRepository, productStockService, List.of(new GreedyAllocationStrategy()), "greedy", 5,
+                new SimpleMeterRegistry());
+
+        // 3. every buyer reserves in its own transaction, all released at once
+        ExecutorService buyers = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (long orderId : orderIds) {
+                results.add(buyers.submit(() -> {
+                    start.await();
+                    try {
+                        ServiceResult<?> result = transactionTemplate.execute(status -> {
+                            ServiceResult<?> reservation = inventoryTransactionService.launchConsolidation(user.getId(), orderId);
+                            if (!reservation.isSuccess()) {
+                                status.setRollbackOnly();
+                            }
+                            return reservation;
+                        });
+                        return result.isSuccess();
+                    } catch (RuntimeException e) {
+                        errors.add(e);
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int reserved = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get(2, TimeUnit.MINUTES)) {
+                    reserved++;
+                }
+            }
+
+            // 4. no lock waits failed, and every unit is either in stock or held by exactly one order
+            assertThat(errors).isEmpty();
+            List<Inventory> inventories = inventoryRepository.findAll();
+            int remaining = inventories.stream().mapToInt(Inventory::getQuantity).sum();
+            int recorded = inventoryTransactionRepository.findAll().stream().mapToInt(InventoryTransaction::getQuantity).sum();
+            assertThat(inventories).allMatch(inventory -> inventory.getQuantity() >= 0);
+            assertThat(reserved).isPositive();
+            assertThat(remaining).isEqualTo(TOTAL_STOCK - ORDER_QUANTITY * reserved);
+            assertThat(recorded).isEqualTo(ORDER_QUANTITY * reserved);
+        } finally {
+            buyers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.model.*;
+import com.comp5348.practice9.group5.store.repository.InventoryRepository;
+import com.comp5348.practice9.group5.store.repository.InventoryTransactionRepository;
+import com.comp5348.practice9.group5.store.repository.OrderRepository;
+import com.comp5348.practice9.group5.store.util.ServiceResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/*
+ * Reservation logic against mocked repositories: concurrent reservations never take more stock than
+ * there is (the database's conditional decrement is simulated with a compare-and-set, see
+ * InventoryReservationConcurrencyTest for the same check against a database), a retry never locks a
+ * row before the ones it holds, and restoring an order gives the stock back to its inventories in
+ * inventory id order, then to each product once, so the product_stock row is locked last.
+ */
+class InventoryTransactionServiceTest {
+    private InventoryTransactionRepository inventoryTransactionRepository;
+    private InventoryRepository inventoryRepository;
+    private OrderRepository orderRepository;
+    private ProductStockService productStockService;
+    private InventoryTransactionService inventoryTransactionService;
+
+    @BeforeEach
+    void setUp() {
+        inventoryTransactionRepository = mock(InventoryTransactionRepository.class);
+        inventoryRepository = mock(InventoryRepository.class);
+        orderRepository = mock(OrderRepository.class);
+        productStockService = mock(ProductStockService.class);
+        inventoryTransactionService = new InventoryTransactionService(inventoryTransactionRepository, inventoryRepository,
+                orderRepository, productStockService, List.of(new GreedyAllocationStrategy()), "greedy", 5, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() throws Exception {
+        // 1. four inventories of 25 behind a database that applies the conditional decrement atomically
+        Map<Long, AtomicInteger> stock = new ConcurrentHashMap<>();
+        for (long inventoryId = 1; inventoryId <= 4; inventoryId++) {
+            stock.put(inventoryId, new AtomicInteger(25));
+        }
+        when(inventoryRepository.findStockByProductId(1L)).thenAnswer(invocation -> stock.entrySet().stream()
+                .map(entry -> new StockRow(entry.getKey(), entry.getValue().get())).toList());
+        when(inventoryRepository.decrementQuantity(anyLong(), anyInt())).thenAnswer(invocation -> {
+            AtomicInteger quantity = stock.get(invocation.<Long>getArgument(0));
+            int take = invocation.getArgument(1);
+            int current;
+            do {
+                current = quantity.get();
+                if (current < take) {
+                    return 0;
+                }
+            } while (!quantity.compareAndSet(current, current - take));
+            return 1;
+        });
+        when(inventoryRepository.incrementQuantity(anyLong(), anyInt())).thenAnswer(invocation -> {
+            stock.get(invocation.<Long>getArgument(0)).addAndGet(invocation.<Integer>getArgument(1));
+            return 1;
+        });
+        // the cached availability is stale, only the decrements decide
+        when(productStockService.isAvailable(eq(1L), anyLong())).thenReturn(true);
+
+        // 2. 60 orders of 3 race for 100 units
+        int orders = 60;
+        for (long orderId = 1; orderId <= orders; orderId++) {
+            when(orderRepository.findById(orderId)).thenReturn(Optional.of(order(orderId, 3)));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<ServiceResult<?>>> results = new ArrayList<>();
+        try {
+            for (long orderId = 1; orderId <= orders; orderId++) {
+                long id = orderId;
+                results.add(executor.submit(() -> inventoryTransactionService.launchConsolidation(5L, id)));
+            }
+            int reserved = 0;
+            for (Future<ServiceResult<?>> result : results) {
+                if (result.get().isSuccess()) {
+                    reserved++;
+                }
+            }
+
+            // 3. every unit is either still in stock or taken by exactly one successful order
+            int remaining = stock.values().stream().mapToInt(AtomicInteger::get).sum();
+            assertThat(reserved).isBetween(1, 33);
+            assertThat(remaining).isEqualTo(100 - 3 * reserved);
+            assertThat(stock.values()).allMatch(quantity -> quantity.get() >= 0);
+            verify(productStockService, times(reserved)).adjust(1L, -3L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void retryNeverPlansOverRowsBeforeTheOnesItHolds() {
+        // 1. a strategy that takes from the highest inventory ids first and records what it was offered
+        List<List<Long>> offered = new ArrayList<>();
+        AllocationStrategy highestFirst = new AllocationStrategy() {
+            @Override
+            public String getName() {
+                return "highest-first";
+            }
+
+            @Override
+            public Map<Long, Integer> allocate(List<InventoryRepository.Stock> stocks, int quantity) {
+                offered.add(stocks.stream().map(InventoryRepository.Stock::getId).toList());
+                List<InventoryRepository.Stock> ordered = new ArrayList<>(stocks);
+                ordered.sort((a, b) -> Long.compare(b.getId(), a.getId()));
+                return AllocationStrategy.takeInOrder(ordered, quantity);
+            }
+        };
+        inventoryTransactionService = new InventoryTransactionService(inventoryTransactionRepository, inventoryRepository,
+                orderRepository, productStockService, List.of(highestFirst), "highest-first", 5, new SimpleMeterRegistry());
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order(1, 8)));
+        when(productStockService.isAvailable(eq(1L), anyLong())).thenReturn(true);
+
+        // 2. the first attempt takes inventory 3 but loses inventory 2 to another order, which restocks inventory 4
+        when(inventoryRepository.findStockByProductId(1L)).thenReturn(
+                List.of(new StockRow(1, 5), new StockRow(2, 5), new StockRow(3, 5)),
+                List.of(new StockRow(1, 5), new StockRow(2, 2), new StockRow(3, 0), new StockRow(4, 10)));
+        when(inventoryRepository.decrementQuantity(2L, 3)).thenReturn(0);
+        when(inventoryRepository.decrementQuantity(3L, 5)).thenReturn(1);
+        when(inventoryRepository.decrementQuantity(4L, 3)).thenReturn(1);
+
+        ServiceResult<?> result = inventoryTransactionService.launchConsolidation(5L, 1L);
+
+        // 3. the retry is only offered inventory 3, which it holds, and what comes after it
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(offered).containsExactly(List.of(1L, 2L, 3L), List.of(3L, 4L));
+        verify(inventoryRepository, never()).decrementQuantity(eq(1L), anyInt());
+    }
+
+    @Test
+    void retryThatWouldNeedAnEarlierRowGivesUp() {
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order(1, 8)));
+        when(productStockService.isAvailable(eq(1L), anyLong())).thenReturn(true);
+        // greedy takes 6 from inventory 2 and 2 from inventory 1; inventory 1 is gone by then
+        when(inventoryRepository.findStockByProductId(1L)).thenReturn(
+                List.of(new StockRow(1, 5), new StockRow(2, 6)),
+                List.of(new StockRow(1, 5), new StockRow(2, 0)));
+        when(inventoryRepository.decrementQuantity(1L, 2)).thenReturn(0);
+        when(inventoryRepository.decrementQuantity(2L, 6)).thenReturn(1);
+
+        ServiceResult<?> result = inventoryTransactionService.launchConsolidation(5L, 1L);
+
+        // inventory 1 has the stock but comes before the held inventory 2, the client retries in a new transaction
+        assertThat(result.getErrorMessage()).isEqualTo("Inventories are busy, please try again");
+        verify(inventoryRepository, times(1)).decrementQuantity(1L, 2);
+        verify(inventoryRepository).incrementQuantity(2L, 6);
+    }
+
+    @Test
+    void restoreInventoriesAdjustsEachProductOnceAfterTheInventories() {
+        Product widget = product(1);
+        Product gadget = product(2);
+        InventoryTransaction first = dispatched(3, inventory(30, widget));
+        InventoryTransaction second = dispatched(4, inventory(10, widget));
+        InventoryTransaction third = dispatched(5, inventory(20, gadget));
+        when(inventoryTransactionRepository.findByOrderId(7L)).thenReturn(List.of(first, second, third));
+
+        ServiceResult<?> result = inventoryTransactionService.restoreInventories(7L);
+
+        assertThat(result.isSuccess()).isTrue();
+        InOrder inOrder = inOrder(inventoryRepository, productStockService);
+        inOrder.verify(inventoryRepository).incrementQuantity(10L, 4);
+        inOrder.verify(inventoryRepository).incrementQuantity(20L, 5);
+        inOrder.verify(inventoryRepository).incrementQuantity(30L, 3);
+        inOrder.verify(productStockService).adjust(1L, 7L);
+        inOrder.verify(productStockService).adjust(2L, 5L);
+        inOrder.verifyNoMoreInteractions();
+        assertThat(List.of(first, second, third)).allMatch(transaction -> transaction.getStatus() == InventoryStatus.RECEIVED);
+    }
+
+    @Test
+    void restoreInventoriesSkipsTransactionsAlreadyRestored() {
+        InventoryTransaction restored = dispatched(3, inventory(10, product(1)));
+        restored.setStatus(InventoryStatus.RECEIVED);
+        when(inventoryTransactionRepository.findByOrderId(7L)).thenReturn(List.of(restored));
+
+        inventoryTransactionService.restoreInventories(7L);
+
+        verify(inventoryRepository, never()).incrementQuantity(anyLong(), anyInt());
+        verify(productStockService, never()).adjust(anyLong(), anyLong());
+    }
+
+    private static Order order(long id, int quantity) {
+        User user = new User();
+        user.setId(5L);
+        Order order = new Order();
+        order.setId(id);
+        order.setQuantity(quantity);
+        order.setUser(user);
+        order.setProduct(product(1));
+        return order;
+    }
+
+    private static Product product(long id) {
+        Product product = new Product();
+        product.setId(id);
+        return product;
+    }
+
+    private static Inventory inventory(long id, Product product) {
+        Inventory inventory = new Inventory();
+        inventory.setId(id);
+        inventory.setProduct(product);
+        return inventory;
+    }
+
+    private static InventoryTransaction dispatched(int quantity, Inventory inventory) {
+        InventoryTransaction inventoryTransaction = new InventoryTransaction();
+        inventoryTransaction.setQuantity(quantity);
+        inventoryTransaction.setStatus(InventoryStatus.DISPATCHED);
+        inventoryTransaction.setInventory(inventory);
+        return inventoryTransaction;
+    }
+
+    private static final class StockRow implements InventoryRepository.Stock {
+        private final long id;
+        private final int quantity;
+
+        private StockRow(long id, int quantity) {
+            this.id = id;
+            this.quantity = quantity;
+        }
+
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public int getQuantity() {
+            return quantity;
+        }
+
+        @Override
+        public long getWarehouseId() {
+            return id;
+        }
+
+        @Override
+        public String getWarehouseAddress() {
+            return "Warehouse " + id;
+        }
+    }
+}
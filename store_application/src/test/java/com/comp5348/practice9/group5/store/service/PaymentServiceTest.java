@@ -0,0 +1,103 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.model.*;
+import com.comp5348.practice9.group5.store.repository.OrderRepository;
+import com.comp5348.practice9.group5.store.repository.PaymentRepository;
+import com.comp5348.practice9.group5.store.util.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/*
+ * Only a final answer compensates: a transfer or delivery whose backoff ran out without an answer
+ * may have gone through, so the order is neither given back nor refunded.
+ */
+class PaymentServiceTest {
+    private PaymentRepository paymentRepository;
+    private OutboxService outboxService;
+    private PaymentService paymentService;
+    private Payment payment;
+    private Order order;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository = mock(PaymentRepository.class);
+        outboxService = mock(OutboxService.class);
+        paymentService = new PaymentService(mock(OrderRepository.class), paymentRepository,
+                mock(InventoryTransactionService.class), outboxService);
+
+        order = new Order();
+        order.setOrderStatus(OrderStatus.PENDING);
+        order.setDeliveryStatus(DeliveryStatus.EMPTY);
+        order.setUser(new User("Ada", "Lovelace", "ada@example.com", "hash"));
+        payment = new Payment(Money.ofCents(1000), PaymentStatus.PENDING, order, 0, 7, "1 Main Street");
+        payment.setId(3);
+        when(paymentRepository.getReferenceById(3L)).thenReturn(payment);
+    }
+
+    @Test
+    void unresolvedTransferKeepsTheOrderFromBeingPaidAgain() {
+        OutboxMessage message = pending(1, OutboxMessageType.TRANSFER);
+
+        paymentService.handleOutboxUnresolved(message.getId(), "Read timed out");
+
+        assertThat(payment.getPaymentStatus()).isEqualTo(PaymentStatus.UNRESOLVED);
+        assertThat(order.getOrderStatus()).isEqualTo(OrderStatus.PENDING);
+        verify(outboxService, never()).markFailed(any(), anyString());
+        verify(outboxService, never()).enqueue(any(), anyLong(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void unresolvedDeliveryIsNotRefunded() {
+        payment.setPaymentStatus(PaymentStatus.PAID);
+        order.setOrderStatus(OrderStatus.PROCESSING);
+        OutboxMessage message = pending(2, OutboxMessageType.DELIVERY);
+
+        paymentService.handleOutboxUnresolved(message.getId(), "503 Service Unavailable");
+
+        assertThat(payment.getPaymentStatus()).isEqualTo(PaymentStatus.PAID);
+        assertThat(order.getOrderStatus()).isEqualTo(OrderStatus.PROCESSING);
+        verify(outboxService, never()).enqueue(any(), anyLong(), anyString(), anyString(), any());
+        verify(outboxService, never()).markFailed(any(), anyString());
+    }
+
+    @Test
+    void lateAnswerSettlesAnUnresolvedTransfer() {
+        payment.setPaymentStatus(PaymentStatus.UNRESOLVED);
+        OutboxMessage message = pending(1, OutboxMessageType.TRANSFER);
+
+        paymentService.handleOutboxSuccess(message.getId(), Map.of("id", 42));
+
+        assertThat(payment.getPaymentStatus()).isEqualTo(PaymentStatus.PAID);
+        assertThat(payment.getTransactionRecordId()).isEqualTo(42);
+        assertThat(order.getOrderStatus()).isEqualTo(OrderStatus.PROCESSING);
+        verify(outboxService).enqueue(eq(OutboxMessageType.DELIVERY), eq(3L), anyString(), eq("POST"), any());
+        verify(outboxService).markSent(message);
+    }
+
+    @Test
+    void rejectedTransferGivesTheOrderBack() {
+        OutboxMessage message = pending(1, OutboxMessageType.TRANSFER);
+
+        paymentService.handleOutboxFailure(message.getId(), "400 Insufficient funds");
+
+        assertThat(payment.getPaymentStatus()).isEqualTo(PaymentStatus.FAILED);
+        assertThat(order.getOrderStatus()).isEqualTo(OrderStatus.PENDING);
+        verify(outboxService).markFailed(message, "400 Insufficient funds");
+    }
+
+    private OutboxMessage pending(long id, OutboxMessageType type) {
+        OutboxMessage message = new OutboxMessage(type, 3, "http://localhost/", "POST", "{}", "key-" + id);
+        message.setId(id);
+        when(outboxService.findPending(id)).thenReturn(Optional.of(message));
+        return message;
+    }
+}
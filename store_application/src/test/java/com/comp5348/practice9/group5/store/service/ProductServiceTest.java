@@ -0,0 +1,74 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.dto.ProductDTO;
+import com.comp5348.practice9.group5.store.model.Product;
+import com.comp5348.practice9.group5.store.repository.ProductRepository;
+import com.comp5348.practice9.group5.store.util.AuthContext;
+import com.comp5348.practice9.group5.store.util.Money;
+import com.comp5348.practice9.group5.store.util.ServiceResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/*
+ * Product search pages through the ranked results by offset and keeps the order of the ranking.
+ */
+class ProductServiceTest {
+    private ProductRepository productRepository;
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        productService = new ProductService(productRepository, mock(ProductStockService.class), mock(ProductCatalogCache.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        AuthContext.clear();
+    }
+
+    @Test
+    void searchReturnsAPageOfTheRankedResultsInOrder() {
+        when(productRepository.search("red shoes", 20, 40)).thenReturn(List.of(product(7, "Red shoes"), product(3, "Red running shoes")));
+
+        ServiceResult<List<ProductDTO>> result = productService.searchProducts(-1L, "red shoes", 2, 20);
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getData()).extracting(ProductDTO::getId).containsExactly(7L, 3L);
+    }
+
+    @Test
+    void signedInUserCanSearch() {
+        AuthContext.set(new AuthContext.Principal(5L, false));
+        when(productRepository.search("shoes", 10, 0)).thenReturn(List.of(product(1, "Shoes")));
+
+        assertThat(productService.searchProducts(5L, "shoes", 0, 10).getData()).hasSize(1);
+    }
+
+    @Test
+    void invalidSearchesDoNotQueryTheDatabase() {
+        assertThat(productService.searchProducts(-1L, " ", 0, 20).isSuccess()).isFalse();
+        assertThat(productService.searchProducts(-1L, "shoes", 0, 0).isSuccess()).isFalse();
+        assertThat(productService.searchProducts(-1L, "shoes", 0, ProductService.MAX_PAGE_SIZE + 1).isSuccess()).isFalse();
+        assertThat(productService.searchProducts(-1L, "shoes", -1, 20).isSuccess()).isFalse();
+        assertThat(productService.searchProducts(-1L, "shoes", ProductService.MAX_SEARCH_PAGES, 20).isSuccess()).isFalse();
+        // signed in as somebody else
+        assertThat(productService.searchProducts(5L, "shoes", 0, 20).isSuccess()).isFalse();
+
+        verify(productRepository, never()).search(anyString(), anyInt(), anyInt());
+    }
+
+    private static Product product(long id, String name) {
+        Product product = new Product(name, name + " for sale", Money.ofCents(4999));
+        product.setId(id);
+        return product;
+    }
+}
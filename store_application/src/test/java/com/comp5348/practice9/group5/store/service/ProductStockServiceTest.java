@@ -0,0 +1,70 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.repository.ProductStockRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+/*
+ * The counter serves repeated checks and local writes without a query, and a value that is too low
+ * for an order, possibly because another node added stock, is re-read before the order is rejected.
+ */
+class ProductStockServiceTest {
+    private ProductStockRepository productStockRepository;
+
+    @BeforeEach
+    void setUp() {
+        productStockRepository = mock(ProductStockRepository.class);
+    }
+
+    @Test
+    void localAdjustmentsAreServedFromTheCounter() {
+        ProductStockService productStockService = new ProductStockService(productStockRepository, 60_000);
+        when(productStockRepository.findQuantityByProductId(1L)).thenReturn(Optional.of(10L));
+
+        assertThat(productStockService.getAvailableQuantity(1L)).isEqualTo(10);
+        // no transaction is active, so the delta is applied to the counter right away
+        productStockService.adjust(1L, -3);
+        productStockService.adjust(1L, -2);
+
+        assertThat(productStockService.getAvailableQuantity(1L)).isEqualTo(5);
+        verify(productStockRepository, times(1)).findQuantityByProductId(1L);
+    }
+
+    @Test
+    void lowCachedValueIsCheckedAgainstTheTable() {
+        ProductStockService productStockService = new ProductStockService(productStockRepository, 60_000);
+        when(productStockRepository.findQuantityByProductId(1L)).thenReturn(Optional.of(2L));
+        assertThat(productStockService.getAvailableQuantity(1L)).isEqualTo(2);
+
+        // another node restocked the product
+        when(productStockRepository.findQuantityByProductId(1L)).thenReturn(Optional.of(50L));
+
+        assertThat(productStockService.isAvailable(1L, 2)).isTrue();
+        assertThat(productStockService.isAvailable(1L, 20)).isTrue();
+        assertThat(productStockService.getAvailableQuantity(1L)).isEqualTo(50);
+        assertThat(productStockService.isAvailable(1L, 51)).isFalse();
+    }
+
+    @Test
+    void expiredCounterIsReloaded() {
+        ProductStockService productStockService = new ProductStockService(productStockRepository, 0);
+        when(productStockRepository.findQuantityByProductId(1L)).thenReturn(Optional.of(10L), Optional.of(7L));
+
+        assertThat(productStockService.getAvailableQuantity(1L)).isEqualTo(10);
+        assertThat(productStockService.getAvailableQuantity(1L)).isEqualTo(7);
+    }
+
+    @Test
+    void missingProductHasNoStock() {
+        ProductStockService productStockService = new ProductStockService(productStockRepository, 60_000);
+        when(productStockRepository.findQuantityByProductId(1L)).thenReturn(Optional.empty());
+
+        assertThat(productStockService.isAvailable(1L, 1)).isFalse();
+        assertThat(productStockService.isAvailable(1L, 0)).isTrue();
+    }
+}
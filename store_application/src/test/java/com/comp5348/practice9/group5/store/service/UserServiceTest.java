@@ -0,0 +1,69 @@
+package com.comp5348.practice9.group5.store.service;
+
+import com.comp5348.practice9.group5.store.dto.UserDTO;
+import com.comp5348.practice9.group5.store.model.User;
+import com.comp5348.practice9.group5.store.repository.UserRepository;
+import com.comp5348.practice9.group5.store.util.ServiceResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/*
+ * Two registrations of the same email can both pass the existence check while their hashes are
+ * computed; the one that loses at the unique index gets the same answer as a late duplicate.
+ */
+class UserServiceTest {
+    private UserRepository userRepository;
+    private CredentialHasher credentialHasher;
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        credentialHasher = new CredentialHasher(1_000, 1, 16, new SimpleMeterRegistry());
+        userService = new UserService(userRepository, credentialHasher, mock(TransactionTemplate.class), mock(AuthTokenService.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        credentialHasher.shutdown();
+    }
+
+    @Test
+    void registrationSavesTheUser() {
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        ServiceResult<UserDTO> result = userService.registerUser("Ada", "Lovelace", "ada@example.com", "secret").join();
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getData().getEmail()).isEqualTo("ada@example.com");
+    }
+
+    @Test
+    void knownEmailIsRejectedBeforeHashing() {
+        when(userRepository.existsByEmail("ada@example.com")).thenReturn(true);
+
+        ServiceResult<UserDTO> result = userService.registerUser("Ada", "Lovelace", "ada@example.com", "secret").join();
+
+        assertThat(result.getErrorMessage()).isEqualTo("Email already exists");
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void registrationThatLostTheRaceIsRejected() {
+        // the other registration committed while this one was hashing
+        when(userRepository.save(any(User.class))).thenThrow(new DataIntegrityViolationException("uk_users_email"));
+
+        ServiceResult<UserDTO> result = userService.registerUser("Ada", "Lovelace", "ada@example.com", "secret").join();
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getErrorMessage()).isEqualTo("Email already exists");
+    }
+}
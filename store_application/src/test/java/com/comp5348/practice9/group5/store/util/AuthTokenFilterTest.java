@@ -0,0 +1,125 @@
+package com.comp5348.practice9.group5.store.util;
+
+import com.comp5348.practice9.group5.store.service.AuthTokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * Requests under /store/users/{userId} reach the controllers only with a valid token of that user,
+ * except for the anonymous user -1; the caller is known to the services for the request only.
+ */
+class AuthTokenFilterTest {
+    private final AuthTokenService authTokenService = new AuthTokenService("test-secret-of-the-store", 3600);
+    private final AuthTokenFilter authTokenFilter = new AuthTokenFilter(authTokenService);
+    // whether the chain ran, and as whom
+    private final List<Boolean> signedInAsFive = new ArrayList<>();
+    private final FilterChain chain = (request, response) -> signedInAsFive.add(AuthContext.isSignedInAs(5L));
+
+    @AfterEach
+    void clear() {
+        AuthContext.clear();
+    }
+
+    @Test
+    void tokenOfTheUserOfThePathIsLetThrough() throws Exception {
+        MockHttpServletResponse response = filter(request("/store/users/5/orders", authTokenService.issue(5)));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(signedInAsFive).containsExactly(true);
+    }
+
+    @Test
+    void tokenOfAnotherUserIsForbidden() throws Exception {
+        MockHttpServletResponse response = filter(request("/store/users/5/orders", authTokenService.issue(6)));
+
+        assertThat(response.getStatus()).isEqualTo(403);
+        assertThat(response.getContentAsString()).contains("Token does not belong to this user");
+        assertThat(signedInAsFive).isEmpty();
+    }
+
+    @Test
+    void forgedExpiredAndMalformedTokensAreUnauthorized() throws Exception {
+        List<String> tokens = List.of(
+                new AuthTokenService("another-secret", 3600).issue(5),
+                new AuthTokenService("test-secret-of-the-store", -1).issue(5),
+                "not-a-token");
+
+        for (String token : tokens) {
+            MockHttpServletResponse response = filter(request("/store/users/5/orders", token));
+
+            assertThat(response.getStatus()).as(token).isEqualTo(401);
+            assertThat(response.getContentAsString()).contains("Invalid or expired token");
+        }
+        assertThat(signedInAsFive).isEmpty();
+    }
+
+    @Test
+    void missingTokenIsUnauthorized() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/store/users/5");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Basic dXNlcjpwYXNz");
+
+        assertThat(filter(new MockHttpServletRequest("GET", "/store/users/5")).getStatus()).isEqualTo(401);
+        assertThat(filter(request).getStatus()).isEqualTo(401);
+        assertThat(signedInAsFive).isEmpty();
+    }
+
+    @Test
+    void anonymousUserNeedsNoToken() throws Exception {
+        MockHttpServletResponse response = filter(new MockHttpServletRequest("GET", "/store/users/-1/products"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(signedInAsFive).containsExactly(false);
+        assertThat(AuthContext.isSignedInAs(-1L)).isFalse();
+    }
+
+    @Test
+    void pathsOutsideTheUsersAndPreflightsPassThrough() throws Exception {
+        filter(new MockHttpServletRequest("POST", "/store/users/login"));
+        filter(new MockHttpServletRequest("OPTIONS", "/store/users/5/orders"));
+
+        assertThat(signedInAsFive).containsExactly(false, false);
+    }
+
+    @Test
+    void callerIsClearedAfterTheRequest() throws Exception {
+        filter(request("/store/users/5/orders", authTokenService.issue(5)));
+
+        assertThat(signedInAsFive).containsExactly(true);
+        assertThat(AuthContext.isSignedInAs(5L)).isFalse();
+    }
+
+    @Test
+    void callerIsClearedWhenTheRequestFails() {
+        FilterChain failing = (request, response) -> {
+            throw new ServletException("controller failed");
+        };
+
+        assertThatThrownBy(() -> authTokenFilter.doFilter(request("/store/users/5/orders", authTokenService.issue(5)),
+                new MockHttpServletResponse(), failing)).isInstanceOf(ServletException.class);
+        assertThat(AuthContext.isSignedInAs(5L)).isFalse();
+    }
+
+    private MockHttpServletResponse filter(MockHttpServletRequest request) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authTokenFilter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String uri, String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        return request;
+    }
+}